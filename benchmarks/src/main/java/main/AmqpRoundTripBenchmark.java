@@ -0,0 +1,135 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: RabbitMQ Round Trip Benchmark
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 3 compare per-delivery and batched consumers
+ */
+package main;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send to Recv round trips per second through an EmbeddedBroker standing in for RabbitMQ.
+ * A PizzaPublisher publishes the order the way Send's load mode does, and a PizzaConsumerPool runs
+ * Recv.handleDelivery on it, or Recv.handleBatch when consumerBatch is above 1; an operation ends when the
+ * consumer has processed the order.
+ * roundTrip sends one order at a time (latency bound), pipelined keeps PIPELINE orders in flight (throughput bound).
+ * Recv's console output is discarded while the benchmark runs so the report stays readable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AmqpRoundTripBenchmark {
+
+    /** The queue used by Send and Recv */
+    private static final String QUEUE_NAME = "pizzaQueue";
+
+    /** Orders in flight per pipelined invocation */
+    private static final int PIPELINE = 100;
+
+    /** The wire format of the order */
+    @Param({"JSON", "BINARY"})
+    public PizzaFormat format;
+
+    /** Deliveries per consumer batch, 1 runs Recv.handleDelivery on each delivery */
+    @Param({"1", "50"})
+    public int consumerBatch;
+
+    /** The broker stand-in */
+    private EmbeddedBroker broker;
+
+    /** Publishes the orders, as in Send */
+    private PizzaPublisher publisher;
+
+    /** Consumes the orders, as in Recv */
+    private PizzaConsumerPool consumers;
+
+    /** One permit per order processed by Recv */
+    private final Semaphore received = new Semaphore(0);
+
+    /** The encoded order */
+    private byte[] body;
+
+    /** The properties naming the wire format */
+    private AMQP.BasicProperties props;
+
+    /** The console, restored after the trial */
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        broker = new EmbeddedBroker();
+
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost("localhost");
+        factory.setPort(broker.getPort());
+
+        if (consumerBatch > 1) {
+            PizzaConsumerPool.BatchDeliveryHandler handler =
+                    batch -> Recv.handleBatch(batch).thenRun(() -> received.release(batch.size()));
+            consumers = new PizzaConsumerPool(factory, QUEUE_NAME, 1, 250, consumerBatch, 1_000, false, handler);
+        } else {
+            PizzaConsumerPool.AsyncDeliveryHandler handler =
+                    delivery -> Recv.handleDelivery(delivery).thenRun(received::release);
+            consumers = new PizzaConsumerPool(factory, QUEUE_NAME, 1, 250, 50, false, handler);
+        }
+        consumers.start();
+        // Batches of one so every order goes out as soon as it is published
+        publisher = new PizzaPublisher(factory, QUEUE_NAME, 1, 1, 1_000);
+
+        Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
+        body = format.encode(pizza);
+        props = new AMQP.BasicProperties.Builder().contentType(format.getContentType()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        publisher.close();
+        consumers.close();
+        broker.close();
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void roundTrip() throws Exception {
+        publisher.publish(props, body);
+        received.acquire();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void pipelined() throws Exception {
+        for (int i = 0; i < PIPELINE; i++) {
+            publisher.publish(props, body);
+        }
+        received.acquire(PIPELINE);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Embedded AMQP Broker
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.apache.qpid.server.SystemLauncher;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * EmbeddedBroker runs an in-memory Qpid Broker-J inside the benchmark JVM as a stand-in for RabbitMQ.
+ * It speaks AMQP 0-9-1 on a free local port and accepts the RabbitMQ client's default guest/guest login,
+ * so Send, Recv, PizzaPublisher and PizzaConsumerPool connect to it unchanged.
+ * Nothing is written to disk except a temporary work directory that close() removes.
+ */
+public class EmbeddedBroker implements AutoCloseable {
+
+    /** The initial broker configuration on the classpath */
+    private static final String CONFIG = "embedded-broker.json";
+
+    /** The running broker */
+    private final SystemLauncher launcher = new SystemLauncher();
+
+    /** The broker's work directory */
+    private final Path workDir;
+
+    /** The AMQP port */
+    private final int port;
+
+    /**
+     * Starts a broker on a free port.
+     *
+     * @throws Exception If the broker fails to start
+     */
+    public EmbeddedBroker() throws Exception {
+        this.port = freePort();
+        this.workDir = Files.createTempDirectory("pizza-broker");
+        URL config = EmbeddedBroker.class.getClassLoader().getResource(CONFIG);
+        if (config == null) {
+            throw new IllegalStateException(CONFIG + " is not on the classpath");
+        }
+
+        Map<String, String> context = new HashMap<>();
+        context.put("qpid.amqp_port", Integer.toString(port));
+        context.put("qpid.work_dir", workDir.toString());
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("type", "Memory");
+        attributes.put("initialConfigurationLocation", config.toExternalForm());
+        attributes.put("startupLoggedToSystemOut", false);
+        attributes.put("context", context);
+        launcher.startup(attributes);
+    }
+
+    /**
+     * Gets the AMQP port of the broker.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Stops the broker and deletes its work directory.
+     *
+     * @throws IOException If the work directory cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        launcher.shutdown();
+        try (Stream<Path> paths = Files.walk(workDir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Finds a local port that is free right now.
+     *
+     * @return The port
+     * @throws IOException If no port can be opened
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
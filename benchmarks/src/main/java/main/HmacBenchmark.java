@@ -0,0 +1,88 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: HMAC Benchmark
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 close the signing stream
+ */
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs and verifies per second on one thread, i.e. per core.
+ * The legacy methods do what generateHMAC in WebServiceSend and PizzaHandler did before HmacSigner:
+ * Mac.getInstance and a new SecretKeySpec per request, and a Base64 String comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HmacBenchmark {
+
+    private static final String SECRET_KEY = "shared_secret_key";
+
+    private final HmacSigner signer = new HmacSigner(SECRET_KEY);
+
+    /** The JSON body of the sample order */
+    private byte[] body;
+
+    /** The Base64 HMAC header of the sample order */
+    private String header;
+
+    @Setup
+    public void setUp() {
+        body = PizzaCodec.encode(new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"}));
+        header = signer.signBase64(body);
+    }
+
+    @Benchmark
+    public String legacySign() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET_KEY.getBytes(), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(body));
+    }
+
+    @Benchmark
+    public boolean legacyVerify() throws Exception {
+        return legacySign().equals(header);
+    }
+
+    @Benchmark
+    public String signerSign() {
+        return signer.signBase64(body);
+    }
+
+    @Benchmark
+    public boolean signerVerify() {
+        return signer.verify(body, header);
+    }
+
+    @Benchmark
+    public boolean signerStreamingVerify() throws IOException {
+        try (HmacSigner.SigningInputStream in = signer.newInputStream(new ByteArrayInputStream(body))) {
+            in.readAllBytes();
+            return in.verify(header);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Web Service Round Trip Benchmark
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 run each round trip against both server engines
+ */
+package main;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips per second through an in-process WebServiceRecv on a free loopback port:
+ * PizzaHttpClient encodes and signs an order, the server verifies, decodes and updates it, and the client
+ * reads the 200 response. The engine parameter compares the com.sun.net.httpserver engine running
+ * PizzaHandler with PizzaNioServer, side by side on the same order handling. One connection is kept alive, so this measures the per-request cost, not TCP setup.
+ * The handler's console output is discarded while the benchmark runs so the report stays readable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpRoundTripBenchmark {
+
+    private static final String SECRET_KEY = "shared_secret_key";
+
+    /** The wire format of the order */
+    @Param({"JSON", "BINARY"})
+    public PizzaFormat format;
+
+    /** The server engine: "jdk" for com.sun.net.httpserver, "nio" for PizzaNioServer */
+    @Param({"jdk", "nio"})
+    public String engine;
+
+    /** The in-process web service on the jdk engine */
+    private HttpServer server;
+
+    /** The in-process web service on the nio engine */
+    private PizzaNioServer nioServer;
+
+    /** The client, as used by WebServiceSend */
+    private PizzaHttpClient client;
+
+    /** The order used by WebServiceSend */
+    private Pizza pizza;
+
+    /** The console, restored after the trial */
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        int port;
+        if ("nio".equals(engine)) {
+            nioServer = PizzaNioServer.start(address);
+            port = nioServer.getAddress().getPort();
+        } else {
+            server = WebServiceRecv.startServer(address);
+            port = server.getAddress().getPort();
+        }
+        URI uri = URI.create("http://localhost:" + port + "/pizza");
+        client = new PizzaHttpClient(uri, new HmacSigner(SECRET_KEY), format, 1);
+        pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (nioServer != null) {
+            nioServer.close();
+        }
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public int roundTrip() throws Exception {
+        HttpResponse<String> response = client.send(pizza);
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode() + ": " + response.body());
+        }
+        return response.statusCode();
+    }
+}
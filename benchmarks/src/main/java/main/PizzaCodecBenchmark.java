@@ -0,0 +1,107 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Pizza Codec Benchmark
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 3 legacy path uses the old Pizza shape
+ */
+package main;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old per-message Gson path with PizzaCodec and the binary format.
+ * The legacy methods do what Send, Recv and PizzaHandler did before PizzaCodec:
+ * a new Gson per message and a String between the object and the bytes.
+ * They use LegacyPizza, the field layout Pizza had then, because Gson reflection needs plain fields.
+ * Run with "-prof gc" and compare gc.alloc.rate.norm, the bytes allocated per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PizzaCodecBenchmark {
+
+    /**
+     * Pizza as it was before the compact representation: four plain fields, read by Gson reflection.
+     */
+    static class LegacyPizza {
+        String name;
+        String size;
+        double price;
+        String[] toppings;
+    }
+
+    /** The order used by Send and WebServiceSend */
+    private Pizza pizza;
+
+    /** The same order in the old field layout */
+    private LegacyPizza legacyPizza;
+
+    /** The same order as JSON bytes */
+    private byte[] json;
+
+    /** The same order in the binary format */
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
+        legacyPizza = new LegacyPizza();
+        legacyPizza.name = pizza.getName();
+        legacyPizza.size = pizza.getSize();
+        legacyPizza.price = pizza.getPrice();
+        legacyPizza.toppings = pizza.getToppings();
+        json = PizzaCodec.encode(pizza);
+        binary = PizzaBinaryCodec.encode(pizza);
+    }
+
+    @Benchmark
+    public byte[] legacySerialize() {
+        Gson gson = new Gson();
+        return gson.toJson(legacyPizza).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] codecSerialize() {
+        return PizzaCodec.encode(pizza);
+    }
+
+    @Benchmark
+    public LegacyPizza legacyDeserialize() {
+        Gson gson = new Gson();
+        return gson.fromJson(new String(json, StandardCharsets.UTF_8), LegacyPizza.class);
+    }
+
+    @Benchmark
+    public Pizza codecDeserialize() {
+        return PizzaCodec.decode(json);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize() {
+        return PizzaBinaryCodec.encode(pizza);
+    }
+
+    @Benchmark
+    public Pizza binaryDeserialize() {
+        return PizzaBinaryCodec.decode(binary);
+    }
+}
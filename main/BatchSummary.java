@@ -0,0 +1,156 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Web Service Batch Summary
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 tally sizes and toppings for OrderStats
+ */
+package main;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * BatchSummary totals the orders of one /pizza/batch upload.
+ * It holds counters only, never the orders themselves, so its size does not grow with the batch.
+ * Sizes beyond MAX_SIZES distinct values are counted under "Other".
+ * It also tallies orders and revenue per OrderStats size slot and orders per topping id,
+ * so a verified batch can be merged into OrderStats in one step.
+ */
+public class BatchSummary {
+
+    /** The largest number of distinct sizes counted separately */
+    private static final int MAX_SIZES = 32;
+
+    /** The number of orders in the batch */
+    private long orders;
+
+    /** The sum of all order prices */
+    private double revenue;
+
+    /** The number of orders per size */
+    private final Map<String, Long> bySize = new LinkedHashMap<>();
+
+    /** The number of orders per OrderStats size slot */
+    private final long[] sizeOrders = new long[OrderStats.SIZE_SLOTS];
+
+    /** The revenue per OrderStats size slot */
+    private final double[] sizeRevenue = new double[OrderStats.SIZE_SLOTS];
+
+    /** The number of orders per topping id, grown as higher ids are seen */
+    private long[] toppingOrders = new long[ToppingRegistry.BITSET_TOPPINGS];
+
+    /**
+     * Adds one order to the totals.
+     *
+     * @param pizza The order
+     */
+    public void add(Pizza pizza) {
+        orders++;
+        revenue += pizza.getPrice();
+        String size = pizza.getSize() == null ? "Unknown" : pizza.getSize();
+        if (!bySize.containsKey(size) && bySize.size() >= MAX_SIZES) {
+            size = "Other";
+        }
+        bySize.merge(size, 1L, Long::sum);
+
+        int slot = OrderStats.sizeSlot(pizza);
+        sizeOrders[slot]++;
+        sizeRevenue[slot] += pizza.getPrice();
+        for (int id : pizza.getToppingIds()) {
+            if (id >= toppingOrders.length) {
+                toppingOrders = Arrays.copyOf(toppingOrders, Math.max(id + 1, toppingOrders.length * 2));
+            }
+            toppingOrders[id]++;
+        }
+    }
+
+    /**
+     * Gets the number of orders in the batch.
+     *
+     * @return The order count
+     */
+    public long getOrders() {
+        return orders;
+    }
+
+    /**
+     * Gets the sum of all order prices.
+     *
+     * @return The revenue of the batch
+     */
+    public double getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Gets the number of orders per size.
+     *
+     * @return The size counts, in first-seen order
+     */
+    public Map<String, Long> getBySize() {
+        return bySize;
+    }
+
+    /**
+     * Gets the number of orders in an OrderStats size slot.
+     *
+     * @param slot The size slot
+     * @return The order count
+     */
+    long getSizeOrders(int slot) {
+        return sizeOrders[slot];
+    }
+
+    /**
+     * Gets the revenue of an OrderStats size slot.
+     *
+     * @param slot The size slot
+     * @return The revenue
+     */
+    double getSizeRevenue(int slot) {
+        return sizeRevenue[slot];
+    }
+
+    /**
+     * Gets the number of orders per topping id.
+     *
+     * @return The counts, indexed by topping id, possibly longer than the registry
+     */
+    long[] getToppingOrders() {
+        return toppingOrders;
+    }
+
+    /**
+     * Writes the summary as a JSON object.
+     *
+     * @param verified Whether the batch HMAC was verified
+     * @return The JSON text
+     */
+    public String toJson(boolean verified) {
+        StringWriter text = new StringWriter();
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.beginObject();
+            out.name("verified").value(verified);
+            out.name("orders").value(orders);
+            out.name("revenue").value(Math.round(revenue * 100) / 100.0);
+            out.name("bySize").beginObject();
+            for (Map.Entry<String, Long> entry : bySize.entrySet()) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+            out.endObject();
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+}
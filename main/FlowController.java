@@ -0,0 +1,274 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Adaptive Publish Rate Control
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 final, and registered for connection.blocked once fully constructed
+ */
+package main;
+
+import com.rabbitmq.client.BlockedListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FlowController paces a PizzaPublisher so the broker runs near its peak without tipping into flow control.
+ * Producers call acquire() before each publish; a token bucket hands out one token per message at the current
+ * rate, and lets a quiet producer burst for at most burstMillis worth of the rate.
+ * <p>
+ * The rate is adjusted every interval, additive increase and multiplicative decrease (AIMD): it drops by the
+ * decrease factor when the broker is congested, and grows by a fixed step when it is not and the producer was
+ * held back by the bucket. The broker counts as congested while it has the connection blocked for a resource
+ * alarm, when more than backlog of the confirm window is outstanding, when the mean confirm latency of the
+ * interval is above the target, or when messages were nacked. While the connection is blocked acquire() waits
+ * for the unblock, so producers stop instead of piling messages up behind the alarm.
+ * The class is final because the constructor hands this to the publisher and the adjuster thread.
+ */
+public final class FlowController implements BlockedListener, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlowController.class);
+
+    /** Rate decreases, served on /metrics next to the rate gauges */
+    private static final LongAdder DECREASES = Metrics.counter("pizza_flow_decreases_total", "Times the publish rate was cut for congestion");
+
+    /** The publisher whose confirms are watched */
+    private final PizzaPublisher publisher;
+
+    /** The lowest and highest rate, in messages per second */
+    private final double minRate;
+    private final double maxRate;
+
+    /** Added to the rate per interval without congestion, in messages per second */
+    private final double increase;
+
+    /** Multiplies the rate on congestion */
+    private final double decrease;
+
+    /** The largest outstanding confirm count that is not congestion */
+    private final int backlogLimit;
+
+    /** The highest mean confirm latency that is not congestion, in nanoseconds */
+    private final long targetLatencyNanos;
+
+    /** How long a quiet producer may save up tokens for, in nanoseconds */
+    private final long burstNanos;
+
+    /** Runs the adjustments */
+    private final ScheduledExecutorService adjuster;
+
+    /** The current rate, in messages per second, written under the lock */
+    private volatile double rate;
+
+    /** The time the next token is available, from System.nanoTime(), guarded by this */
+    private long nextToken = System.nanoTime();
+
+    /** Whether the broker has blocked the connection, guarded by this */
+    private boolean blocked;
+
+    /** Whether a producer waited for a token since the last adjustment, guarded by this */
+    private boolean throttled;
+
+    /** The publisher counters at the last adjustment, only used by the adjuster */
+    private long lastConfirmed;
+    private long lastConfirmNanos;
+    private long lastNacked;
+
+    /**
+     * Constructs a FlowController and starts adjusting the rate.
+     *
+     * @param publisher           The publisher to pace, registers the controller for connection.blocked
+     * @param initialRate         The starting rate, in messages per second
+     * @param minRate             The lowest rate
+     * @param maxRate             The highest rate
+     * @param increase            Added to the rate per interval without congestion
+     * @param decrease            Multiplies the rate on congestion, between 0 and 1
+     * @param backlog             The fraction of the confirm window that may be outstanding without congestion
+     * @param targetLatencyMillis The highest mean confirm latency that is not congestion
+     * @param intervalMillis      How often the rate is adjusted
+     * @param burstMillis         How long a quiet producer may save up tokens for
+     */
+    public FlowController(PizzaPublisher publisher, double initialRate, double minRate, double maxRate,
+                          double increase, double decrease, double backlog, long targetLatencyMillis,
+                          long intervalMillis, long burstMillis) {
+        if (minRate <= 0 || maxRate < minRate || increase < 0 || decrease <= 0 || decrease >= 1
+                || backlog <= 0 || backlog > 1 || intervalMillis < 1 || burstMillis < 0) {
+            throw new IllegalArgumentException("rates must be positive, decrease and backlog between 0 and 1");
+        }
+        this.publisher = publisher;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = increase;
+        this.decrease = decrease;
+        this.backlogLimit = (int) (publisher.getMaxOutstanding() * backlog);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(burstMillis);
+        this.rate = Math.max(minRate, Math.min(maxRate, initialRate));
+        this.lastConfirmed = publisher.getConfirmed();
+        this.lastConfirmNanos = publisher.getConfirmNanos();
+        this.lastNacked = publisher.getNacked();
+        Metrics.gauge("pizza_flow_rate", "Current publish rate limit in messages per second", () -> (long) rate);
+        Metrics.gauge("pizza_flow_blocked", "1 while the broker blocks the publishing connection", () -> isBlocked() ? 1 : 0);
+        this.adjuster = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pizza-flow-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        adjuster.scheduleAtFixedRate(this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        // Last, so a blocked notification never sees a half-built controller
+        publisher.addBlockedListener(this);
+    }
+
+    /**
+     * Builds the controller from the system properties: pizza.flow.initialRate (10000), pizza.flow.minRate (100),
+     * pizza.flow.maxRate (1000000), pizza.flow.increase (1000), pizza.flow.decrease (0.7),
+     * pizza.flow.backlog (0.5), pizza.flow.targetLatencyMillis (50), pizza.flow.intervalMillis (100)
+     * and pizza.flow.burstMillis (20), all rates in messages per second.
+     *
+     * @param publisher The publisher to pace
+     * @return The controller, or null unless pizza.flow is true
+     */
+    public static FlowController configured(PizzaPublisher publisher) {
+        if (!Boolean.getBoolean("pizza.flow")) {
+            return null;
+        }
+        return new FlowController(publisher,
+                doubleProperty("pizza.flow.initialRate", 10_000),
+                doubleProperty("pizza.flow.minRate", 100),
+                doubleProperty("pizza.flow.maxRate", 1_000_000),
+                doubleProperty("pizza.flow.increase", 1_000),
+                doubleProperty("pizza.flow.decrease", 0.7),
+                doubleProperty("pizza.flow.backlog", 0.5),
+                Long.getLong("pizza.flow.targetLatencyMillis", 50),
+                Long.getLong("pizza.flow.intervalMillis", 100),
+                Long.getLong("pizza.flow.burstMillis", 20));
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * Takes one token, waiting while the connection is blocked or until the rate allows the next message.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            while (blocked) {
+                wait();
+            }
+            long now = System.nanoTime();
+            // An idle bucket fills up to burstNanos worth of tokens and no further
+            nextToken = Math.max(nextToken, now - burstNanos);
+            waitNanos = nextToken - now;
+            nextToken += (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            if (waitNanos > 0) {
+                throttled = true;
+            }
+        }
+        // Sleeping too long is made up by the next callers, whose tokens are already due
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Gets the current rate limit.
+     *
+     * @return The rate in messages per second
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Checks whether the broker has blocked the connection.
+     *
+     * @return true between connection.blocked and connection.unblocked
+     */
+    public synchronized boolean isBlocked() {
+        return blocked;
+    }
+
+    @Override
+    public void handleBlocked(String reason) {
+        synchronized (this) {
+            blocked = true;
+            cut();
+        }
+        LOG.warn("Broker blocked publishing ({}), rate cut to {} msg/s", reason, String.format("%.0f", rate));
+    }
+
+    @Override
+    public void handleUnblocked() {
+        synchronized (this) {
+            blocked = false;
+            // Start over from now so the time spent blocked is not spent as one burst
+            nextToken = System.nanoTime();
+            notifyAll();
+        }
+        LOG.info("Broker unblocked publishing, resuming at {} msg/s", String.format("%.0f", rate));
+    }
+
+    /**
+     * Reads the publisher's confirms since the last interval and moves the rate.
+     */
+    private void adjust() {
+        long confirmed = publisher.getConfirmed();
+        long confirmNanos = publisher.getConfirmNanos();
+        long nacked = publisher.getNacked();
+        long confirms = confirmed - lastConfirmed;
+        long latency = confirms > 0 ? (confirmNanos - lastConfirmNanos) / confirms : 0;
+        boolean congested = publisher.getOutstanding() > backlogLimit
+                || latency > targetLatencyNanos
+                || nacked > lastNacked;
+        lastConfirmed = confirmed;
+        lastConfirmNanos = confirmNanos;
+        lastNacked = nacked;
+        synchronized (this) {
+            if (blocked) {
+                // Already cut when the block arrived, hold the rate until the unblock
+                congested = false;
+            } else if (congested) {
+                cut();
+            } else if (throttled) {
+                // Only probe upwards while the bucket is what holds the producer back
+                rate = Math.min(maxRate, rate + increase);
+            }
+            throttled = false;
+        }
+        if (congested) {
+            LOG.debug("Congested (outstanding {}, confirm latency {} us), rate cut to {} msg/s",
+                    publisher.getOutstanding(), TimeUnit.NANOSECONDS.toMicros(latency), String.format("%.0f", rate));
+        }
+    }
+
+    /**
+     * Multiplies the rate by the decrease factor. Called holding the lock.
+     */
+    private void cut() {
+        rate = Math.max(minRate, rate * decrease);
+        DECREASES.increment();
+    }
+
+    /**
+     * Stops adjusting the rate and releases producers waiting for an unblock.
+     */
+    @Override
+    public void close() {
+        adjuster.shutdownNow();
+        synchronized (this) {
+            blocked = false;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: HMAC Signing and Verification
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 5 return the Mac to the pool when a signing stream is closed early
+ */
+package main;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * HmacSigner signs and verifies request bodies with HMAC-SHA256 under one shared key.
+ * Keyed Mac instances are created once and reused through a small lock-free pool, so no request pays for
+ * Mac.getInstance or key setup. A pool is used instead of a ThreadLocal because virtual threads live for a
+ * single request and would never hit a per-thread cache. Verification compares the raw digests in
+ * constant time with MessageDigest.isEqual.
+ * Requests carrying ReplayGuard headers are signed over a preamble of "timestamp\nnonce\n" followed by the
+ * body, so the timestamp and nonce cannot be swapped on a captured request.
+ */
+public class HmacSigner {
+
+    /** The MAC algorithm used by WebServiceSend and WebServiceRecv */
+    public static final String ALGORITHM = "HmacSHA256";
+
+    /** The keyed Mac that pooled instances are cloned from */
+    private final Mac prototype;
+
+    /** The key, kept for providers whose Mac cannot be cloned */
+    private final SecretKeySpec keySpec;
+
+    /** Idle keyed Mac instances */
+    private final ConcurrentLinkedQueue<Mac> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs an HmacSigner for a shared secret key.
+     *
+     * @param key The shared secret key
+     */
+    public HmacSigner(String key) {
+        this.keySpec = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.prototype = newMac();
+    }
+
+    /**
+     * Computes the HMAC of a whole message.
+     *
+     * @param data The message bytes
+     * @return The raw HMAC digest
+     */
+    public byte[] sign(byte[] data) {
+        return sign(data, 0, data.length);
+    }
+
+    /**
+     * Computes the HMAC of a range of bytes.
+     *
+     * @param data   The array holding the message
+     * @param offset The first byte of the message
+     * @param length The number of message bytes
+     * @return The raw HMAC digest
+     */
+    public byte[] sign(byte[] data, int offset, int length) {
+        Mac mac = borrow();
+        try {
+            mac.update(data, offset, length);
+            return mac.doFinal();
+        } finally {
+            release(mac);
+        }
+    }
+
+    /**
+     * Builds the signed preamble of a request from its ReplayGuard headers.
+     *
+     * @param timestamp The X-Timestamp header, may be null
+     * @param nonce     The X-Nonce header, may be null
+     * @return "timestamp\nnonce\n" in UTF-8, or no bytes when both headers are missing
+     */
+    public static byte[] preamble(String timestamp, String nonce) {
+        if (timestamp == null && nonce == null) {
+            return new byte[0];
+        }
+        return ((timestamp == null ? "" : timestamp) + '\n' + (nonce == null ? "" : nonce) + '\n')
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes the HMAC of a preamble followed by a message, as Base64.
+     *
+     * @param preamble The bytes signed ahead of the message, see preamble()
+     * @param data     The message bytes
+     * @return The Base64-encoded HMAC
+     */
+    public String signBase64(byte[] preamble, byte[] data) {
+        Mac mac = borrow();
+        try {
+            mac.update(preamble);
+            mac.update(data);
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } finally {
+            release(mac);
+        }
+    }
+
+    /**
+     * Computes the HMAC of a message as Base64, the form sent in the HMAC header.
+     *
+     * @param data The message bytes
+     * @return The Base64-encoded HMAC
+     */
+    public String signBase64(byte[] data) {
+        return Base64.getEncoder().encodeToString(sign(data));
+    }
+
+    /**
+     * Checks a received Base64 HMAC against a message in constant time.
+     *
+     * @param data         The message bytes
+     * @param receivedHmac The Base64 HMAC from the request, may be null
+     * @return true if the HMAC matches
+     */
+    public boolean verify(byte[] data, String receivedHmac) {
+        return matches(sign(data), receivedHmac);
+    }
+
+    /**
+     * Checks a received Base64 HMAC against a preamble followed by a message held in a buffer,
+     * which may be direct, in constant time. The buffer position is not changed.
+     *
+     * @param preamble     The bytes signed ahead of the message, see preamble()
+     * @param data         The buffer holding the message between its position and limit
+     * @param receivedHmac The Base64 HMAC from the request, may be null
+     * @return true if the HMAC matches
+     */
+    public boolean verify(byte[] preamble, ByteBuffer data, String receivedHmac) {
+        Mac mac = borrow();
+        try {
+            mac.update(preamble);
+            mac.update(data.duplicate());
+            return matches(mac.doFinal(), receivedHmac);
+        } finally {
+            release(mac);
+        }
+    }
+
+    /**
+     * Wraps a stream so the HMAC is computed while the body is read.
+     *
+     * @param in The request body
+     * @return A stream that hashes every byte read through it
+     */
+    public SigningInputStream newInputStream(InputStream in) {
+        return new SigningInputStream(in, borrow());
+    }
+
+    /**
+     * Wraps a stream so the HMAC of a preamble and the body is computed while the body is read.
+     *
+     * @param in       The request body
+     * @param preamble The bytes signed ahead of the body, see preamble()
+     * @return A stream that hashes every byte read through it
+     */
+    public SigningInputStream newInputStream(InputStream in, byte[] preamble) {
+        Mac mac = borrow();
+        mac.update(preamble);
+        return new SigningInputStream(in, mac);
+    }
+
+    /**
+     * Wraps a stream so the HMAC is computed while a body is written.
+     *
+     * @param out The stream the body is written to
+     * @return A stream that hashes every byte written through it
+     */
+    public SigningOutputStream newOutputStream(OutputStream out) {
+        return new SigningOutputStream(out, borrow());
+    }
+
+    /**
+     * Wraps a stream so the HMAC of a preamble and the body is computed while the body is written.
+     *
+     * @param out      The stream the body is written to
+     * @param preamble The bytes signed ahead of the body, see preamble()
+     * @return A stream that hashes every byte written through it
+     */
+    public SigningOutputStream newOutputStream(OutputStream out, byte[] preamble) {
+        Mac mac = borrow();
+        mac.update(preamble);
+        return new SigningOutputStream(out, mac);
+    }
+
+    /**
+     * Compares a computed digest with a received Base64 HMAC in constant time.
+     *
+     * @param digest       The computed raw digest
+     * @param receivedHmac The Base64 HMAC from the request, may be null
+     * @return true if they match
+     */
+    static boolean matches(byte[] digest, String receivedHmac) {
+        if (receivedHmac == null) {
+            return false;
+        }
+        byte[] received;
+        try {
+            received = Base64.getDecoder().decode(receivedHmac.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(digest, received);
+    }
+
+    /**
+     * Takes an idle keyed Mac, or makes a new one.
+     *
+     * @return A reset, keyed Mac
+     */
+    private Mac borrow() {
+        Mac mac = idle.poll();
+        if (mac != null) {
+            return mac;
+        }
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return newMac();
+        }
+    }
+
+    /**
+     * Resets a Mac and returns it to the pool.
+     *
+     * @param mac The Mac to return
+     */
+    private void release(Mac mac) {
+        mac.reset();
+        idle.offer(mac);
+    }
+
+    /**
+     * Creates and keys a new Mac.
+     *
+     * @return The keyed Mac
+     */
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(keySpec);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+    }
+
+    /**
+     * An InputStream that feeds every byte it reads into the HMAC.
+     * Call digest() or verify() once the body has been read; the Mac goes back to the pool then, or on close()
+     * when the body is abandoned first, so open it in a try-with-resources block.
+     */
+    public final class SigningInputStream extends FilterInputStream {
+
+        /** The Mac being updated, null once the digest is taken */
+        private Mac mac;
+
+        /** The finished digest */
+        private byte[] digest;
+
+        private SigningInputStream(InputStream in, Mac mac) {
+            super(in);
+            this.mac = mac;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mac.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                mac.update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be hashed too, so read them
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Finishes the HMAC over everything read so far.
+         *
+         * @return The raw HMAC digest
+         */
+        public byte[] digest() {
+            if (digest == null) {
+                if (mac == null) {
+                    throw new IllegalStateException("Stream was closed before its digest was taken");
+                }
+                digest = mac.doFinal();
+                release(mac);
+                mac = null;
+            }
+            return digest;
+        }
+
+        /**
+         * Checks a received Base64 HMAC against everything read so far, in constant time.
+         *
+         * @param receivedHmac The Base64 HMAC from the request, may be null
+         * @return true if the HMAC matches
+         */
+        public boolean verify(String receivedHmac) {
+            return matches(digest(), receivedHmac);
+        }
+
+        /**
+         * Closes the stream and returns the Mac to the pool if the digest was never taken.
+         *
+         * @throws IOException If closing the underlying stream fails
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (mac != null) {
+                    release(mac);
+                    mac = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * An OutputStream that feeds every byte written through it into the HMAC.
+     * Call digest() once the body has been written; the Mac goes back to the pool then, or on close()
+     * when writing fails first, so open it in a try-with-resources block.
+     */
+    public final class SigningOutputStream extends FilterOutputStream {
+
+        /** The Mac being updated, null once the digest is taken */
+        private Mac mac;
+
+        /** The finished digest */
+        private byte[] digest;
+
+        private SigningOutputStream(OutputStream out, Mac mac) {
+            super(out);
+            this.mac = mac;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mac.update((byte) b);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mac.update(b, off, len);
+            out.write(b, off, len);
+        }
+
+        /**
+         * Finishes the HMAC over everything written so far.
+         *
+         * @return The raw HMAC digest
+         */
+        public byte[] digest() {
+            if (digest == null) {
+                if (mac == null) {
+                    throw new IllegalStateException("Stream was closed before its digest was taken");
+                }
+                digest = mac.doFinal();
+                release(mac);
+                mac = null;
+            }
+            return digest;
+        }
+
+        /**
+         * Finishes the HMAC as Base64, the form sent in the HMAC header.
+         *
+         * @return The Base64-encoded HMAC
+         */
+        public String digestBase64() {
+            return Base64.getEncoder().encodeToString(digest());
+        }
+
+        /**
+         * Closes the stream and returns the Mac to the pool if the digest was never taken.
+         *
+         * @throws IOException If closing the underlying stream fails
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (mac != null) {
+                    release(mac);
+                    mac = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Latency Histogram
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram records nanosecond latencies into fixed log-linear buckets without locks.
+ * Values below 64 ns have their own bucket; above that every power of two is split into 32 buckets,
+ * so a reported percentile is within about 3% of the true value. Recording is one atomic increment.
+ */
+public class LatencyHistogram {
+
+    /** Sub-buckets per power of two, as a bit count */
+    private static final int SUB_BITS = 5;
+
+    /** Sub-buckets per power of two */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /** Enough buckets for any non-negative long */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    /** The count of each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** The total number of recorded values */
+    private final LongAdder total = new LongAdder();
+
+    /** The sum of all recorded values, in nanoseconds */
+    private final LongAdder sum = new LongAdder();
+
+    /** The largest recorded value */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Gets the sum of all recorded values.
+     *
+     * @return The sum in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return The maximum in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return The mean in nanoseconds, 0 when empty
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * Gets a percentile of the recorded values.
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The upper bound of the bucket holding the percentile, in nanoseconds, 0 when empty
+     */
+    public long getPercentile(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Gets the number of recorded values at or below a bound, for cumulative histogram export.
+     *
+     * @param nanos The bound in nanoseconds
+     * @return The number of values in buckets whose upper bound is at most nanos
+     */
+    public long getCountAtOrBelow(long nanos) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS && upperBoundOf(i) <= nanos; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Formats the usual percentiles in the given unit.
+     *
+     * @param unit The unit to print, e.g. MICROSECONDS
+     * @return A one line summary
+     */
+    public String summary(TimeUnit unit) {
+        String suffix = unitSuffix(unit);
+        return String.format("count=%d p50=%.1f%s p90=%.1f%s p99=%.1f%s p99.9=%.1f%s max=%.1f%s",
+                getCount(),
+                convert(getPercentile(50), unit), suffix,
+                convert(getPercentile(90), unit), suffix,
+                convert(getPercentile(99), unit), suffix,
+                convert(getPercentile(99.9), unit), suffix,
+                convert(getMax(), unit), suffix);
+    }
+
+    private static double convert(long nanos, TimeUnit unit) {
+        return nanos / (double) unit.toNanos(1);
+    }
+
+    private static String unitSuffix(TimeUnit unit) {
+        switch (unit) {
+            case NANOSECONDS:
+                return "ns";
+            case MICROSECONDS:
+                return "us";
+            case MILLISECONDS:
+                return "ms";
+            default:
+                return "s";
+        }
+    }
+
+    /**
+     * Finds the bucket of a value.
+     *
+     * @param value A non-negative value
+     * @return The bucket index
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Finds the largest value that falls in a bucket.
+     *
+     * @param bucket The bucket index
+     * @return The upper bound of the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long top = bucket - ((long) shift << SUB_BITS);
+        long upper = ((top + 1) << shift) - 1;
+        // The last bucket would overflow past Long.MAX_VALUE
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
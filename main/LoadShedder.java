@@ -0,0 +1,168 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Web Service Load Shedding
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 log failures through SLF4J
+ */
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadShedder moves request handling off the HttpServer dispatcher thread and caps the requests in flight.
+ * Admission runs on the dispatcher: a request either gets one of maxInFlight permits and is handed to the
+ * worker executor, or is answered at once with 503 Service Unavailable and a Retry-After header.
+ * Work never queues beyond maxInFlight, so a burst cannot build up unbounded latency.
+ */
+public class LoadShedder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadShedder.class);
+
+    /** Runs the admitted requests */
+    private final ExecutorService workers;
+
+    /** One permit per request allowed in flight */
+    private final Semaphore permits;
+
+    /** The Retry-After value sent with 503 responses, in seconds */
+    private final int retryAfterSeconds;
+
+    /** Number of requests answered with 503 */
+    private final LongAdder rejected = new LongAdder();
+
+    /** The configured in-flight limit */
+    private final int maxInFlight;
+
+    /**
+     * Constructs a LoadShedder.
+     *
+     * @param workers           The executor that runs admitted requests
+     * @param maxInFlight       The maximum number of requests admitted at once
+     * @param retryAfterSeconds The Retry-After value of 503 responses, in seconds
+     */
+    public LoadShedder(ExecutorService workers, int maxInFlight, int retryAfterSeconds) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.workers = workers;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Builds a LoadShedder from the system properties:
+     * pizza.http.executor ("default", "virtual" or "pool"), pizza.http.threads (pool size),
+     * pizza.http.maxInFlight and pizza.http.retryAfter (seconds).
+     *
+     * @return The configured LoadShedder, or null for "default" which keeps the single dispatcher thread
+     */
+    public static LoadShedder configured() {
+        String mode = System.getProperty("pizza.http.executor", "default");
+        int maxInFlight = Integer.getInteger("pizza.http.maxInFlight", 256);
+        int retryAfter = Integer.getInteger("pizza.http.retryAfter", 1);
+        switch (mode) {
+            case "default":
+                return null;
+            case "virtual":
+                // One virtual thread per request, the permits are the only bound
+                return new LoadShedder(VirtualThreads.newExecutor(), maxInFlight, retryAfter);
+            case "pool":
+                int threads = Integer.getInteger("pizza.http.threads", Runtime.getRuntime().availableProcessors() * 2);
+                // Admission already bounds the work, so the queue never needs more than maxInFlight slots
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(maxInFlight));
+                return new LoadShedder(pool, maxInFlight, retryAfter);
+            default:
+                throw new IllegalArgumentException("Unknown pizza.http.executor mode: " + mode);
+        }
+    }
+
+    /**
+     * Wraps a handler so its requests go through admission and run on the workers.
+     *
+     * @param handler The handler to protect
+     * @return The admitting handler to register with the HttpServer
+     */
+    public HttpHandler wrap(HttpHandler handler) {
+        return exchange -> {
+            if (!permits.tryAcquire()) {
+                reject(exchange);
+                return;
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        handler.handle(exchange);
+                    } catch (IOException | RuntimeException e) {
+                        LOG.error("Request failed remote={}", exchange.getRemoteAddress(), e);
+                        // Free the connection, the client sees a reset instead of a hang
+                        exchange.close();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                reject(exchange);
+            }
+        };
+    }
+
+    /**
+     * Answers a request with 503 Service Unavailable and a Retry-After header.
+     *
+     * @param exchange The request to reject
+     * @throws IOException If the response cannot be sent
+     */
+    private void reject(HttpExchange exchange) throws IOException {
+        rejected.increment();
+        String response = "Server busy, retry later.";
+        exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+        exchange.sendResponseHeaders(503, response.getBytes().length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(response.getBytes());
+        os.close();
+    }
+
+    /**
+     * Gets the number of requests currently admitted.
+     *
+     * @return The in-flight request count
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of requests rejected with 503.
+     *
+     * @return The rejected request count
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting work and lets admitted requests finish.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Sampled Logging
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * LogSampler is a logback TurboFilter that keeps about one in N per-order log events, with its own N per level.
+ * It only samples events carrying the configured marker (ORDER by default), so startup messages and reports are
+ * always written. ERROR events are never dropped. The decision is a thread-local random draw, so sampling shares
+ * no state between threads, and a dropped event is rejected before its message is formatted or queued.
+ * Configured in logback.xml, e.g. {@code <turboFilter class="main.LogSampler"><infoRate>100</infoRate></turboFilter>}.
+ */
+public class LogSampler extends TurboFilter {
+
+    /** The marker of the events that are sampled */
+    private String marker = "ORDER";
+
+    /** Keep one in this many events per level, 1 keeps everything */
+    private int trace = 1;
+    private int debug = 1;
+    private int info = 1;
+    private int warn = 1;
+
+    @Override
+    public FilterReply decide(Marker eventMarker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // isXxxEnabled() checks pass a null format; sample the event itself, not the guard, or it is sampled twice
+        if (format == null || eventMarker == null || !eventMarker.contains(marker)) {
+            return FilterReply.NEUTRAL;
+        }
+        int rate = rateOf(level);
+        if (rate <= 1 || ThreadLocalRandom.current().nextInt(rate) == 0) {
+            return FilterReply.NEUTRAL;
+        }
+        return FilterReply.DENY;
+    }
+
+    /**
+     * Gets the sampling rate of a level.
+     *
+     * @param level The event level
+     * @return N, to keep one in N events
+     */
+    private int rateOf(Level level) {
+        switch (level.toInt()) {
+            case Level.TRACE_INT:
+                return trace;
+            case Level.DEBUG_INT:
+                return debug;
+            case Level.INFO_INT:
+                return info;
+            case Level.WARN_INT:
+                return warn;
+            default:
+                return 1;
+        }
+    }
+
+    public void setMarker(String marker) {
+        this.marker = marker;
+    }
+
+    public void setTraceRate(int rate) {
+        this.trace = rate;
+    }
+
+    public void setDebugRate(int rate) {
+        this.debug = rate;
+    }
+
+    public void setInfoRate(int rate) {
+        this.info = rate;
+    }
+
+    public void setWarnRate(int rate) {
+        this.warn = rate;
+    }
+}
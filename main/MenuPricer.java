@@ -0,0 +1,250 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Server-Side Order Pricing
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 price and update received orders for both receivers
+ */
+package main;
+
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MenuPricer prices every incoming order from the current PizzaMenu, replacing the price the client sent,
+ * and rejects orders that are not on the menu. Recv and WebServiceRecv run each order through apply()
+ * before it is journaled or counted, through priceOrder() and updateOrder(), which also work without a menu.
+ * <p>
+ * The menu is menu.json on the classpath, or the file named by pizza.menu.file, which is checked for changes
+ * every pizza.menu.reloadSeconds. A changed file is compiled on the reload thread and swapped in with one
+ * volatile write, so an order is priced entirely by the old menu or entirely by the new one; a file that does
+ * not compile is logged and the running menu is kept.
+ */
+public class MenuPricer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MenuPricer.class);
+    private static final Marker ORDER = MarkerFactory.getMarker("ORDER");
+
+    /** The menu shipped with the service */
+    private static final String DEFAULT_MENU = "/menu.json";
+
+    /** Pricing counters, served on /metrics */
+    private static final LongAdder PRICED = Metrics.counter("pizza_menu_priced_total", "Orders priced from the menu");
+    private static final LongAdder REPRICED = Metrics.counter("pizza_menu_repriced_total", "Orders whose client price differed from the menu price");
+    private static final LongAdder REJECTED = Metrics.counter("pizza_menu_rejected_total", "Orders rejected for a size or topping that is not on the menu");
+    private static final LongAdder RELOADS = Metrics.counter("pizza_menu_reloads_total", "Menus reloaded from pizza.menu.file");
+
+    /** The menu orders are priced from */
+    private volatile PizzaMenu menu;
+
+    /** The menu file watched for changes, null for the classpath menu */
+    private final Path file;
+
+    /** The modification time of the loaded file */
+    private FileTime loadedTime;
+
+    /** Checks the file for changes, null for the classpath menu */
+    private final ScheduledExecutorService reloader;
+
+    /**
+     * Constructs a MenuPricer with a fixed menu.
+     *
+     * @param menu The menu
+     */
+    public MenuPricer(PizzaMenu menu) {
+        this.menu = menu;
+        this.file = null;
+        this.reloader = null;
+    }
+
+    /**
+     * Constructs a MenuPricer that loads a menu file and reloads it when it changes.
+     *
+     * @param file          The menu file
+     * @param reloadSeconds How often the file is checked, 0 to never reload it
+     * @throws IOException If the file cannot be read or compiled
+     */
+    public MenuPricer(Path file, long reloadSeconds) throws IOException {
+        this.file = file;
+        this.loadedTime = Files.getLastModifiedTime(file);
+        this.menu = load(file);
+        LOG.info("Menu loaded from {}: {}", file, menu);
+        if (reloadSeconds > 0) {
+            this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pizza-menu-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(this::reloadIfChanged, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+        } else {
+            this.reloader = null;
+        }
+    }
+
+    /**
+     * Builds the pricer from the system properties pizza.menu.file and pizza.menu.reloadSeconds (5).
+     *
+     * @return The pricer, or null when pizza.menu is false, which keeps the prices the clients send
+     * @throws IOException If the menu cannot be read or compiled
+     */
+    public static MenuPricer configured() throws IOException {
+        if ("false".equalsIgnoreCase(System.getProperty("pizza.menu"))) {
+            return null;
+        }
+        String file = System.getProperty("pizza.menu.file");
+        if (file != null) {
+            return new MenuPricer(Paths.get(file), Long.getLong("pizza.menu.reloadSeconds", 5));
+        }
+        try (InputStream in = MenuPricer.class.getResourceAsStream(DEFAULT_MENU)) {
+            if (in == null) {
+                throw new FileNotFoundException("No " + DEFAULT_MENU + " on the classpath");
+            }
+            PizzaMenu menu = parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+            LOG.info("Menu loaded from the classpath: {}", menu);
+            return new MenuPricer(menu);
+        }
+    }
+
+    /**
+     * Prices an order from the menu and sets its price.
+     *
+     * @param pizza The order
+     * @return The price in cents, or a negative PizzaMenu rejection code, in which case the order is unchanged
+     */
+    public long apply(Pizza pizza) {
+        long cents = menu.priceCents(pizza);
+        if (cents < 0) {
+            REJECTED.increment();
+            return cents;
+        }
+        PRICED.increment();
+        double price = cents / 100.0;
+        if (pizza.getPrice() != price) {
+            REPRICED.increment();
+            pizza.setPrice(price);
+        }
+        return cents;
+    }
+
+    /**
+     * Prices a received order from the menu, replacing the price it was sent with.
+     *
+     * @param pricer The pricer, null when pizza.menu is false
+     * @param pizza  The order as received
+     * @return null once the order is priced or when there is no pricer, otherwise why it is not on the menu
+     */
+    static String priceOrder(MenuPricer pricer, Pizza pizza) {
+        if (pricer == null) {
+            return null;
+        }
+        long cents = pricer.apply(pizza);
+        return cents < 0 ? PizzaMenu.reason(cents) : null;
+    }
+
+    /**
+     * Updates a received order the way the receivers answer it: a large Hawaiian with pineapple, ham and bacon,
+     * priced from the menu, or at fallbackPrice when there is no pricer or the menu does not price it.
+     *
+     * @param pricer        The pricer, null when pizza.menu is false
+     * @param pizza         The order to update
+     * @param fallbackPrice The price without a menu price
+     */
+    static void updateOrder(MenuPricer pricer, Pizza pizza, double fallbackPrice) {
+        pizza.setName("Hawaiian");
+        pizza.setSize("Large");
+        pizza.setToppings(new String[]{"Pineapple", "Ham", "Bacon"});
+        long cents = pricer == null ? -1 : pricer.getMenu().priceCents(pizza);
+        pizza.setPrice(cents < 0 ? fallbackPrice : cents / 100.0);
+
+        LOG.debug(ORDER, "Order updated name={} size={} price={} toppings={}",
+                pizza.getName(), pizza.getSize(), pizza.getPrice(), pizza.getToppings());
+    }
+
+    /**
+     * Gets the menu orders are priced from right now.
+     *
+     * @return The current menu
+     */
+    public PizzaMenu getMenu() {
+        return menu;
+    }
+
+    /**
+     * Compiles the menu file again if it changed since it was loaded.
+     */
+    private void reloadIfChanged() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.equals(loadedTime)) {
+                return;
+            }
+            // Remember the time first, so a file that does not compile is not retried until it changes again
+            loadedTime = modified;
+            PizzaMenu next = load(file);
+            menu = next;
+            RELOADS.increment();
+            LOG.info("Menu reloaded from {}: {}", file, next);
+        } catch (IOException e) {
+            LOG.error("Keeping the current menu, {} could not be reloaded", file, e);
+        }
+    }
+
+    /**
+     * Reads and compiles a menu file.
+     *
+     * @param file The menu file
+     * @return The compiled menu
+     * @throws IOException If the file cannot be read or compiled
+     */
+    private static PizzaMenu load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Compiles a menu, reporting a bad menu as an IOException.
+     *
+     * @param reader The menu JSON
+     * @return The compiled menu
+     * @throws IOException If the menu does not compile
+     */
+    private static PizzaMenu parse(Reader reader) throws IOException {
+        try {
+            return PizzaMenu.parse(reader);
+        } catch (JsonParseException | IllegalStateException | NullPointerException | ArithmeticException
+                 | NumberFormatException e) {
+            throw new IOException("Invalid menu: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops watching the menu file.
+     */
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+}
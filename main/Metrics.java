@@ -0,0 +1,230 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Metrics Registry
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics holds the process-wide counters, gauges and latency histograms and writes them
+ * in the Prometheus text format. Counters are LongAdders and histograms are LatencyHistograms,
+ * so recording never takes a lock; a metric is looked up once and kept in a static field.
+ * WebServiceRecv serves them on /metrics; Send and Recv serve them on their own small server
+ * when the system property pizza.metrics.port is set.
+ */
+public final class Metrics {
+
+    /** The message header carrying the send time, in microseconds since the epoch */
+    public static final String SENT_AT_HEADER = "X-Sent-At";
+
+    /** The Prometheus text format content type */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** The histogram bucket bounds exported to Prometheus, in seconds */
+    private static final double[] BUCKET_SECONDS = {
+            0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    /** The le label of each bucket, written without an exponent */
+    private static final String[] BUCKET_LABELS = new String[BUCKET_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKET_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    /** Every registered metric by name */
+    private static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Gets or registers a counter.
+     *
+     * @param name The metric name, ending in _total
+     * @param help The description
+     * @return The counter
+     */
+    public static LongAdder counter(String name, String help) {
+        return register(name, help, "counter", new LongAdder()).counter;
+    }
+
+    /**
+     * Gets or registers a latency histogram exported in seconds.
+     *
+     * @param name The metric name, ending in _seconds
+     * @param help The description
+     * @return The histogram, record values in nanoseconds
+     */
+    public static LatencyHistogram histogram(String name, String help) {
+        return register(name, help, "histogram", new LatencyHistogram()).histogram;
+    }
+
+    /**
+     * Registers a gauge read when the metrics are written. A later gauge of the same name replaces it.
+     *
+     * @param name  The metric name
+     * @param help  The description
+     * @param value Reads the current value
+     */
+    public static void gauge(String name, String help, LongSupplier value) {
+        METRICS.put(name, new Metric(name, help, "gauge", value));
+    }
+
+    /**
+     * Gets the current time for the SENT_AT_HEADER.
+     *
+     * @return Microseconds since the epoch
+     */
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return TimeUnit.SECONDS.toMicros(now.getEpochSecond()) + now.getNano() / 1_000;
+    }
+
+    /**
+     * Records the time since a SENT_AT_HEADER value. Missing or malformed values are ignored,
+     * so senders that do not stamp their messages are still accepted.
+     *
+     * @param histogram The end-to-end histogram
+     * @param sentAt    The header value, may be null
+     */
+    public static void recordSince(LatencyHistogram histogram, Object sentAt) {
+        if (sentAt == null) {
+            return;
+        }
+        long sentMicros;
+        if (sentAt instanceof Number) {
+            sentMicros = ((Number) sentAt).longValue();
+        } else {
+            try {
+                sentMicros = Long.parseLong(sentAt.toString().trim());
+            } catch (NumberFormatException e) {
+                return;
+            }
+        }
+        // Clocks of different hosts can disagree, record skew as 0 instead of a huge value
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(Math.max(0, nowMicros() - sentMicros)));
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        METRICS.values().stream()
+                .sorted((a, b) -> a.name.compareTo(b.name))
+                .forEach(metric -> metric.write(out));
+        return out.toString();
+    }
+
+    /**
+     * Builds the handler of the /metrics context.
+     *
+     * @return A handler answering GET with the Prometheus text
+     */
+    public static HttpHandler handler() {
+        return exchange -> {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        };
+    }
+
+    /**
+     * Starts a server with only the /metrics context when pizza.metrics.port is set.
+     *
+     * @return The server, or null when pizza.metrics.port is not set
+     * @throws IOException If the port cannot be bound
+     */
+    public static HttpServer startConfiguredServer() throws IOException {
+        Integer port = Integer.getInteger("pizza.metrics.port");
+        if (port == null) {
+            return null;
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", handler());
+        server.start();
+        return server;
+    }
+
+    private static Metric register(String name, String help, String type, Object value) {
+        Metric metric = METRICS.computeIfAbsent(name, n -> new Metric(n, help, type, value));
+        if (!metric.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + metric.type);
+        }
+        return metric;
+    }
+
+    /**
+     * One named metric and its value holder.
+     */
+    private static final class Metric {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final LongAdder counter;
+        private final LatencyHistogram histogram;
+        private final LongSupplier gauge;
+
+        private Metric(String name, String help, String type, Object value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.counter = value instanceof LongAdder ? (LongAdder) value : null;
+            this.histogram = value instanceof LatencyHistogram ? (LatencyHistogram) value : null;
+            this.gauge = value instanceof LongSupplier ? (LongSupplier) value : null;
+        }
+
+        private void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            if (counter != null) {
+                out.append(name).append(' ').append(counter.sum()).append('\n');
+            } else if (gauge != null) {
+                out.append(name).append(' ').append(gauge.getAsLong()).append('\n');
+            } else {
+                // Read the count first so no bucket reports more than the total
+                long count = histogram.getCount();
+                for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+                    long atOrBelow = histogram.getCountAtOrBelow((long) (BUCKET_SECONDS[i] * 1e9));
+                    out.append(name).append("_bucket{le=\"").append(BUCKET_LABELS[i]).append("\"} ")
+                            .append(Math.min(atOrBelow, count)).append('\n');
+                }
+                out.append(name).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+                out.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+                out.append(name).append("_count ").append(count).append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,460 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Bulk Order File Import
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 4 skip lines that fail to decode or encode with any runtime error
+ */
+package main;
+
+import com.rabbitmq.client.AMQP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OrderImporter publishes the orders of a JSON-lines export file, one Pizza per line, to pizzaQueue,
+ * or to the shard queue of each order when given a PizzaShards.
+ * The file is memory-mapped and cut into chunks of about chunkBytes that end on a newline, and the chunks are
+ * parsed in parallel on a fork-join pool with PizzaCodec. Every order goes through a PizzaPublisher, so the
+ * orders are batched and confirmed by the broker; lines that are not a valid Pizza are logged and skipped.
+ * <p>
+ * Progress is kept in a checkpoint file next to the import: the byte offset up to which every order has been
+ * confirmed, and the size of the file it belongs to. A chunk counts once all of its orders are confirmed, and
+ * the checkpoint only moves over chunks that are done in file order, so an interrupted import resumes at the
+ * first unfinished chunk. Orders of that chunk confirmed before the interruption are published again,
+ * the import is at least once. The checkpoint is removed when the whole file is imported.
+ */
+public class OrderImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderImporter.class);
+
+    /** Import counters, served on /metrics */
+    private static final LongAdder IMPORTED = Metrics.counter("pizza_import_orders_total", "Orders read from import files and published");
+    private static final LongAdder SKIPPED = Metrics.counter("pizza_import_skipped_total", "Import lines that were not a valid order");
+
+    /** Publishes the orders */
+    private final PizzaPublisher publisher;
+
+    /** The wire format of the published orders */
+    private final PizzaFormat format;
+
+    /** The properties of every published order, naming the wire format */
+    private final AMQP.BasicProperties props;
+
+    /** Paces the publishes, null to publish as fast as the confirm window allows */
+    private final FlowController flow;
+
+    /** The shard topology the orders are routed over, null to publish to the publisher's queue */
+    private final PizzaShards shards;
+
+    /** The number of chunks parsed at once */
+    private final int threads;
+
+    /** The size a chunk is cut at, before it is extended to the end of its last line */
+    private final long chunkBytes;
+
+    /**
+     * Constructs an OrderImporter.
+     *
+     * @param publisher  The publisher the orders are sent through, owned by the caller
+     * @param format     The wire format of the published orders
+     * @param threads    The number of chunks parsed at once
+     * @param chunkBytes The size a chunk is cut at
+     */
+    public OrderImporter(PizzaPublisher publisher, PizzaFormat format, int threads, long chunkBytes) {
+        this(publisher, format, null, threads, chunkBytes);
+    }
+
+    /**
+     * Constructs an OrderImporter whose publishes are paced by a FlowController.
+     *
+     * @param publisher  The publisher the orders are sent through, owned by the caller
+     * @param format     The wire format of the published orders
+     * @param flow       Paces the publishes, may be null
+     * @param threads    The number of chunks parsed at once
+     * @param chunkBytes The size a chunk is cut at
+     */
+    public OrderImporter(PizzaPublisher publisher, PizzaFormat format, FlowController flow, int threads,
+                         long chunkBytes) {
+        this(publisher, format, flow, null, threads, chunkBytes);
+    }
+
+    /**
+     * Constructs an OrderImporter that routes each order to its shard queue, the way Send does with pizza.shards.
+     *
+     * @param publisher  The publisher the orders are sent through, owned by the caller; without a queue when sharded
+     * @param format     The wire format of the published orders
+     * @param flow       Paces the publishes, may be null
+     * @param shards     The shard topology, declared by the caller, or null to publish to the publisher's queue
+     * @param threads    The number of chunks parsed at once
+     * @param chunkBytes The size a chunk is cut at
+     */
+    public OrderImporter(PizzaPublisher publisher, PizzaFormat format, FlowController flow, PizzaShards shards,
+                         int threads, long chunkBytes) {
+        if (threads < 1 || chunkBytes < 1 || chunkBytes > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("threads must be positive and chunkBytes between 1 byte and 1 GB");
+        }
+        this.publisher = publisher;
+        this.format = format;
+        this.flow = flow;
+        this.shards = shards;
+        this.props = new AMQP.BasicProperties.Builder().contentType(format.getContentType()).build();
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Gets the checkpoint file of an import file, the file name with .checkpoint appended.
+     *
+     * @param file The import file
+     * @return The checkpoint file
+     */
+    public static Path checkpointOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * Imports a file, resuming from its checkpoint, and waits until every order is confirmed.
+     *
+     * @param file The JSON-lines file
+     * @return The number of orders published
+     * @throws IOException          If the file cannot be read, or an order was nacked; the checkpoint then
+     *                              holds the offset to resume from
+     * @throws InterruptedException If interrupted while importing
+     */
+    public long importFile(Path file) throws IOException, InterruptedException {
+        Path checkpoint = checkpointOf(file);
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long from = readCheckpoint(checkpoint, size);
+            if (from >= size) {
+                LOG.info("{} is already imported", file);
+                Files.deleteIfExists(checkpoint);
+                return 0;
+            }
+            List<Chunk> chunks = split(channel, from, size);
+            LOG.info("Importing {} from offset {} of {} in {} chunks on {} threads",
+                    file, from, size, chunks.size(), threads);
+
+            Progress progress = new Progress(checkpoint, size, chunks);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long imported = 0;
+            try {
+                List<ForkJoinTask<Long>> tasks = new ArrayList<>(chunks.size());
+                for (Chunk chunk : chunks) {
+                    tasks.add(pool.submit(() -> importChunk(channel, chunk, progress)));
+                }
+                for (ForkJoinTask<Long> task : tasks) {
+                    imported += task.get();
+                }
+                // The last batch only goes out when it is flushed
+                publisher.flush();
+                progress.done.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw new IOException("Import of " + file + " stopped, it resumes at offset "
+                        + progress.getOffset() + " on the next run", cause);
+            } finally {
+                pool.shutdownNow();
+                progress.close();
+            }
+            Files.deleteIfExists(checkpoint);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            LOG.info("Imported {} orders from {} in {} s: {} orders/s", imported, file,
+                    String.format("%.2f", seconds), String.format("%.0f", imported / seconds));
+            return imported;
+        }
+    }
+
+    /**
+     * Cuts the rest of the file into chunks that each end just after a newline, or at the end of the file.
+     *
+     * @param channel The file
+     * @param from    The offset of the first chunk, the start of a line
+     * @param size    The size of the file
+     * @return The chunks in file order
+     * @throws IOException If the file cannot be read, or a line is too long for one chunk
+     */
+    private List<Chunk> split(FileChannel channel, long from, long size) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        long start = from;
+        while (start < size) {
+            long end = nextLineStart(channel, Math.min(size, start + chunkBytes), size, probe);
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("A line at offset " + start + " is longer than 2 GB");
+            }
+            chunks.add(new Chunk(chunks.size(), start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Finds the first line start at or after an offset.
+     *
+     * @param channel  The file
+     * @param position The offset to search from
+     * @param size     The size of the file
+     * @param probe    A buffer to read into
+     * @return The offset just after the next newline, or size if there is none
+     * @throws IOException If the file cannot be read
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer probe)
+            throws IOException {
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Maps one chunk, parses its lines and publishes the orders, then hands the chunk's confirms to the progress.
+     *
+     * @param channel  The file
+     * @param chunk    The chunk
+     * @param progress The import progress
+     * @return The number of orders published
+     * @throws IOException          If the chunk cannot be mapped or published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    private long importChunk(FileChannel channel, Chunk chunk, Progress progress)
+            throws IOException, InterruptedException {
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+        List<CompletableFuture<Void>> confirms = new ArrayList<>();
+        int limit = in.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && in.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            CompletableFuture<Void> confirm = importLine(in, chunk.start, lineStart, lineEnd);
+            if (confirm != null) {
+                confirms.add(confirm);
+            }
+            lineStart = lineEnd + 1;
+        }
+        progress.track(chunk, CompletableFuture.allOf(confirms.toArray(new CompletableFuture<?>[0])));
+        IMPORTED.add(confirms.size());
+        return confirms.size();
+    }
+
+    /**
+     * Parses one line and publishes its order.
+     *
+     * @param in         The mapped chunk
+     * @param chunkStart The file offset of the chunk, for the log
+     * @param from       The first byte of the line
+     * @param to         The end of the line, excluding the newline
+     * @return The confirm of the published order, or null if the line is blank or not a valid order
+     * @throws IOException          If the order cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    private CompletableFuture<Void> importLine(MappedByteBuffer in, long chunkStart, int from, int to)
+            throws IOException, InterruptedException {
+        // Trim the line, which also drops the \r of Windows line ends
+        while (from < to && in.get(from) <= ' ') {
+            from++;
+        }
+        while (to > from && in.get(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return null;
+        }
+        byte[] line = new byte[to - from];
+        in.get(from, line);
+        Pizza pizza;
+        byte[] body = null;
+        try {
+            pizza = PizzaCodec.decode(line);
+            // A valid JSON line is published as it is, other formats are encoded from the parsed order
+            if (pizza != null) {
+                body = format == PizzaFormat.JSON ? line : format.encode(pizza);
+            }
+        } catch (RuntimeException e) {
+            // Any line the codecs cannot handle is skipped, one bad line must not fail its whole chunk
+            pizza = null;
+        }
+        if (pizza == null) {
+            SKIPPED.increment();
+            LOG.warn("Skipping line at offset {}, it is not an order: {}", chunkStart + from,
+                    new String(line, 0, Math.min(line.length, 80), StandardCharsets.UTF_8));
+            return null;
+        }
+        if (flow != null) {
+            flow.acquire();
+        }
+        if (shards != null) {
+            return publisher.publishRoutedConfirmed(PizzaShards.EXCHANGE, shards.routingKey(pizza), props, body);
+        }
+        return publisher.publishConfirmed(props, body);
+    }
+
+    /**
+     * Reads the offset to resume from.
+     *
+     * @param checkpoint The checkpoint file
+     * @param size       The size of the import file
+     * @return The offset, 0 if there is no checkpoint or it belongs to a file of another size
+     * @throws IOException If the checkpoint cannot be read
+     */
+    static long readCheckpoint(Path checkpoint, long size) throws IOException {
+        String text;
+        try {
+            text = Files.readString(checkpoint, StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        String[] fields = text.split("\\s+");
+        try {
+            long offset = Long.parseLong(fields[0]);
+            long checkpointSize = Long.parseLong(fields[1]);
+            if (checkpointSize == size && offset >= 0 && offset <= size) {
+                return offset;
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            // Treated like a checkpoint of another file
+        }
+        LOG.warn("Ignoring checkpoint {}, it does not match the file, importing from the start", checkpoint);
+        return 0;
+    }
+
+    /**
+     * Replaces the checkpoint with a new offset. The file is written next to it and moved over it,
+     * so a crash leaves either the old or the new checkpoint.
+     *
+     * @param checkpoint The checkpoint file
+     * @param offset     The offset every order before is confirmed
+     * @param size       The size of the import file
+     * @throws IOException If the checkpoint cannot be written
+     */
+    static void writeCheckpoint(Path checkpoint, long offset, long size) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.writeString(temp, offset + " " + size + "\n", StandardCharsets.UTF_8);
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A newline-aligned range of the file.
+     */
+    private static final class Chunk {
+        private final int index;
+        private final long start;
+        private final long end;
+
+        private Chunk(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Moves the checkpoint over the chunks whose orders are all confirmed, in file order.
+     * Confirms arrive on the connection threads, so the checkpoint is written on a thread of its own.
+     */
+    private static final class Progress {
+        private final Path checkpoint;
+        private final long size;
+        private final List<Chunk> chunks;
+        private final boolean[] finished;
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pizza-import-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        /** Completes when every chunk is confirmed, fails with the first nack */
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        /** The first chunk not yet confirmed, only used on the writer thread */
+        private int next;
+
+        /** The checkpoint offset */
+        private volatile long offset;
+
+        private Progress(Path checkpoint, long size, List<Chunk> chunks) {
+            this.checkpoint = checkpoint;
+            this.size = size;
+            this.chunks = chunks;
+            this.finished = new boolean[chunks.size()];
+            this.offset = chunks.get(0).start;
+        }
+
+        /**
+         * Advances the checkpoint once the confirms of a chunk are in.
+         *
+         * @param chunk    The chunk
+         * @param confirms Completes when every order of the chunk is confirmed
+         */
+        private void track(Chunk chunk, CompletableFuture<Void> confirms) {
+            confirms.whenCompleteAsync((ignored, failure) -> {
+                if (failure != null) {
+                    done.completeExceptionally(failure);
+                    return;
+                }
+                finished[chunk.index] = true;
+                if (!finished[next]) {
+                    return;
+                }
+                while (next < finished.length && finished[next]) {
+                    next++;
+                }
+                offset = next < chunks.size() ? chunks.get(next).start : size;
+                try {
+                    writeCheckpoint(checkpoint, offset, size);
+                } catch (IOException e) {
+                    done.completeExceptionally(e);
+                    return;
+                }
+                if (next == finished.length) {
+                    done.complete(null);
+                }
+            }, writer);
+        }
+
+        private long getOffset() {
+            return offset;
+        }
+
+        private void close() {
+            writer.shutdown();
+        }
+    }
+}
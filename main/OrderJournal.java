@@ -0,0 +1,648 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Order Write-Ahead Journal
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 5 truncate the last segment on close and delete segments past the retention
+ */
+package main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * OrderJournal is an append-only write-ahead log of accepted orders in memory-mapped segment files.
+ * Each record is [int payload length][int CRC32C of type and payload][byte type][payload], where the type names
+ * the PizzaFormat of the payload. Appends copy the record into the mapped segment under a short lock and
+ * return a future that completes once the record is on disk.
+ * <p>
+ * Syncing is a group commit: a single flusher thread forces the mapped pages to disk once syncRecords
+ * records are waiting or syncMicros after the first one arrived, whichever comes first, and then completes
+ * every future the sync covered. One force is shared by every order in the group. The futures are completed on
+ * a completion executor, one task per append, so the stages callers chain on them run in parallel and never
+ * hold up the next sync.
+ * If a sync or a segment roll fails, nothing after it can be trusted to reach the disk: every waiting future is
+ * failed with the IOException, the journal is marked failed and every later append fails at once.
+ * <p>
+ * A segment is a fixed size file named orders-NNNNNNNNNNNNNNNN.journal. A new segment is started whenever
+ * the current one is full and every time the journal is opened, so a segment is never appended to
+ * after a restart. Replay reads the segments in parallel and stops each at the first zero length or
+ * bad checksum, which is where a crash cut it off.
+ * <p>
+ * close() truncates the current segment to the records it holds, or deletes it when it holds none, so a restart
+ * does not leave a mostly empty segment behind. With a retention of N segments, rolling a full segment deletes
+ * the oldest segments beyond the newest N once every record in them is synced; replay, and so the rebuilt rollups,
+ * then covers the retained segments only.
+ */
+public class OrderJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderJournal.class);
+
+    /** Bytes before the payload: length, checksum and type */
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + 1;
+
+    /** The record type of a JSON order */
+    private static final byte TYPE_JSON = 1;
+
+    /** The record type of a binary order */
+    private static final byte TYPE_BINARY = 2;
+
+    /** Journal counters and sync latency, served on /metrics */
+    private static final LongAdder RECORDS = Metrics.counter("pizza_journal_records_total", "Orders appended to the journal");
+    private static final LongAdder SYNCS = Metrics.counter("pizza_journal_syncs_total", "Group commits forced to disk");
+    private static final LongAdder SEGMENTS_DELETED = Metrics.counter("pizza_journal_segments_deleted_total", "Segments deleted past the retention");
+    private static final LatencyHistogram SYNC_TIME = Metrics.histogram("pizza_journal_sync_seconds", "Time to force one group of records to disk");
+
+    /** The directory holding the segments */
+    private final Path directory;
+
+    /** The size of each segment file */
+    private final int segmentSize;
+
+    /** Sync once this many records are waiting */
+    private final int syncRecords;
+
+    /** Sync this long after the first waiting record, in nanoseconds */
+    private final long syncNanos;
+
+    /** The most segment files kept, 0 to keep every segment */
+    private final int retainSegments;
+
+    /** Guards the current segment and the pending counters */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signals the flusher that records are waiting */
+    private final Condition recordsWaiting = lock.newCondition();
+
+    /** Futures waiting for a sync, in append order */
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    /** Runs the group commits */
+    private final Thread flusher;
+
+    /** Completes the append futures, so their dependent stages never run on the flusher */
+    private final ExecutorService completions = VirtualThreads.newExecutor();
+
+    /** The sequence number of the current segment */
+    private long segmentSeq;
+
+    /** The current segment */
+    private MappedByteBuffer segment;
+
+    /** The file of the current segment */
+    private Path segmentPath;
+
+    /** Bytes of the current segment already forced to disk */
+    private int syncedTo;
+
+    /** Records appended and not yet handed to the flusher */
+    private int pendingRecords;
+
+    /** When the oldest pending record was appended, from System.nanoTime() */
+    private long firstPendingNanos;
+
+    /** Set once close() starts */
+    private volatile boolean closed;
+
+    /** Why the journal stopped accepting appends after a failed sync or roll, null while it works */
+    private IOException failure;
+
+    /**
+     * Opens a journal in a directory that keeps every segment and starts a new segment in it.
+     *
+     * @param directory   The directory holding the segments, created if missing
+     * @param segmentSize The size of each segment file in bytes
+     * @param syncRecords Sync once this many records are waiting
+     * @param syncMicros  Sync at most this many microseconds after a record is appended
+     * @throws IOException If the directory or the first segment cannot be created
+     */
+    public OrderJournal(Path directory, int segmentSize, int syncRecords, long syncMicros) throws IOException {
+        this(directory, segmentSize, syncRecords, syncMicros, 0);
+    }
+
+    /**
+     * Opens a journal in a directory and starts a new segment in it.
+     *
+     * @param directory      The directory holding the segments, created if missing
+     * @param segmentSize    The size of each segment file in bytes
+     * @param syncRecords    Sync once this many records are waiting
+     * @param syncMicros     Sync at most this many microseconds after a record is appended
+     * @param retainSegments The most segment files kept, 0 to keep every segment
+     * @throws IOException If the directory or the first segment cannot be created
+     */
+    public OrderJournal(Path directory, int segmentSize, int syncRecords, long syncMicros,
+                        int retainSegments) throws IOException {
+        if (segmentSize < 1024 || syncRecords < 1 || syncMicros < 0 || retainSegments < 0) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024, syncRecords positive and retainSegments not negative");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.syncRecords = syncRecords;
+        this.syncNanos = TimeUnit.MICROSECONDS.toNanos(syncMicros);
+        this.retainSegments = retainSegments;
+        List<Path> existing = segments();
+        this.segmentSeq = existing.isEmpty() ? 0 : sequenceOf(existing.get(existing.size() - 1));
+        openNextSegment();
+        this.flusher = new Thread(this::runFlusher, "pizza-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Opens the journal named by the system properties: pizza.journal.dir, pizza.journal.segmentMb (64),
+     * pizza.journal.syncRecords (256), pizza.journal.syncMicros (200) and pizza.journal.retainSegments
+     * (16, 0 keeps every segment).
+     *
+     * @return The journal, or null when pizza.journal.dir is not set
+     * @throws IOException If the journal cannot be opened
+     */
+    public static OrderJournal configured() throws IOException {
+        String dir = System.getProperty("pizza.journal.dir");
+        if (dir == null) {
+            return null;
+        }
+        int segmentMb = Integer.getInteger("pizza.journal.segmentMb", 64);
+        int syncRecords = Integer.getInteger("pizza.journal.syncRecords", 256);
+        long syncMicros = Long.getLong("pizza.journal.syncMicros", 200);
+        int retainSegments = Integer.getInteger("pizza.journal.retainSegments", 16);
+        return new OrderJournal(Paths.get(dir), segmentMb * 1024 * 1024, syncRecords, syncMicros, retainSegments);
+    }
+
+    /**
+     * Appends one order. The record is readable by replay once the future completes.
+     *
+     * @param format  The format of the payload
+     * @param payload The encoded order, exactly as received
+     * @return A future completed when the record is on disk, or failed if the journal is closed or failed
+     * @throws IOException If a new segment is needed and cannot be created
+     */
+    public CompletableFuture<Void> append(PizzaFormat format, byte[] payload) throws IOException {
+        return appendAll(Collections.singletonList(format), Collections.singletonList(payload));
+    }
+
+    /**
+     * Appends a batch of orders under one lock acquisition, with one future for the whole batch.
+     *
+     * @param formats  The format of each payload
+     * @param payloads The encoded orders, exactly as received
+     * @return A future completed when every record of the batch is on disk, or failed with an IOException
+     * if the journal is closed or failed
+     * @throws IOException If a new segment is needed and cannot be created
+     */
+    public CompletableFuture<Void> appendAll(List<PizzaFormat> formats, List<byte[]> payloads) throws IOException {
+        int count = payloads.size();
+        byte[] types = new byte[count];
+        int[] checksums = new int[count];
+        // The checksums are computed outside the lock
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i < count; i++) {
+            byte[] payload = payloads.get(i);
+            if (HEADER_BYTES + payload.length > segmentSize) {
+                throw new IllegalArgumentException("Order of " + payload.length + " bytes does not fit in a segment");
+            }
+            types[i] = formats.get(i) == PizzaFormat.BINARY ? TYPE_BINARY : TYPE_JSON;
+            crc.reset();
+            crc.update(types[i]);
+            crc.update(payload);
+            checksums[i] = (int) crc.getValue();
+        }
+
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if (count == 0) {
+            durable.complete(null);
+            return durable;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                durable.completeExceptionally(new IOException("Journal is closed"));
+                return durable;
+            }
+            if (failure != null) {
+                durable.completeExceptionally(new IOException("Journal failed", failure));
+                return durable;
+            }
+            for (int i = 0; i < count; i++) {
+                byte[] payload = payloads.get(i);
+                if (segment.remaining() < HEADER_BYTES + payload.length) {
+                    try {
+                        rollSegment();
+                    } catch (IOException | UncheckedIOException e) {
+                        fail(e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause() : (IOException) e);
+                        throw failure;
+                    }
+                }
+                // Write the length last, so a torn record never has a length pointing at half a payload
+                int start = segment.position();
+                segment.position(start + Integer.BYTES);
+                segment.putInt(checksums[i]);
+                segment.put(types[i]);
+                segment.put(payload);
+                segment.putInt(start, payload.length);
+            }
+            waiters.add(new Waiter(segmentSeq, segment.position(), durable));
+            boolean first = pendingRecords == 0;
+            pendingRecords += count;
+            if (first) {
+                firstPendingNanos = System.nanoTime();
+                recordsWaiting.signal();
+            } else if (pendingRecords >= syncRecords) {
+                recordsWaiting.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        RECORDS.add(count);
+        return durable;
+    }
+
+    /**
+     * Reads every complete record of every segment, one thread per segment up to the given parallelism.
+     * The handler is called concurrently from several threads, in order within a segment.
+     *
+     * @param threads The number of segments read at once
+     * @param handler Receives each order in its format
+     * @return The number of orders read
+     * @throws IOException If a segment cannot be read
+     */
+    public long replay(int threads, RecordHandler handler) throws IOException {
+        List<Path> paths = segments();
+        // The segment being written now has nothing to replay
+        paths.removeIf(path -> sequenceOf(path) == currentSequence());
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, paths.size())));
+        try {
+            List<Future<Long>> counts = new ArrayList<>();
+            for (Path path : paths) {
+                counts.add(pool.submit(() -> replaySegment(path, handler)));
+            }
+            long total = 0;
+            for (Future<Long> count : counts) {
+                total += count.get();
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Replay interrupted", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new IOException("Replay failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads the complete records of one segment.
+     *
+     * @param path    The segment file
+     * @param handler Receives each order
+     * @return The number of orders read
+     * @throws IOException If the segment cannot be mapped
+     */
+    private static long replaySegment(Path path, RecordHandler handler) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long count = 0;
+        CRC32C crc = new CRC32C();
+        while (in.remaining() >= HEADER_BYTES) {
+            int start = in.position();
+            int length = in.getInt();
+            if (length <= 0 || length > in.remaining() - Integer.BYTES - 1) {
+                break; // zero fill after the last record, or a record cut off by a crash
+            }
+            int checksum = in.getInt();
+            byte type = in.get();
+            byte[] payload = new byte[length];
+            in.get(payload);
+            crc.reset();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                LOG.warn("Journal {} ends with a damaged record at offset {}", path.getFileName(), start);
+                break;
+            }
+            handler.handle(type == TYPE_BINARY ? PizzaFormat.BINARY : PizzaFormat.JSON, payload);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Replays the journal into an OrderStats and logs how long it took.
+     *
+     * @param stats The store to rebuild
+     * @return The number of orders replayed
+     * @throws IOException If a segment cannot be read
+     */
+    public long replayInto(OrderStats stats) throws IOException {
+        long start = System.nanoTime();
+        long count = replay(Runtime.getRuntime().availableProcessors(),
+                (format, payload) -> {
+                    Pizza pizza = format.decode(payload);
+                    if (pizza != null) {
+                        stats.record(pizza);
+                    }
+                });
+        LOG.info("Replayed {} orders from {} in {} ms", count, directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return count;
+    }
+
+    /**
+     * The flusher loop: waits for a group to fill or time out, forces it to disk and completes its futures.
+     */
+    private void runFlusher() {
+        while (true) {
+            MappedByteBuffer toSync;
+            long syncSeq;
+            int from;
+            int to;
+            lock.lock();
+            try {
+                while (pendingRecords == 0 && !closed) {
+                    recordsWaiting.awaitUninterruptibly();
+                }
+                if (pendingRecords == 0) {
+                    return; // closed and nothing left to sync
+                }
+                // Let the group fill up until syncRecords or the deadline of its first record
+                long deadline = firstPendingNanos + syncNanos;
+                long wait;
+                while (pendingRecords < syncRecords && !closed && (wait = deadline - System.nanoTime()) > 0) {
+                    try {
+                        recordsWaiting.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                toSync = segment;
+                syncSeq = segmentSeq;
+                from = syncedTo;
+                to = segment.position();
+                syncedTo = to;
+                pendingRecords = 0;
+            } finally {
+                lock.unlock();
+            }
+            // Force outside the lock so appends continue into the next group meanwhile
+            long start = System.nanoTime();
+            try {
+                if (to > from) {
+                    toSync.force(from, to - from);
+                }
+            } catch (UncheckedIOException e) {
+                lock.lock();
+                try {
+                    fail(e.getCause());
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            SYNC_TIME.record(System.nanoTime() - start);
+            SYNCS.increment();
+            completeWaiters(syncSeq, to);
+        }
+    }
+
+    /**
+     * Completes the futures of every record at or before a synced position.
+     *
+     * @param syncSeq The segment that was synced
+     * @param syncTo  The synced position in that segment
+     */
+    private void completeWaiters(long syncSeq, int syncTo) {
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null
+                && (waiter.segmentSeq < syncSeq || (waiter.segmentSeq == syncSeq && waiter.end <= syncTo))) {
+            waiters.poll();
+            settle(waiter, null);
+        }
+    }
+
+    /**
+     * Marks the journal failed and fails every waiting future, synced or not, since the records after a failed
+     * force may never reach the disk. Later appends fail at once. Called with the lock held.
+     *
+     * @param cause Why the sync or roll failed
+     */
+    private void fail(IOException cause) {
+        if (failure == null) {
+            failure = cause;
+            LOG.error("Journal {} failed, rejecting every order from now on", directory, cause);
+        }
+        pendingRecords = 0;
+        IOException failed = new IOException("Journal failed", failure);
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            settle(waiter, failed);
+        }
+    }
+
+    /**
+     * Completes a future on the completion executor, or right here once close() has shut the executor down.
+     *
+     * @param waiter The append to complete
+     * @param failed Why it failed, null if it is on disk
+     */
+    private void settle(Waiter waiter, IOException failed) {
+        Runnable completion = failed == null
+                ? () -> waiter.durable.complete(null)
+                : () -> waiter.durable.completeExceptionally(failed);
+        try {
+            completions.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    /**
+     * Forces the rest of the full segment and starts the next one. Called with the lock held.
+     *
+     * @throws IOException If the next segment cannot be created
+     */
+    private void rollSegment() throws IOException {
+        // Rolling is rare, so the old segment is synced inline; its waiters complete on the next group
+        if (segment.position() > syncedTo) {
+            segment.force(syncedTo, segment.position() - syncedTo);
+        }
+        openNextSegment();
+        deleteOldSegments();
+    }
+
+    /**
+     * Creates and maps the next segment file.
+     *
+     * @throws IOException If the file cannot be created or mapped
+     */
+    private void openNextSegment() throws IOException {
+        segmentSeq++;
+        Path path = directory.resolve(String.format("orders-%016d.journal", segmentSeq));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file, the new space reads as zeros
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segmentPath = path;
+        syncedTo = 0;
+    }
+
+    /**
+     * Deletes the oldest segments beyond the newest retainSegments, keeping any segment that still has a record
+     * waiting for its sync. Called with the lock held when a full segment is rolled, so restarts never count.
+     * A segment that cannot be deleted is logged and tried again on the next roll; it never fails the journal.
+     */
+    private void deleteOldSegments() {
+        if (retainSegments == 0) {
+            return;
+        }
+        Waiter oldest = waiters.peek();
+        long firstUnsynced = oldest == null ? segmentSeq : oldest.segmentSeq;
+        long keepFrom = Math.min(segmentSeq - retainSegments + 1, firstUnsynced);
+        try {
+            for (Path path : segments()) {
+                if (sequenceOf(path) >= keepFrom) {
+                    break;
+                }
+                Files.deleteIfExists(path);
+                SEGMENTS_DELETED.increment();
+                LOG.info("Deleted journal segment {} past the retention of {} segments", path.getFileName(), retainSegments);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not delete old journal segments in {}", directory, e);
+        }
+    }
+
+    /**
+     * Shrinks the current segment file to the records it holds, or deletes it when it holds none.
+     * Called from close() once the flusher has stopped, so the mapping is never touched again.
+     */
+    private void truncateSegment() {
+        int end = segment.position();
+        try {
+            if (end == 0) {
+                Files.deleteIfExists(segmentPath);
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not truncate journal segment {}", segmentPath.getFileName(), e);
+        }
+    }
+
+    /**
+     * Lists the segment files in sequence order.
+     *
+     * @return The segment paths
+     * @throws IOException If the directory cannot be listed
+     */
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().matches("orders-\\d{16}\\.journal"))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private long currentSequence() {
+        lock.lock();
+        try {
+            return segmentSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("orders-".length(), name.length() - ".journal".length()));
+    }
+
+    /**
+     * Syncs whatever is pending, completes the remaining futures, stops the flusher and truncates the current segment.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            recordsWaiting.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The completions already handed over still run
+        completions.shutdown();
+        if (!flusher.isAlive()) {
+            lock.lock();
+            try {
+                truncateSegment();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Receives the orders read back by replay.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(PizzaFormat format, byte[] payload);
+    }
+
+    /**
+     * A future waiting for the sync of the record ending at a position.
+     */
+    private static final class Waiter {
+        private final long segmentSeq;
+        private final int end;
+        private final CompletableFuture<Void> durable;
+
+        private Waiter(long segmentSeq, int end, CompletableFuture<Void> durable) {
+            this.segmentSeq = segmentSeq;
+            this.end = end;
+            this.durable = durable;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Order Aggregation Store
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * OrderStats keeps live rollups of the received orders: orders and revenue by size, topping popularity
+ * and per-minute throughput. Every counter is a striped LongAdder or DoubleAdder and the minutes live in a
+ * ring of buckets replaced with compare-and-set, so recording an order never takes a lock and
+ * reading the stats never blocks a writer. Reads add up the stripes, so a snapshot taken while orders
+ * arrive may be a few orders behind.
+ */
+public class OrderStats {
+
+    /** The size slot of orders that are not a standard size */
+    static final int OTHER_SIZE = Pizza.Size.values().length;
+
+    /** The number of size slots, the standard sizes and "Other" */
+    static final int SIZE_SLOTS = OTHER_SIZE + 1;
+
+    /** The default number of minutes kept */
+    private static final int DEFAULT_MINUTES = 60;
+
+    /** The total number of orders */
+    private final LongAdder orders = new LongAdder();
+
+    /** The total revenue */
+    private final DoubleAdder revenue = new DoubleAdder();
+
+    /** Orders per size slot */
+    private final LongAdder[] sizeOrders = new LongAdder[SIZE_SLOTS];
+
+    /** Revenue per size slot */
+    private final DoubleAdder[] sizeRevenue = new DoubleAdder[SIZE_SLOTS];
+
+    /** Orders per topping id */
+    private final LongAdder[] toppingOrders = new LongAdder[ToppingRegistry.MAX_TOPPINGS];
+
+    /** One bucket per minute, indexed by the epoch minute modulo the ring size */
+    private final AtomicReferenceArray<MinuteBucket> minutes;
+
+    /** The clock, in milliseconds since the epoch */
+    private final LongSupplier clock;
+
+    /**
+     * Constructs an OrderStats keeping the number of minutes in pizza.stats.minutes (60 by default).
+     */
+    public OrderStats() {
+        this(Integer.getInteger("pizza.stats.minutes", DEFAULT_MINUTES), System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs an OrderStats.
+     *
+     * @param minuteCount The number of minutes kept in the throughput ring
+     * @param clock       The clock, in milliseconds since the epoch
+     */
+    OrderStats(int minuteCount, LongSupplier clock) {
+        if (minuteCount < 1) {
+            throw new IllegalArgumentException("minuteCount must be positive");
+        }
+        this.minutes = new AtomicReferenceArray<>(minuteCount);
+        this.clock = clock;
+        for (int i = 0; i < SIZE_SLOTS; i++) {
+            sizeOrders[i] = new LongAdder();
+            sizeRevenue[i] = new DoubleAdder();
+        }
+        for (int i = 0; i < toppingOrders.length; i++) {
+            toppingOrders[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Finds the size slot of an order.
+     *
+     * @param pizza The order
+     * @return The Size ordinal, or OTHER_SIZE for missing and non-standard sizes
+     */
+    static int sizeSlot(Pizza pizza) {
+        Pizza.Size size = pizza.getStandardSize();
+        return size == null ? OTHER_SIZE : size.ordinal();
+    }
+
+    /**
+     * Adds one received order to the rollups.
+     *
+     * @param pizza The order as received
+     */
+    public void record(Pizza pizza) {
+        double price = pizza.getPrice();
+        orders.increment();
+        revenue.add(price);
+        int slot = sizeSlot(pizza);
+        sizeOrders[slot].increment();
+        sizeRevenue[slot].add(price);
+        for (int id : pizza.getToppingIds()) {
+            toppingOrders[id].increment();
+        }
+        MinuteBucket bucket = currentBucket();
+        bucket.orders.increment();
+        bucket.revenue.add(price);
+    }
+
+    /**
+     * Adds the totals of a verified batch to the rollups, as if its orders arrived now.
+     *
+     * @param summary The totals of the batch
+     */
+    public void merge(BatchSummary summary) {
+        if (summary.getOrders() == 0) {
+            return;
+        }
+        orders.add(summary.getOrders());
+        revenue.add(summary.getRevenue());
+        for (int slot = 0; slot < SIZE_SLOTS; slot++) {
+            sizeOrders[slot].add(summary.getSizeOrders(slot));
+            sizeRevenue[slot].add(summary.getSizeRevenue(slot));
+        }
+        long[] toppings = summary.getToppingOrders();
+        for (int id = 0; id < toppings.length; id++) {
+            if (toppings[id] != 0) {
+                toppingOrders[id].add(toppings[id]);
+            }
+        }
+        MinuteBucket bucket = currentBucket();
+        bucket.orders.add(summary.getOrders());
+        bucket.revenue.add(summary.getRevenue());
+    }
+
+    /**
+     * Gets the total number of orders.
+     *
+     * @return The order count
+     */
+    public long getOrders() {
+        return orders.sum();
+    }
+
+    /**
+     * Gets the total revenue.
+     *
+     * @return The revenue
+     */
+    public double getRevenue() {
+        return revenue.sum();
+    }
+
+    /**
+     * Gets the bucket of the current minute, replacing the bucket of an older minute in its slot.
+     *
+     * @return The bucket of the current minute
+     */
+    private MinuteBucket currentBucket() {
+        long minute = TimeUnit.MILLISECONDS.toMinutes(clock.getAsLong());
+        int index = (int) (minute % minutes.length());
+        MinuteBucket bucket = minutes.get(index);
+        while (bucket == null || bucket.minute < minute) {
+            MinuteBucket fresh = new MinuteBucket(minute);
+            // Adds that still land in the replaced bucket belong to a minute that has passed
+            if (minutes.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+            bucket = minutes.get(index);
+        }
+        // A bucket from a later minute means this thread was delayed across the boundary, count it there
+        return bucket;
+    }
+
+    /**
+     * Writes the rollups as a JSON object.
+     *
+     * @param topToppings The number of most popular toppings to include
+     * @param minuteCount The number of most recent minutes to include, oldest first
+     * @return The JSON text
+     */
+    public String toJson(int topToppings, int minuteCount) {
+        StringWriter text = new StringWriter();
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.beginObject();
+            out.name("orders").value(orders.sum());
+            out.name("revenue").value(round(revenue.sum()));
+
+            out.name("bySize").beginObject();
+            for (int slot = 0; slot < SIZE_SLOTS; slot++) {
+                long count = sizeOrders[slot].sum();
+                if (count == 0) {
+                    continue;
+                }
+                out.name(slot == OTHER_SIZE ? "Other" : Pizza.Size.values()[slot].getLabel()).beginObject();
+                out.name("orders").value(count);
+                out.name("revenue").value(round(sizeRevenue[slot].sum()));
+                out.endObject();
+            }
+            out.endObject();
+
+            out.name("toppings").beginObject();
+            for (long[] entry : topToppings(topToppings)) {
+                out.name(ToppingRegistry.nameOf((int) entry[0])).value(entry[1]);
+            }
+            out.endObject();
+
+            writeMinutes(out, minuteCount);
+            out.endObject();
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Finds the most popular toppings.
+     *
+     * @param limit The number of toppings to return
+     * @return Pairs of topping id and order count, most popular first
+     */
+    private List<long[]> topToppings(int limit) {
+        List<long[]> counts = new ArrayList<>();
+        int registered = ToppingRegistry.size();
+        for (int id = 0; id < registered; id++) {
+            long count = toppingOrders[id].sum();
+            if (count > 0) {
+                counts.add(new long[]{id, count});
+            }
+        }
+        counts.sort((a, b) -> Long.compare(b[1], a[1]));
+        return counts.subList(0, Math.min(Math.max(0, limit), counts.size()));
+    }
+
+    /**
+     * Writes the per-minute throughput of the most recent minutes, including empty ones.
+     *
+     * @param out         The JSON being written
+     * @param minuteCount The number of minutes, at most the ring size
+     * @throws IOException If writing fails
+     */
+    private void writeMinutes(JsonWriter out, int minuteCount) throws IOException {
+        long nowMillis = clock.getAsLong();
+        long now = TimeUnit.MILLISECONDS.toMinutes(nowMillis);
+        // The current minute is still filling, so its rate is over the seconds elapsed so far
+        double currentSeconds = Math.max(1, (nowMillis - TimeUnit.MINUTES.toMillis(now)) / 1000.0);
+        int count = Math.min(Math.max(1, minuteCount), minutes.length());
+        out.name("perMinute").beginArray();
+        for (long minute = now - count + 1; minute <= now; minute++) {
+            MinuteBucket bucket = minutes.get((int) (minute % minutes.length()));
+            boolean current = bucket != null && bucket.minute == minute;
+            long bucketOrders = current ? bucket.orders.sum() : 0;
+            out.beginObject();
+            out.name("minute").value(Instant.ofEpochSecond(TimeUnit.MINUTES.toSeconds(minute)).toString());
+            out.name("orders").value(bucketOrders);
+            out.name("revenue").value(current ? round(bucket.revenue.sum()) : 0);
+            out.name("ordersPerSecond").value(round(bucketOrders / (minute == now ? currentSeconds : 60.0)));
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * Builds the handler of the /pizza/stats context.
+     * GET accepts the query parameters top (toppings listed, default 10) and minutes (default 15).
+     *
+     * @return A handler answering GET with the rollups as JSON
+     */
+    public HttpHandler handler() {
+        return exchange -> {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            String query = exchange.getRequestURI().getRawQuery();
+            byte[] body = toJson(queryInt(query, "top", 10), queryInt(query, "minutes", 15))
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        };
+    }
+
+    /**
+     * Reads an integer query parameter.
+     *
+     * @param query        The raw query string, may be null
+     * @param name         The parameter name
+     * @param defaultValue The value when the parameter is missing or not a number
+     * @return The parameter value
+     */
+    private static int queryInt(String query, String name, int defaultValue) {
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                try {
+                    return Integer.parseInt(pair.substring(eq + 1));
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * The orders and revenue of one minute.
+     */
+    private static final class MinuteBucket {
+        private final long minute;
+        private final LongAdder orders = new LongAdder();
+        private final DoubleAdder revenue = new DoubleAdder();
+
+        private MinuteBucket(long minute) {
+            this.minute = minute;
+        }
+    }
+}
@@ -4,25 +4,104 @@
  * Course: IST 242
  * Author: Xue Thao
  * Date Developed: March 18, 2025,
- * Last Date Changed: March 25, 2025,
- * Rev: 6
+ * Last Date Changed: October 17, 2026,
+ * Rev: 11 the sizes are the binary size dictionary
  */
 package main;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class Pizza {
+/**
+ * A pizza order. The fields are stored compactly so millions of orders fit in memory:
+ * the size is a Size constant, the toppings are ids from the ToppingRegistry kept in a long bitset
+ * (or a sorted short array once an id passes 63), and repeated names are shared.
+ * A topping the registry does not know is kept on the order by name and never registered, so names
+ * from the wire cannot fill the global registry.
+ * The String based getters and setters are unchanged. Because toppings are stored as a set,
+ * getToppings() returns each topping once: the registered ones in registry order, then the others
+ * in the order they were given. The class is final because the constructor goes through the setters.
+ */
+public final class Pizza {
+
+    /**
+     * The standard pizza sizes. Their order is the PizzaBinaryCodec size dictionary, new sizes may only be appended.
+     */
+    public enum Size {
+        SMALL("Small"),
+        MEDIUM("Medium"),
+        LARGE("Large"),
+        EXTRA_LARGE("Extra Large");
+
+        /** Case-insensitive lookup of the labels */
+        private static final Map<String, Size> BY_LABEL = new HashMap<>();
+
+        static {
+            for (Size size : values()) {
+                BY_LABEL.put(size.label.toLowerCase(Locale.ROOT), size);
+            }
+        }
+
+        /** The label used in orders and on the wire */
+        private final String label;
+
+        Size(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Gets the label of the size, e.g. "Medium".
+         *
+         * @return The label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Finds the size with a label, ignoring case.
+         *
+         * @param label The label
+         * @return The size, or null if the label is not a standard size
+         */
+        public static Size fromLabel(String label) {
+            return label == null ? null : BY_LABEL.get(label.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /** Names kept for sharing, so repeated pizza names are stored once */
+    private static final int MAX_SHARED_NAMES = 1024;
+
+    /** The shared pizza names */
+    private static final ConcurrentHashMap<String, String> SHARED_NAMES = new ConcurrentHashMap<>();
 
     /** The name of the pizza */
     private String name;
 
-    /** The size of the pizza */
-    private String size;
+    /** The size of the pizza, null when it is not a standard size */
+    private Size size;
+
+    /** The size label when it is not a standard size */
+    private String customSize;
 
     /** The price of the pizza */
     private double price;
 
-    /** The list of toppings on the pizza */
-    private String[] toppings;
+    /** The toppings with an id below 64, one bit per id */
+    private long toppingBits;
+
+    /** All topping ids, sorted, only used when an id is 64 or more */
+    private short[] toppingIds;
+
+    /** Toppings with no registry id, distinct and in the order given, null when there are none */
+    private String[] otherToppings;
+
+    /** Whether the toppings are set at all, so null toppings stay null */
+    private boolean hasToppings;
 
     /**
      * Constructs a main.Pizza object with the specified properties.
@@ -33,10 +112,10 @@ public class Pizza {
      * @param toppings The array of toppings for the pizza
      */
     public Pizza(String name, String size, double price, String[] toppings) {
-        this.name = name;
-        this.size = size;
+        setName(name);
+        setSize(size);
         this.price = price;
-        this.toppings = toppings;
+        setToppings(toppings);
     }
 
     /**
@@ -54,7 +133,7 @@ public class Pizza {
      * @param name The new name for the pizza
      */
     public void setName(String name) {
-        this.name = name;
+        this.name = share(name);
     }
 
     /**
@@ -63,6 +142,15 @@ public class Pizza {
      * @return The size of the pizza
      */
     public String getSize() {
+        return this.size != null ? this.size.getLabel() : this.customSize;
+    }
+
+    /**
+     * Gets the size of the pizza as a Size constant.
+     *
+     * @return The size, or null when the size is missing or not a standard size
+     */
+    public Size getStandardSize() {
         return this.size;
     }
 
@@ -72,7 +160,18 @@ public class Pizza {
      * @param size The new size for the pizza
      */
     public void setSize(String size) {
+        this.size = Size.fromLabel(size);
+        this.customSize = this.size == null ? share(size) : null;
+    }
+
+    /**
+     * Sets the size of the pizza to a standard size.
+     *
+     * @param size The new size for the pizza
+     */
+    public void setSize(Size size) {
         this.size = size;
+        this.customSize = null;
     }
 
     /**
@@ -96,10 +195,34 @@ public class Pizza {
     /**
      * Gets the toppings of the pizza.
      *
-     * @return An array of toppings on the pizza
+     * @return An array of toppings on the pizza, or null if none were set
      */
     public String[] getToppings() {
-        return this.toppings;
+        if (!this.hasToppings) {
+            return null;
+        }
+        int others = this.otherToppings == null ? 0 : this.otherToppings.length;
+        String[] toppings;
+        int registered;
+        if (this.toppingIds != null) {
+            registered = this.toppingIds.length;
+            toppings = new String[registered + others];
+            for (int i = 0; i < registered; i++) {
+                toppings[i] = ToppingRegistry.nameOf(this.toppingIds[i]);
+            }
+        } else {
+            registered = Long.bitCount(this.toppingBits);
+            toppings = new String[registered + others];
+            long bits = this.toppingBits;
+            for (int i = 0; bits != 0; i++) {
+                toppings[i] = ToppingRegistry.nameOf(Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        if (others > 0) {
+            System.arraycopy(this.otherToppings, 0, toppings, registered, others);
+        }
+        return toppings;
     }
 
     /**
@@ -108,11 +231,150 @@ public class Pizza {
      * @param toppings The new array of toppings for the pizza
      */
     public void setToppings(String[] toppings) {
-        this.toppings = toppings;
+        this.toppingBits = 0;
+        this.toppingIds = null;
+        this.otherToppings = null;
+        this.hasToppings = toppings != null;
+        if (toppings == null) {
+            return;
+        }
+        int[] ids = new int[toppings.length];
+        int count = 0;
+        boolean fitsBitset = true;
+        Set<String> others = null;
+        for (String topping : toppings) {
+            // A null entry has no name, so it is dropped
+            if (topping == null) {
+                continue;
+            }
+            int id = ToppingRegistry.find(topping);
+            if (id < 0) {
+                // Only the predefined and menu toppings are registered, an unknown name stays on this order
+                if (others == null) {
+                    others = new LinkedHashSet<>();
+                }
+                others.add(topping);
+                continue;
+            }
+            ids[count] = id;
+            fitsBitset &= id < ToppingRegistry.BITSET_TOPPINGS;
+            count++;
+        }
+        if (others != null) {
+            this.otherToppings = others.toArray(new String[0]);
+        }
+        if (fitsBitset) {
+            for (int i = 0; i < count; i++) {
+                this.toppingBits |= 1L << ids[i];
+            }
+        } else {
+            this.toppingIds = toShortIds(Arrays.stream(ids, 0, count).sorted().distinct().toArray());
+        }
+    }
+
+    /**
+     * Checks whether the pizza has a topping.
+     *
+     * @param topping The topping name
+     * @return true if the topping is on the pizza
+     */
+    public boolean hasTopping(String topping) {
+        int id = ToppingRegistry.find(topping);
+        if (id < 0) {
+            return this.otherToppings != null && Arrays.asList(this.otherToppings).contains(topping);
+        }
+        if (this.toppingIds != null) {
+            return Arrays.binarySearch(this.toppingIds, (short) id) >= 0;
+        }
+        return id < ToppingRegistry.BITSET_TOPPINGS && (this.toppingBits & (1L << id)) != 0;
+    }
+
+    /**
+     * Checks whether the pizza has a topping the registry does not know, which no menu can price.
+     *
+     * @return true if a topping has no registry id
+     */
+    boolean hasUnregisteredToppings() {
+        return this.otherToppings != null;
+    }
+
+    /**
+     * Gets the ids of the registered toppings of the pizza without building any Strings.
+     *
+     * @return The sorted topping ids, empty when there are none
+     */
+    int[] getToppingIds() {
+        if (this.toppingIds != null) {
+            int[] ids = new int[this.toppingIds.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = this.toppingIds[i];
+            }
+            return ids;
+        }
+        int[] ids = new int[Long.bitCount(this.toppingBits)];
+        long bits = this.toppingBits;
+        for (int i = 0; bits != 0; i++) {
+            ids[i] = Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+        }
+        return ids;
+    }
+
+    /**
+     * Checks whether every topping id is below 64, so getToppingBits() holds all of them.
+     *
+     * @return true if the toppings are kept in the bitset
+     */
+    boolean toppingsFitBitset() {
+        return this.toppingIds == null;
+    }
+
+    /**
+     * Gets the toppings as a bitset, one bit per id, without copying anything.
+     *
+     * @return The bitset, only complete when toppingsFitBitset() is true
+     */
+    long getToppingBits() {
+        return this.toppingBits;
+    }
+
+    /**
+     * Narrows sorted topping ids to shorts; ids are below MAX_TOPPINGS so they always fit.
+     *
+     * @param ids The sorted ids
+     * @return The ids as shorts
+     */
+    private static short[] toShortIds(int[] ids) {
+        short[] shortIds = new short[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            shortIds[i] = (short) ids[i];
+        }
+        return shortIds;
+    }
+
+    /**
+     * Returns the shared copy of a name, keeping at most MAX_SHARED_NAMES names.
+     *
+     * @param value The name
+     * @return The shared copy, or value itself once the table is full
+     */
+    private static String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = SHARED_NAMES.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (SHARED_NAMES.size() >= MAX_SHARED_NAMES) {
+            return value;
+        }
+        shared = SHARED_NAMES.putIfAbsent(value, value);
+        return shared != null ? shared : value;
     }
 
     @Override
     public String toString() {
-        return "main.Pizza{name='" + name + "', size='" + size + "', price=" + price + ", toppings=" + Arrays.toString(toppings) + "}";
+        return "main.Pizza{name='" + name + "', size='" + getSize() + "', price=" + price + ", toppings=" + Arrays.toString(getToppings()) + "}";
     }
-}
\ No newline at end of file
+}
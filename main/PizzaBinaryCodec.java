@@ -0,0 +1,283 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Pizza Binary Codec
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 take the dictionaries from Pizza.Size and ToppingRegistry, cap the retained buffer
+ */
+package main;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PizzaBinaryCodec encodes Pizza orders in a compact, versioned binary format.
+ * <pre>
+ * version   1 byte   currently 1
+ * flags     1 byte   bit 0 name present, bit 1 size present, bit 2 toppings present
+ * name      varint length + UTF-8 bytes
+ * size      varint code: 0 = literal (varint length + UTF-8), n = SIZES[n - 1]
+ * price     8 bytes  IEEE 754 double, big-endian
+ * toppings  varint count, then one code per topping, coded like size against TOPPINGS
+ * </pre>
+ * The dictionaries are part of the format version: new entries may only be appended. They are taken from
+ * Pizza.Size and the predefined ToppingRegistry toppings, so the wire codes match the registry ids.
+ */
+public final class PizzaBinaryCodec {
+
+    /** The content type of the binary encoding */
+    public static final String CONTENT_TYPE = "application/vnd.pizza-order+binary";
+
+    /** The format version written by this codec */
+    static final byte VERSION = 1;
+
+    /** Dictionary of sizes, index + 1 is the wire code */
+    private static final String[] SIZES = Arrays.stream(Pizza.Size.values()).map(Pizza.Size::getLabel).toArray(String[]::new);
+
+    /** Dictionary of toppings, index + 1 is the wire code */
+    private static final String[] TOPPINGS = ToppingRegistry.predefined();
+
+    private static final Map<String, Integer> SIZE_CODES = codes(SIZES);
+    private static final Map<String, Integer> TOPPING_CODES = codes(TOPPINGS);
+
+    private static final int FLAG_NAME = 1;
+    private static final int FLAG_SIZE = 1 << 1;
+    private static final int FLAG_TOPPINGS = 1 << 2;
+
+    /** Buffers larger than this are not kept for reuse by the thread */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    /** A reusable output buffer per thread */
+    private static final ThreadLocal<byte[][]> BUFFERS = ThreadLocal.withInitial(() -> new byte[][]{new byte[128]});
+
+    private PizzaBinaryCodec() {
+    }
+
+    /**
+     * Encodes a Pizza in the binary format.
+     *
+     * @param pizza The Pizza to encode
+     * @return The encoded bytes
+     */
+    public static byte[] encode(Pizza pizza) {
+        Output out = new Output(BUFFERS.get());
+        String[] toppings = pizza.getToppings();
+        out.writeByte(VERSION);
+        out.writeByte((pizza.getName() != null ? FLAG_NAME : 0)
+                | (pizza.getSize() != null ? FLAG_SIZE : 0)
+                | (toppings != null ? FLAG_TOPPINGS : 0));
+        if (pizza.getName() != null) {
+            out.writeString(pizza.getName());
+        }
+        if (pizza.getSize() != null) {
+            out.writeCoded(pizza.getSize(), SIZE_CODES);
+        }
+        out.writeDouble(pizza.getPrice());
+        if (toppings != null) {
+            out.writeVarint(toppings.length);
+            for (String topping : toppings) {
+                out.writeCoded(topping, TOPPING_CODES);
+            }
+        }
+        byte[] encoded = Arrays.copyOf(out.holder[0], out.count);
+        if (out.holder[0].length > MAX_RETAINED_BUFFER) {
+            // Do not pin a huge buffer to the thread after one oversized order
+            out.holder[0] = new byte[128];
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes a Pizza from the binary format.
+     *
+     * @param data The encoded bytes
+     * @return The Pizza
+     * @throws IllegalArgumentException If the data is truncated, malformed or of an unknown version
+     */
+    public static Pizza decode(byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decodes a Pizza from the remaining bytes of a buffer, advancing its position.
+     *
+     * @param in The buffer holding the encoded Pizza
+     * @return The Pizza
+     * @throws IllegalArgumentException If the data is truncated, malformed or of an unknown version
+     */
+    public static Pizza decode(ByteBuffer in) {
+        try {
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported pizza binary version " + version);
+            }
+            int flags = in.get();
+            String name = (flags & FLAG_NAME) != 0 ? readString(in, readVarint(in)) : null;
+            String size = (flags & FLAG_SIZE) != 0 ? readCoded(in, SIZES) : null;
+            double price = in.getDouble();
+            String[] toppings = null;
+            if ((flags & FLAG_TOPPINGS) != 0) {
+                int count = readVarint(in);
+                // Every topping takes at least one byte, reject counts the data cannot hold
+                if (count > in.remaining()) {
+                    throw new IllegalArgumentException("Topping count " + count + " exceeds the message");
+                }
+                toppings = new String[count];
+                for (int i = 0; i < count; i++) {
+                    toppings[i] = readCoded(in, TOPPINGS);
+                }
+            }
+            return new Pizza(name, size, price, toppings);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated pizza binary message", e);
+        }
+    }
+
+    /**
+     * Reads a dictionary code, or a literal string for code 0.
+     *
+     * @param in         The buffer to read
+     * @param dictionary The dictionary the code refers to
+     * @return The decoded string
+     */
+    private static String readCoded(ByteBuffer in, String[] dictionary) {
+        int code = readVarint(in);
+        if (code == 0) {
+            return readString(in, readVarint(in));
+        }
+        if (code > dictionary.length) {
+            throw new IllegalArgumentException("Unknown dictionary code " + code);
+        }
+        // Dictionary strings are shared, nothing is allocated for them
+        return dictionary[code - 1];
+    }
+
+    /**
+     * Reads a UTF-8 string of the given length.
+     *
+     * @param in     The buffer to read
+     * @param length The number of bytes
+     * @return The decoded string
+     */
+    private static String readString(ByteBuffer in, int length) {
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("String length " + length + " exceeds the message");
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint of at most 32 bits.
+     *
+     * @param in The buffer to read
+     * @return The decoded value
+     */
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Varint out of range");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * Builds the string to code lookup for a dictionary.
+     *
+     * @param dictionary The dictionary
+     * @return The map of each entry to its wire code
+     */
+    private static Map<String, Integer> codes(String[] dictionary) {
+        Map<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < dictionary.length; i++) {
+            codes.put(dictionary[i], i + 1);
+        }
+        return codes;
+    }
+
+    /**
+     * A growable write cursor over this thread's reusable buffer.
+     */
+    private static final class Output {
+
+        /** Holds the thread's buffer so growing it is kept for the next message */
+        private final byte[][] holder;
+
+        /** The number of bytes written */
+        private int count;
+
+        private Output(byte[][] holder) {
+            this.holder = holder;
+        }
+
+        private void ensure(int extra) {
+            byte[] buf = holder[0];
+            if (count + extra > buf.length) {
+                holder[0] = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            holder[0][count++] = (byte) b;
+        }
+
+        private void writeVarint(int value) {
+            ensure(5);
+            byte[] buf = holder[0];
+            while ((value & ~0x7F) != 0) {
+                buf[count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[count++] = (byte) value;
+        }
+
+        private void writeDouble(double value) {
+            ensure(8);
+            long bits = Double.doubleToLongBits(value);
+            byte[] buf = holder[0];
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[count++] = (byte) (bits >>> shift);
+            }
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, holder[0], count, bytes.length);
+            count += bytes.length;
+        }
+
+        private void writeCoded(String value, Map<String, Integer> codes) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                writeVarint(code);
+            } else {
+                writeVarint(0);
+                writeString(value);
+            }
+        }
+    }
+}
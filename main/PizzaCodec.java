@@ -0,0 +1,463 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Pizza JSON Codec
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 report a mistyped field as a JsonSyntaxException
+ */
+package main;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PizzaCodec is the one JSON codec for Pizza orders shared by Send, Recv, WebServiceSend and WebServiceRecv.
+ * A hand-written TypeAdapter streams the four Pizza fields with JsonReader/JsonWriter,
+ * and the byte level helpers encode and decode UTF-8 straight to and from byte[] or ByteBuffer
+ * without building an intermediate String of the whole message.
+ * Every malformed message, including a field of the wrong type such as a price that is not a number,
+ * is reported as a JsonParseException, so callers only have one exception to catch for bad input.
+ */
+public final class PizzaCodec {
+
+    /** The content type of the JSON encoding */
+    public static final String CONTENT_TYPE = "application/json";
+
+    /** The streaming adapter for Pizza */
+    public static final TypeAdapter<Pizza> ADAPTER = new PizzaTypeAdapter();
+
+    /** A shared Gson instance that uses the Pizza adapter, for callers that need a Gson */
+    public static final Gson GSON = new GsonBuilder().registerTypeAdapter(Pizza.class, ADAPTER).create();
+
+    /** Buffers larger than this are not kept for reuse by the thread */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    /** A reusable output buffer per thread */
+    private static final ThreadLocal<Utf8Sink> SINKS = ThreadLocal.withInitial(() -> new Utf8Sink(256));
+
+    private PizzaCodec() {
+    }
+
+    /**
+     * Encodes a Pizza as UTF-8 JSON.
+     *
+     * @param pizza The Pizza to encode
+     * @return The JSON bytes
+     */
+    public static byte[] encode(Pizza pizza) {
+        Utf8Sink sink = borrowSink(pizza);
+        return Arrays.copyOf(sink.buf, sink.count);
+    }
+
+    /**
+     * Encodes a Pizza as UTF-8 JSON into a ByteBuffer.
+     *
+     * @param pizza  The Pizza to encode
+     * @param target The buffer to write into, starting at its position
+     * @return The number of bytes written
+     * @throws java.nio.BufferOverflowException If the buffer has too little room
+     */
+    public static int encode(Pizza pizza, ByteBuffer target) {
+        Utf8Sink sink = borrowSink(pizza);
+        target.put(sink.buf, 0, sink.count);
+        return sink.count;
+    }
+
+    /**
+     * Encodes a Pizza as UTF-8 JSON onto an OutputStream.
+     *
+     * @param pizza The Pizza to encode
+     * @param out   The stream to write to
+     * @throws IOException If writing fails
+     */
+    public static void encode(Pizza pizza, OutputStream out) throws IOException {
+        Utf8Sink sink = borrowSink(pizza);
+        out.write(sink.buf, 0, sink.count);
+    }
+
+    /**
+     * Decodes a Pizza from UTF-8 JSON.
+     *
+     * @param json The JSON bytes
+     * @return The Pizza, or null if the JSON is the literal null
+     * @throws com.google.gson.JsonParseException If the JSON is not a valid Pizza
+     */
+    public static Pizza decode(byte[] json) {
+        return decode(json, 0, json.length);
+    }
+
+    /**
+     * Decodes a Pizza from a range of UTF-8 JSON bytes.
+     *
+     * @param json   The array holding the JSON
+     * @param offset The first byte of the JSON
+     * @param length The number of JSON bytes
+     * @return The Pizza, or null if the JSON is the literal null
+     * @throws com.google.gson.JsonParseException If the JSON is not a valid Pizza
+     */
+    public static Pizza decode(byte[] json, int offset, int length) {
+        return decode(new Utf8Source(ByteBuffer.wrap(json, offset, length)));
+    }
+
+    /**
+     * Decodes a Pizza from the remaining bytes of a ByteBuffer. The buffer position is not changed.
+     *
+     * @param json The buffer holding UTF-8 JSON between its position and limit
+     * @return The Pizza, or null if the JSON is the literal null
+     * @throws com.google.gson.JsonParseException If the JSON is not a valid Pizza
+     */
+    public static Pizza decode(ByteBuffer json) {
+        return decode(new Utf8Source(json.duplicate()));
+    }
+
+    /**
+     * Decodes a Pizza from a stream of UTF-8 JSON.
+     *
+     * @param in The stream to read
+     * @return The Pizza, or null if the JSON is the literal null
+     * @throws com.google.gson.JsonParseException If the JSON is not a valid Pizza
+     */
+    public static Pizza decode(InputStream in) {
+        return decode(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes one Pizza from a Reader.
+     *
+     * @param reader The characters to parse
+     * @return The Pizza, or null if the JSON is the literal null
+     */
+    private static Pizza decode(Reader reader) {
+        return GSON.fromJson(reader, Pizza.class);
+    }
+
+    /**
+     * Encodes a Pizza into this thread's reusable sink.
+     *
+     * @param pizza The Pizza to encode
+     * @return The sink holding the JSON bytes, valid until the thread encodes again
+     */
+    private static Utf8Sink borrowSink(Pizza pizza) {
+        Utf8Sink sink = SINKS.get();
+        if (sink.buf.length > MAX_RETAINED_BUFFER) {
+            // Do not pin a huge buffer to the thread after one oversized order
+            sink = new Utf8Sink(256);
+            SINKS.set(sink);
+        }
+        sink.count = 0;
+        try {
+            ADAPTER.write(new JsonWriter(sink), pizza);
+        } catch (IOException e) {
+            // The sink writes to memory only
+            throw new UncheckedIOException(e);
+        }
+        return sink;
+    }
+
+    /**
+     * Streams the four Pizza fields. Null fields are left out, the same as Gson's defaults.
+     * A field of the wrong type is reported as a JsonSyntaxException, not the IllegalStateException
+     * or NumberFormatException JsonReader throws for it.
+     */
+    private static final class PizzaTypeAdapter extends TypeAdapter<Pizza> {
+
+        @Override
+        public void write(JsonWriter out, Pizza pizza) throws IOException {
+            if (pizza == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (pizza.getName() != null) {
+                out.name("name").value(pizza.getName());
+            }
+            if (pizza.getSize() != null) {
+                out.name("size").value(pizza.getSize());
+            }
+            out.name("price").value(pizza.getPrice());
+            String[] toppings = pizza.getToppings();
+            if (toppings != null) {
+                out.name("toppings").beginArray();
+                for (String topping : toppings) {
+                    out.value(topping);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Pizza read(JsonReader in) throws IOException {
+            try {
+                return readPizza(in);
+            } catch (IllegalStateException | NumberFormatException e) {
+                throw new JsonSyntaxException("Not a valid Pizza at " + in.getPath() + ": " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Reads one Pizza or null.
+         *
+         * @param in The reader positioned at the value
+         * @return The Pizza, or null for the literal null
+         * @throws IOException If the JSON is malformed
+         */
+        private static Pizza readPizza(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String name = null;
+            String size = null;
+            double price = 0;
+            String[] toppings = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "name" -> name = in.nextString();
+                    case "size" -> size = in.nextString();
+                    case "price" -> price = in.nextDouble();
+                    case "toppings" -> toppings = readToppings(in);
+                    // Ignore fields added by newer producers
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Pizza(name, size, price, toppings);
+        }
+
+        /**
+         * Reads the toppings array.
+         *
+         * @param in The reader positioned at the array
+         * @return The toppings
+         * @throws IOException If the array is malformed
+         */
+        private static String[] readToppings(JsonReader in) throws IOException {
+            List<String> toppings = new ArrayList<>(4);
+            in.beginArray();
+            while (in.hasNext()) {
+                toppings.add(in.nextString());
+            }
+            in.endArray();
+            return toppings.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * A Writer that encodes characters as UTF-8 straight into a growable byte array.
+     */
+    private static final class Utf8Sink extends Writer {
+
+        /** The encoded bytes */
+        private byte[] buf;
+
+        /** The number of bytes used in buf */
+        private int count;
+
+        /** A high surrogate waiting for its low surrogate, or 0 */
+        private char pendingHigh;
+
+        private Utf8Sink(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        @Override
+        public void write(int c) {
+            writeChar((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            ensure(len);
+            for (int i = off; i < off + len; i++) {
+                writeChar(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensure(len);
+            for (int i = off; i < off + len; i++) {
+                writeChar(str.charAt(i));
+            }
+        }
+
+        /**
+         * Encodes one UTF-16 char, combining surrogate pairs into a four byte sequence.
+         *
+         * @param c The char to encode
+         */
+        private void writeChar(char c) {
+            if (c < 0x80 && pendingHigh == 0) {
+                // ASCII fast path, the common case for orders
+                ensure(1);
+                buf[count++] = (byte) c;
+            } else if (Character.isHighSurrogate(c)) {
+                pendingHigh = c;
+            } else if (Character.isLowSurrogate(c) && pendingHigh != 0) {
+                int cp = Character.toCodePoint(pendingHigh, c);
+                pendingHigh = 0;
+                ensure(4);
+                buf[count++] = (byte) (0xF0 | (cp >> 18));
+                buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                if (pendingHigh != 0) {
+                    // Unpaired surrogate, encode a replacement like String.getBytes does
+                    pendingHigh = 0;
+                    ensure(1);
+                    buf[count++] = '?';
+                }
+                if (Character.isSurrogate(c)) {
+                    ensure(1);
+                    buf[count++] = '?';
+                } else if (c < 0x80) {
+                    ensure(1);
+                    buf[count++] = (byte) c;
+                } else if (c < 0x800) {
+                    ensure(2);
+                    buf[count++] = (byte) (0xC0 | (c >> 6));
+                    buf[count++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    ensure(3);
+                    buf[count++] = (byte) (0xE0 | (c >> 12));
+                    buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[count++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        /**
+         * Grows the buffer so at least extra more bytes fit.
+         *
+         * @param extra The number of bytes about to be written
+         */
+        private void ensure(int extra) {
+            if (count + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A Reader that decodes UTF-8 straight from a ByteBuffer.
+     */
+    private static final class Utf8Source extends Reader {
+
+        /** The bytes to decode, consumed from position to limit */
+        private final ByteBuffer in;
+
+        /** The low surrogate of a decoded four byte sequence, or 0 */
+        private char pendingLow;
+
+        private Utf8Source(ByteBuffer in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            if (pendingLow != 0) {
+                cbuf[off + n++] = pendingLow;
+                pendingLow = 0;
+            }
+            while (n < len && in.hasRemaining()) {
+                int b = in.get();
+                if (b >= 0) {
+                    // ASCII fast path
+                    cbuf[off + n++] = (char) b;
+                    continue;
+                }
+                int cp = decodeMultiByte(b & 0xFF);
+                if (cp >= 0x10000) {
+                    cbuf[off + n++] = Character.highSurrogate(cp);
+                    if (n < len) {
+                        cbuf[off + n++] = Character.lowSurrogate(cp);
+                    } else {
+                        pendingLow = Character.lowSurrogate(cp);
+                    }
+                } else {
+                    cbuf[off + n++] = (char) cp;
+                }
+            }
+            return n == 0 ? -1 : n;
+        }
+
+        /**
+         * Decodes the rest of a multi-byte sequence. Malformed input decodes to U+FFFD.
+         *
+         * @param lead The first byte of the sequence
+         * @return The decoded code point
+         */
+        private int decodeMultiByte(int lead) {
+            int extra;
+            int cp;
+            if ((lead & 0xE0) == 0xC0) {
+                extra = 1;
+                cp = lead & 0x1F;
+            } else if ((lead & 0xF0) == 0xE0) {
+                extra = 2;
+                cp = lead & 0x0F;
+            } else if ((lead & 0xF8) == 0xF0) {
+                extra = 3;
+                cp = lead & 0x07;
+            } else {
+                return 0xFFFD;
+            }
+            for (int i = 0; i < extra; i++) {
+                if (!in.hasRemaining()) {
+                    return 0xFFFD;
+                }
+                int b = in.get(in.position()) & 0xFF;
+                if ((b & 0xC0) != 0x80) {
+                    return 0xFFFD;
+                }
+                in.get();
+                cp = (cp << 6) | (b & 0x3F);
+            }
+            return cp > 0x10FFFF ? 0xFFFD : cp;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
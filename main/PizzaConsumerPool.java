@@ -0,0 +1,522 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: RabbitMQ Parallel Consumer Pool
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 7 run lingering batches on the dispatch executor instead of the ack flusher
+ */
+package main;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Delivery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * PizzaConsumerPool consumes pizzaQueue with several channels on one connection.
+ * Every channel has its own consumer and prefetch limit, so deliveries are processed in parallel
+ * while the order within one channel is kept. Deliveries are acknowledged manually, and
+ * consecutive successes are acknowledged together with a single multiple ack.
+ * An AsyncDeliveryHandler lets a delivery finish after the handler returns, e.g. once it is journaled;
+ * the delivery is acknowledged when its stage completes and the channel moves on to the next delivery
+ * meanwhile, up to the prefetch limit.
+ * A BatchDeliveryHandler gets the deliveries of a channel in batches of batchSize, or fewer once the first
+ * delivery of a batch has waited lingerMicros, and each batch is settled with one multiple ack or nack.
+ * Backpressure comes from the prefetch limit: a channel holds at most prefetch unacknowledged deliveries,
+ * so a slow handler stops the broker from sending more instead of letting batches pile up in memory.
+ * A delivery that fails with an IOException, for example because the journal could not store it, is requeued
+ * so it is not lost; any other failure marks a message that can never be processed, which is rejected
+ * without requeueing (dead-lettered when the queue has a dead letter exchange).
+ * claim() switches the pool from several channels on one queue to one exclusive consumer per claimed queue,
+ * used for the shard queues of PizzaShards.
+ */
+public class PizzaConsumerPool implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PizzaConsumerPool.class);
+
+    /** How often partially filled ack batches are flushed, in milliseconds */
+    private static final long ACK_FLUSH_MILLIS = 100;
+
+    /**
+     * Processes one delivery. Throwing an IOException requeues the delivery, throwing anything else rejects it
+     * without requeueing it.
+     */
+    @FunctionalInterface
+    public interface DeliveryHandler {
+        void handle(Delivery delivery) throws Exception;
+    }
+
+    /**
+     * Processes one delivery and returns a stage that completes when the delivery is done.
+     * Throwing, or completing the stage exceptionally, requeues the delivery when the failure is an IOException
+     * and otherwise rejects it without requeueing it.
+     */
+    @FunctionalInterface
+    public interface AsyncDeliveryHandler {
+        CompletionStage<Void> handle(Delivery delivery) throws Exception;
+    }
+
+    /**
+     * Processes a batch of deliveries from one channel, in delivery order, and returns a stage that completes
+     * when the whole batch is done. Throwing, or completing the stage exceptionally, requeues the whole batch
+     * when the failure is an IOException and otherwise rejects it without requeueing, so deliveries that fail
+     * on their own, such as undecodable ones, should be skipped by the handler instead.
+     */
+    @FunctionalInterface
+    public interface BatchDeliveryHandler {
+        CompletionStage<Void> handle(List<Delivery> batch) throws Exception;
+    }
+
+    /** The stage returned for a delivery that is already done */
+    private static final CompletionStage<Void> DONE = CompletableFuture.completedFuture(null);
+
+    /** The factory used to open the connection */
+    private final ConnectionFactory factory;
+
+    /** The queue consumed by every channel */
+    private final String queueName;
+
+    /** The number of channels, each with one consumer */
+    private final int consumers;
+
+    /** The per-channel prefetch (basicQos) limit */
+    private final int prefetch;
+
+    /** The number of processed deliveries acknowledged with one multiple ack */
+    private final int ackBatch;
+
+    /** Whether deliveries are dispatched on virtual threads */
+    private final boolean virtualThreads;
+
+    /** The business logic run for every delivery, null in batch mode */
+    private final AsyncDeliveryHandler handler;
+
+    /** The business logic run for every batch, null unless in batch mode */
+    private final BatchDeliveryHandler batchHandler;
+
+    /** The most deliveries handed to the batchHandler at once */
+    private final int batchSize;
+
+    /** How long the first delivery of a batch waits for the batch to fill, in microseconds */
+    private final long lingerMicros;
+
+    /** The queues consumed with one exclusive consumer each, null to consume queueName on every channel */
+    private List<String> claimedQueues;
+
+    /** The channel consumers, one per channel */
+    private final List<ChannelConsumer> channelConsumers = new ArrayList<>();
+
+    /** Flushes partially filled ack batches and batches that waited out their linger time */
+    private final ScheduledExecutorService ackFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pizza-ack-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Runs the consumer dispatch for every channel */
+    private ExecutorService dispatchExecutor;
+
+    /** The shared connection */
+    private Connection connection;
+
+    /**
+     * Constructs a PizzaConsumerPool. Nothing is consumed until start() is called.
+     *
+     * @param factory        The factory used to open the connection
+     * @param queueName      The queue to consume
+     * @param consumers      The number of channels and consumers
+     * @param prefetch       The maximum number of unacknowledged deliveries per channel
+     * @param ackBatch       The number of deliveries acknowledged at once, at most prefetch
+     * @param virtualThreads Whether to dispatch deliveries on virtual threads
+     * @param handler        The logic run for every delivery
+     */
+    public PizzaConsumerPool(ConnectionFactory factory, String queueName, int consumers, int prefetch,
+                             int ackBatch, boolean virtualThreads, DeliveryHandler handler) {
+        this(factory, queueName, consumers, prefetch, ackBatch, virtualThreads, (AsyncDeliveryHandler) delivery -> {
+            handler.handle(delivery);
+            return DONE;
+        });
+    }
+
+    /**
+     * Constructs a PizzaConsumerPool whose deliveries complete asynchronously.
+     * Nothing is consumed until start() is called.
+     *
+     * @param factory        The factory used to open the connection
+     * @param queueName      The queue to consume
+     * @param consumers      The number of channels and consumers
+     * @param prefetch       The maximum number of unacknowledged deliveries per channel
+     * @param ackBatch       The number of deliveries acknowledged at once, at most prefetch
+     * @param virtualThreads Whether to dispatch deliveries on virtual threads
+     * @param handler        The logic run for every delivery
+     */
+    public PizzaConsumerPool(ConnectionFactory factory, String queueName, int consumers, int prefetch,
+                             int ackBatch, boolean virtualThreads, AsyncDeliveryHandler handler) {
+        this(factory, queueName, consumers, prefetch, ackBatch, virtualThreads, handler, null, 1, 0);
+    }
+
+    /**
+     * Constructs a PizzaConsumerPool that hands deliveries to its handler in batches.
+     * Nothing is consumed until start() is called.
+     *
+     * @param factory        The factory used to open the connection
+     * @param queueName      The queue to consume
+     * @param consumers      The number of channels and consumers
+     * @param prefetch       The maximum number of unacknowledged deliveries per channel
+     * @param batchSize      The most deliveries per batch, at most prefetch
+     * @param lingerMicros   How long a batch that is not full waits for more deliveries
+     * @param virtualThreads Whether to dispatch deliveries on virtual threads
+     * @param handler        The logic run for every batch
+     */
+    public PizzaConsumerPool(ConnectionFactory factory, String queueName, int consumers, int prefetch,
+                             int batchSize, long lingerMicros, boolean virtualThreads, BatchDeliveryHandler handler) {
+        this(factory, queueName, consumers, prefetch, 1, virtualThreads, null, handler, batchSize, lingerMicros);
+        if (batchSize > prefetch || lingerMicros < 1) {
+            // A batch larger than the prefetch window could never fill
+            throw new IllegalArgumentException("batchSize must be at most prefetch and lingerMicros positive");
+        }
+    }
+
+    private PizzaConsumerPool(ConnectionFactory factory, String queueName, int consumers, int prefetch, int ackBatch,
+                              boolean virtualThreads, AsyncDeliveryHandler handler, BatchDeliveryHandler batchHandler,
+                              int batchSize, long lingerMicros) {
+        if (consumers < 1 || prefetch < 1 || ackBatch < 1 || ackBatch > prefetch || batchSize < 1) {
+            throw new IllegalArgumentException("consumers and prefetch must be positive and 1 <= ackBatch <= prefetch");
+        }
+        this.factory = factory;
+        this.queueName = queueName;
+        this.consumers = consumers;
+        this.prefetch = prefetch;
+        this.ackBatch = ackBatch;
+        this.virtualThreads = virtualThreads;
+        this.handler = handler;
+        this.batchHandler = batchHandler;
+        this.batchSize = batchSize;
+        this.lingerMicros = lingerMicros;
+    }
+
+    /**
+     * Opens the connection and channels and starts consuming.
+     *
+     * @throws IOException      If the connection, a channel or a consumer cannot be set up
+     * @throws TimeoutException If the connection times out
+     */
+    public void start() throws IOException, TimeoutException {
+        int channels = claimedQueues != null ? claimedQueues.size() : consumers;
+        // The client runs each channel's deliveries in order on this executor, channels in parallel
+        dispatchExecutor = virtualThreads ? VirtualThreads.newExecutor() : Executors.newFixedThreadPool(channels);
+        connection = factory.newConnection(dispatchExecutor);
+
+        for (int i = 0; i < channels; i++) {
+            Channel channel = connection.createChannel();
+            if (claimedQueues == null && i == 0) {
+                // Declare the queue once, the same way Recv does
+                channel.queueDeclare(queueName, false, false, false, null);
+            }
+            // Limit unacknowledged deliveries so work is spread across channels
+            channel.basicQos(prefetch);
+            String queue = claimedQueues != null ? claimedQueues.get(i) : queueName;
+            ChannelConsumer channelConsumer = new ChannelConsumer(channel, queue);
+            channelConsumers.add(channelConsumer);
+            // An exclusive consumer is refused while another one holds the queue, so a claimed shard has one reader
+            boolean exclusive = claimedQueues != null;
+            if (batchHandler == null) {
+                channel.basicConsume(queue, false, "", false, exclusive, null,
+                        (consumerTag, delivery) -> channelConsumer.process(delivery), consumerTag -> {});
+            } else {
+                channel.basicConsume(queue, false, "", false, exclusive, null,
+                        (consumerTag, delivery) -> channelConsumer.collect(delivery), consumerTag -> {});
+            }
+        }
+        ackFlusher.scheduleWithFixedDelay(this::flushAcks, ACK_FLUSH_MILLIS, ACK_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Consumes these queues instead of the pool's queue, each with one channel and one exclusive consumer,
+     * so every queue is read in order by this pool alone. The consumers count is ignored and the queues
+     * must already be declared. Call before start().
+     *
+     * @param queues The queues to claim
+     */
+    public void claim(List<String> queues) {
+        if (queues.isEmpty()) {
+            throw new IllegalArgumentException("At least one queue must be claimed");
+        }
+        this.claimedQueues = new ArrayList<>(queues);
+    }
+
+    /**
+     * Decides whether a failed delivery goes back on the queue. An I/O error means the order could not be stored
+     * or forwarded right now and is worth retrying; any other failure means the message itself is bad.
+     *
+     * @param failure Why the delivery failed
+     * @return true to requeue the delivery
+     */
+    static boolean requeue(Throwable failure) {
+        return failure instanceof IOException || failure instanceof UncheckedIOException;
+    }
+
+    /**
+     * Acknowledges whatever is waiting in every channel's ack batch.
+     */
+    private void flushAcks() {
+        for (ChannelConsumer channelConsumer : channelConsumers) {
+            try {
+                channelConsumer.flush();
+            } catch (IOException e) {
+                LOG.warn("Failed to flush acks", e);
+            }
+        }
+    }
+
+    /**
+     * Flushes pending acks and closes the connection.
+     * Deliveries still collecting in a batch, or in a batch that has not completed, are left
+     * unacknowledged and redelivered by the broker.
+     *
+     * @throws IOException If closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        ackFlusher.shutdownNow();
+        flushAcks();
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } finally {
+            if (dispatchExecutor != null) {
+                dispatchExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * The consumer of one channel and its pending ack batch.
+     */
+    private final class ChannelConsumer {
+
+        /** The channel the deliveries arrived on, acks must go back on it */
+        private final Channel channel;
+
+        /** The queue this channel consumes */
+        private final String queue;
+
+        /** The highest processed delivery tag not yet acknowledged */
+        private long lastTag;
+
+        /** The number of processed deliveries not yet acknowledged */
+        private int unacked;
+
+        /** Completes when the latest delivery is acknowledged or rejected, only used by the dispatch thread or under dispatchLock in batch mode */
+        private CompletionStage<Void> settled = DONE;
+
+        /**
+         * Held while a batch is collected and handed to the batch handler, so batches reach it in delivery order.
+         * Kept apart from this object's lock, which guards the acks, so a slow handler never holds up settling.
+         */
+        private final Object dispatchLock = new Object();
+
+        /** Deliveries waiting for their batch to fill, batch mode only */
+        private List<Delivery> batch = new ArrayList<>();
+
+        /** Hands over the current batch once it has lingered long enough, null while no batch is collecting */
+        private ScheduledFuture<?> lingerTask;
+
+        private ChannelConsumer(Channel channel, String queue) {
+            this.channel = channel;
+            this.queue = queue;
+        }
+
+        /**
+         * Runs the handler for one delivery and acknowledges it in a batch once its stage completes.
+         * Called on the channel's dispatch thread, one delivery at a time.
+         *
+         * @param delivery The delivery to process
+         */
+        private void process(Delivery delivery) {
+            long tag = delivery.getEnvelope().getDeliveryTag();
+            CompletionStage<Void> done;
+            try {
+                done = handler.handle(delivery);
+            } catch (Exception e) {
+                // Wait for the earlier deliveries too, the nack flushes their acks
+                done = CompletableFuture.failedFuture(e);
+            }
+            // A multiple ack covers every earlier tag, so deliveries settle in order even if stages complete out of order
+            CompletionStage<Void> current = done;
+            settled = settled.handle((ignored, failure) -> null)
+                    .thenCompose(ignored -> current)
+                    .whenComplete((ignored, failure) -> {
+                try {
+                    if (failure != null) {
+                        reject(tag, failure instanceof CompletionException && failure.getCause() != null
+                                ? failure.getCause() : failure);
+                    } else {
+                        acknowledge(tag);
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Failed to settle deliveryTag={} queue={}", tag, queue, e);
+                }
+            });
+        }
+
+        /**
+         * Adds a delivery to the current batch and hands the batch over once it is full.
+         * Called on the channel's dispatch thread.
+         *
+         * @param delivery The delivery to process
+         */
+        private void collect(Delivery delivery) {
+            synchronized (dispatchLock) {
+                batch.add(delivery);
+                if (batch.size() >= batchSize) {
+                    dispatchBatch();
+                } else if (batch.size() == 1) {
+                    lingerTask = ackFlusher.schedule(this::lingered, lingerMicros, TimeUnit.MICROSECONDS);
+                }
+            }
+        }
+
+        /**
+         * Called on the ack flusher once a batch has waited out its linger time. The flusher thread is shared by
+         * every channel, so it only passes the batch on to the dispatch executor and never runs the handler itself.
+         */
+        private void lingered() {
+            try {
+                dispatchExecutor.execute(this::dispatchLingering);
+            } catch (RejectedExecutionException e) {
+                // The pool is closing, the batch is left unacknowledged and redelivered
+                LOG.debug("Lingering batch not dispatched, the pool is closing queue={}", queue);
+            }
+        }
+
+        /**
+         * Hands over a batch that did not fill up within the linger time. Runs on the dispatch executor.
+         */
+        private void dispatchLingering() {
+            synchronized (dispatchLock) {
+                // A linger task that lost the race with a full batch may hand over the next batch early, which is harmless
+                if (!batch.isEmpty()) {
+                    dispatchBatch();
+                }
+            }
+        }
+
+        /**
+         * Runs the batch handler on the current batch and settles the batch with one multiple ack or nack
+         * once its stage, and the stages of the batches before it, complete. Called with dispatchLock held,
+         * so batches reach the handler in delivery order.
+         */
+        private void dispatchBatch() {
+            List<Delivery> deliveries = batch;
+            batch = new ArrayList<>(batchSize);
+            if (lingerTask != null) {
+                lingerTask.cancel(false);
+                lingerTask = null;
+            }
+            long batchLastTag = deliveries.get(deliveries.size() - 1).getEnvelope().getDeliveryTag();
+            CompletionStage<Void> done;
+            try {
+                done = batchHandler.handle(deliveries);
+            } catch (Exception e) {
+                done = CompletableFuture.failedFuture(e);
+            }
+            CompletionStage<Void> current = done;
+            settled = settled.handle((ignored, failure) -> null)
+                    .thenCompose(ignored -> current)
+                    .whenComplete((ignored, failure) -> settleBatch(batchLastTag, deliveries.size(),
+                            failure instanceof CompletionException && failure.getCause() != null
+                                    ? failure.getCause() : failure));
+        }
+
+        /**
+         * Acknowledges or rejects every delivery of a batch with one multiple ack or nack.
+         *
+         * @param tag     The delivery tag of the last delivery in the batch
+         * @param size    The number of deliveries in the batch
+         * @param failure Why the batch failed, null if it succeeded
+         */
+        private synchronized void settleBatch(long tag, int size, Throwable failure) {
+            try {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                if (failure == null) {
+                    channel.basicAck(tag, true);
+                } else if (requeue(failure)) {
+                    LOG.warn("Batch requeued deliveries={} lastDeliveryTag={} queue={} error={}", size, tag, queue, failure.toString());
+                    channel.basicNack(tag, true, true);
+                } else {
+                    LOG.error("Batch rejected deliveries={} lastDeliveryTag={} queue={}", size, tag, queue, failure);
+                    channel.basicNack(tag, true, false);
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to settle batch lastDeliveryTag={} queue={}", tag, queue, e);
+            }
+        }
+
+        /**
+         * Adds a processed delivery to the ack batch.
+         *
+         * @param tag The delivery tag
+         * @throws IOException If the batch is full and the ack cannot be sent
+         */
+        private synchronized void acknowledge(long tag) throws IOException {
+            lastTag = tag;
+            if (++unacked >= ackBatch) {
+                flush();
+            }
+        }
+
+        /**
+         * Rejects a failed delivery, requeueing it when it failed for an I/O error.
+         *
+         * @param tag     The delivery tag
+         * @param failure Why the delivery failed
+         * @throws IOException If the ack or nack cannot be sent
+         */
+        private synchronized void reject(long tag, Throwable failure) throws IOException {
+            boolean requeue = requeue(failure);
+            if (requeue) {
+                LOG.warn("Delivery requeued deliveryTag={} queue={} error={}", tag, queue, failure.toString());
+            } else {
+                LOG.error("Delivery rejected deliveryTag={} queue={}", tag, queue, failure);
+            }
+            // Ack the earlier successes first so the multiple ack does not cover this tag
+            flush();
+            channel.basicNack(tag, false, requeue);
+        }
+
+        /**
+         * Acknowledges every processed delivery up to lastTag with one multiple ack.
+         *
+         * @throws IOException If the ack cannot be sent
+         */
+        private synchronized void flush() throws IOException {
+            if (unacked > 0 && channel.isOpen()) {
+                channel.basicAck(lastTag, true);
+                unacked = 0;
+            }
+        }
+    }
+}
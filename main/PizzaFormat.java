@@ -0,0 +1,124 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Pizza Wire Format Negotiation
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 decode straight from a ByteBuffer
+ */
+package main;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * PizzaFormat selects how a Pizza order is encoded on the wire.
+ * The format travels as the AMQP content_type property or the HTTP Content-Type header.
+ * Messages without a known content type are read as JSON, so older producers keep working.
+ */
+public enum PizzaFormat {
+
+    /** UTF-8 JSON through PizzaCodec */
+    JSON(PizzaCodec.CONTENT_TYPE) {
+        @Override
+        public byte[] encode(Pizza pizza) {
+            return PizzaCodec.encode(pizza);
+        }
+
+        @Override
+        public Pizza decode(byte[] data) {
+            return PizzaCodec.decode(data);
+        }
+
+        @Override
+        public Pizza decode(ByteBuffer data) {
+            return PizzaCodec.decode(data);
+        }
+    },
+
+    /** The compact binary format of PizzaBinaryCodec */
+    BINARY(PizzaBinaryCodec.CONTENT_TYPE) {
+        @Override
+        public byte[] encode(Pizza pizza) {
+            return PizzaBinaryCodec.encode(pizza);
+        }
+
+        @Override
+        public Pizza decode(byte[] data) {
+            return PizzaBinaryCodec.decode(data);
+        }
+
+        @Override
+        public Pizza decode(ByteBuffer data) {
+            return PizzaBinaryCodec.decode(data.duplicate());
+        }
+    };
+
+    /** The content type sent with messages in this format */
+    private final String contentType;
+
+    PizzaFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Gets the content type of this format.
+     *
+     * @return The content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Encodes a Pizza in this format.
+     *
+     * @param pizza The Pizza to encode
+     * @return The encoded bytes
+     */
+    public abstract byte[] encode(Pizza pizza);
+
+    /**
+     * Decodes a Pizza in this format.
+     *
+     * @param data The encoded bytes
+     * @return The Pizza, or null for an empty JSON message
+     */
+    public abstract Pizza decode(byte[] data);
+
+    /**
+     * Decodes a Pizza in this format from the remaining bytes of a buffer, without copying them
+     * to an array. The buffer position is not changed.
+     *
+     * @param data The buffer holding the encoded bytes between its position and limit
+     * @return The Pizza, or null for an empty JSON message
+     */
+    public abstract Pizza decode(ByteBuffer data);
+
+    /**
+     * Finds the format of a content type. Parameters such as "; charset=utf-8" are ignored.
+     *
+     * @param contentType The content type, may be null
+     * @return The matching format, JSON when missing or unknown
+     */
+    public static PizzaFormat forContentType(String contentType) {
+        if (contentType != null) {
+            int semicolon = contentType.indexOf(';');
+            String mediaType = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim();
+            if (BINARY.contentType.equalsIgnoreCase(mediaType)) {
+                return BINARY;
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * Gets the format configured with the system property pizza.format ("json" or "binary").
+     *
+     * @return The configured format, JSON by default
+     */
+    public static PizzaFormat configured() {
+        return valueOf(System.getProperty("pizza.format", "json").trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Web Service Async Client
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 3 sign a timestamp and nonce with every order
+ */
+package main;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PizzaHttpClient posts signed pizza orders with java.net.http.HttpClient.
+ * One client is shared for every request, so HTTP/1.1 keep-alive connections are pooled and reused.
+ * sendAsync keeps up to maxConcurrency requests in flight at once; further calls wait for a slot.
+ * Every request carries its send time in the X-Sent-At header for the server's end-to-end latency.
+ */
+public class PizzaHttpClient {
+
+    /** Request counters and the client-side round trip latency, over every client */
+    private static final LongAdder SENT = Metrics.counter("pizza_http_client_requests_total", "Orders sent by PizzaHttpClient");
+    private static final LongAdder FAILED = Metrics.counter("pizza_http_client_failures_total", "Orders that failed or got a non-2xx response");
+    private static final LatencyHistogram REQUEST_TIME = Metrics.histogram("pizza_http_client_request_seconds", "Time from sending an order until its response arrives");
+
+    /** The shared HTTP client and its connection pool */
+    private final HttpClient client;
+
+    /** The /pizza endpoint */
+    private final URI uri;
+
+    /** Signs every payload for the HMAC header */
+    private final HmacSigner signer;
+
+    /** The wire format of the payloads */
+    private final PizzaFormat format;
+
+    /** One permit per request allowed in flight */
+    private final Semaphore inFlight;
+
+    /**
+     * Constructs a PizzaHttpClient.
+     *
+     * @param uri            The /pizza endpoint
+     * @param signer         The HMAC engine for the shared key
+     * @param format         The wire format of the payloads
+     * @param maxConcurrency The maximum number of requests in flight
+     */
+    public PizzaHttpClient(URI uri, HmacSigner signer, PizzaFormat format, int maxConcurrency) {
+        this.uri = uri;
+        this.signer = signer;
+        this.format = format;
+        this.inFlight = new Semaphore(maxConcurrency);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Builds the signed POST request for an order.
+     *
+     * @param pizza The order
+     * @return The request with Content-Type, replay-protection and HMAC headers
+     */
+    private HttpRequest buildRequest(Pizza pizza) {
+        byte[] payload = format.encode(pizza);
+        // Every request, retries included, gets its own nonce so the receiver accepts it once
+        String timestamp = Long.toString(System.currentTimeMillis());
+        String nonce = ReplayGuard.newNonce();
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", format.getContentType())
+                .header(ReplayGuard.TIMESTAMP_HEADER, timestamp)
+                .header(ReplayGuard.NONCE_HEADER, nonce)
+                .header("HMAC", signer.signBase64(HmacSigner.preamble(timestamp, nonce), payload))
+                .header(Metrics.SENT_AT_HEADER, Long.toString(Metrics.nowMicros()))
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+    }
+
+    /**
+     * Sends an order and waits for the response.
+     *
+     * @param pizza The order
+     * @return The response with its body as a String
+     * @throws IOException          If the request fails
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public HttpResponse<String> send(Pizza pizza) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response = null;
+        try {
+            response = client.send(buildRequest(pizza), HttpResponse.BodyHandlers.ofString());
+            return response;
+        } finally {
+            record(start, response);
+        }
+    }
+
+    /**
+     * Sends an order without waiting for the response. Blocks while maxConcurrency requests are in flight.
+     *
+     * @param pizza The order
+     * @return The future response with its body as a String
+     * @throws InterruptedException If interrupted while waiting for a slot
+     */
+    public CompletableFuture<HttpResponse<String>> sendAsync(Pizza pizza) throws InterruptedException {
+        inFlight.acquire();
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> response;
+        try {
+            response = client.sendAsync(buildRequest(pizza), HttpResponse.BodyHandlers.ofString());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            record(start, null);
+            throw e;
+        }
+        return response.whenComplete((r, e) -> {
+            inFlight.release();
+            record(start, r);
+        });
+    }
+
+    /**
+     * Records one finished request.
+     *
+     * @param start    The System.nanoTime() when the request started
+     * @param response The response, or null if the request failed
+     */
+    private static void record(long start, HttpResponse<?> response) {
+        REQUEST_TIME.record(System.nanoTime() - start);
+        SENT.increment();
+        if (response == null || response.statusCode() / 100 != 2) {
+            FAILED.increment();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Compiled Menu Price Table
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 reject toppings the registry does not know
+ */
+package main;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PizzaMenu is a menu of sizes, toppings and combos compiled into flat price tables, so an order is priced
+ * without parsing, hashing names or allocating. Prices are kept in cents.
+ * <p>
+ * The menu is JSON: "sizes" maps each size label to the price of a plain pizza, "toppings" maps each topping
+ * to its price on a Medium, scaled per size by "toppingScale", "maxToppings" caps the toppings per order and
+ * "combos" lists named topping sets with a price per size. An order is the plain price of its size plus
+ * each topping; when its toppings include every topping of a combo, the combo's price replaces the plain price
+ * and those toppings, and the cheapest matching combo wins. Toppings get their ToppingRegistry id when the menu
+ * is compiled, and the tables are indexed by size and topping id.
+ * <p>
+ * Orders whose toppings fit the Pizza bitset are remembered in a small direct-mapped cache keyed by size and
+ * bitset, so the hot combinations skip the combo search. Each compiled menu has its own cache, so a reloaded
+ * menu never serves prices of the one it replaced.
+ */
+public final class PizzaMenu {
+
+    /** Rejection codes returned by priceCents(), all negative */
+    public static final long UNKNOWN_SIZE = -1;
+    public static final long UNKNOWN_TOPPING = -2;
+    public static final long TOO_MANY_TOPPINGS = -3;
+
+    /** The number of standard sizes, the first table dimension */
+    private static final int SIZES = Pizza.Size.values().length;
+
+    /** Entries in the price cache, a power of two */
+    private static final int CACHE_SIZE = 1024;
+
+    /** The plain price per size ordinal, -1 when the size is not on the menu */
+    private final long[] basePrices;
+
+    /** The topping prices, indexed by size ordinal * width + topping id, -1 when the topping is not on the menu */
+    private final long[] toppingPrices;
+
+    /** The number of topping ids covered by toppingPrices */
+    private final int width;
+
+    /** The most toppings one order may have */
+    private final int maxToppings;
+
+    /** The combos, tried in order */
+    private final Combo[] combos;
+
+    /** The number of sizes, toppings and combos, for the log */
+    private final String summary;
+
+    /** Recently priced bitset orders, replaced slot by slot without locks */
+    private final CachedPrice[] cache = new CachedPrice[CACHE_SIZE];
+
+    private PizzaMenu(long[] basePrices, long[] toppingPrices, int width, int maxToppings, Combo[] combos,
+                      String summary) {
+        this.basePrices = basePrices;
+        this.toppingPrices = toppingPrices;
+        this.width = width;
+        this.maxToppings = maxToppings;
+        this.combos = combos;
+        this.summary = summary;
+    }
+
+    /**
+     * Parses and compiles a JSON menu.
+     *
+     * @param json The menu
+     * @return The compiled menu
+     * @throws JsonParseException If the menu is not valid JSON, or names an unknown size,
+     *                            or a combo uses a topping that is not on the menu
+     */
+    public static PizzaMenu parse(Reader json) {
+        JsonObject menu = JsonParser.parseReader(json).getAsJsonObject();
+
+        long[] basePrices = new long[SIZES];
+        Arrays.fill(basePrices, -1);
+        for (Map.Entry<String, JsonElement> size : menu.getAsJsonObject("sizes").entrySet()) {
+            basePrices[sizeOf(size.getKey()).ordinal()] = cents(size.getValue());
+        }
+
+        // A size without a scale pays the Medium topping price
+        double[] scale = new double[SIZES];
+        Arrays.fill(scale, 1.0);
+        JsonObject scales = menu.getAsJsonObject("toppingScale");
+        if (scales != null) {
+            for (Map.Entry<String, JsonElement> size : scales.entrySet()) {
+                scale[sizeOf(size.getKey()).ordinal()] = size.getValue().getAsDouble();
+            }
+        }
+
+        // Register the toppings first so the table is as wide as the largest id
+        JsonObject toppings = menu.getAsJsonObject("toppings");
+        int width = 0;
+        for (String topping : toppings.keySet()) {
+            width = Math.max(width, ToppingRegistry.idOf(topping) + 1);
+        }
+        long[] toppingPrices = new long[SIZES * width];
+        Arrays.fill(toppingPrices, -1);
+        for (Map.Entry<String, JsonElement> topping : toppings.entrySet()) {
+            int id = ToppingRegistry.idOf(topping.getKey());
+            long medium = cents(topping.getValue());
+            for (int size = 0; size < SIZES; size++) {
+                toppingPrices[size * width + id] = Math.round(medium * scale[size]);
+            }
+        }
+
+        List<Combo> combos = new ArrayList<>();
+        JsonArray comboList = menu.getAsJsonArray("combos");
+        if (comboList != null) {
+            for (JsonElement element : comboList) {
+                combos.add(compileCombo(element.getAsJsonObject(), basePrices, toppingPrices, width));
+            }
+        }
+
+        int maxToppings = menu.has("maxToppings") ? menu.get("maxToppings").getAsInt() : ToppingRegistry.MAX_TOPPINGS;
+        String summary = Arrays.stream(basePrices).filter(price -> price >= 0).count() + " sizes, "
+                + toppings.size() + " toppings, " + combos.size() + " combos";
+        return new PizzaMenu(basePrices, toppingPrices, width, maxToppings, combos.toArray(new Combo[0]), summary);
+    }
+
+    /**
+     * Compiles a combo into its topping set and its discount per size, the plain price of the combo's
+     * toppings minus the combo price.
+     */
+    private static Combo compileCombo(JsonObject combo, long[] basePrices, long[] toppingPrices, int width) {
+        String name = combo.get("name").getAsString();
+        JsonArray toppingNames = combo.getAsJsonArray("toppings");
+        int[] ids = new int[toppingNames.size()];
+        long mask = 0;
+        for (int i = 0; i < ids.length; i++) {
+            String topping = toppingNames.get(i).getAsString();
+            ids[i] = ToppingRegistry.find(topping);
+            if (ids[i] < 0 || ids[i] >= width || toppingPrices[ids[i]] < 0) {
+                throw new JsonParseException("Combo " + name + " uses " + topping + ", which is not on the menu");
+            }
+            mask |= ids[i] < ToppingRegistry.BITSET_TOPPINGS ? 1L << ids[i] : 0;
+        }
+        Arrays.sort(ids);
+        boolean fitsBitset = ids.length == 0 || ids[ids.length - 1] < ToppingRegistry.BITSET_TOPPINGS;
+
+        // A size the combo has no price for gets no discount
+        long[] discounts = new long[SIZES];
+        for (Map.Entry<String, JsonElement> price : combo.getAsJsonObject("prices").entrySet()) {
+            int size = sizeOf(price.getKey()).ordinal();
+            if (basePrices[size] < 0) {
+                continue;
+            }
+            long plain = basePrices[size];
+            for (int id : ids) {
+                plain += toppingPrices[size * width + id];
+            }
+            discounts[size] = Math.max(0, plain - cents(price.getValue()));
+        }
+        return new Combo(ids, fitsBitset ? mask : -1, discounts);
+    }
+
+    private static Pizza.Size sizeOf(String label) {
+        Pizza.Size size = Pizza.Size.fromLabel(label);
+        if (size == null) {
+            throw new JsonParseException("Unknown size " + label);
+        }
+        return size;
+    }
+
+    private static long cents(JsonElement price) {
+        return new BigDecimal(price.getAsString()).movePointRight(2).setScale(0, RoundingMode.HALF_UP)
+                .longValueExact();
+    }
+
+    /**
+     * Prices an order from the menu.
+     *
+     * @param pizza The order
+     * @return The price in cents, or UNKNOWN_SIZE, UNKNOWN_TOPPING or TOO_MANY_TOPPINGS
+     */
+    public long priceCents(Pizza pizza) {
+        Pizza.Size standardSize = pizza.getStandardSize();
+        if (standardSize == null || basePrices[standardSize.ordinal()] < 0) {
+            return UNKNOWN_SIZE;
+        }
+        int size = standardSize.ordinal();
+        if (pizza.hasUnregisteredToppings()) {
+            // Every menu topping is registered, so a topping without an id is not on the menu
+            return UNKNOWN_TOPPING;
+        }
+        if (!pizza.toppingsFitBitset()) {
+            return priceIds(size, pizza.getToppingIds());
+        }
+        long bits = pizza.getToppingBits();
+        int slot = (int) (mix(bits, size) & (CACHE_SIZE - 1));
+        CachedPrice cached = cache[slot];
+        if (cached != null && cached.bits == bits && cached.size == size) {
+            return cached.cents;
+        }
+        long cents = priceBits(size, bits);
+        if (cents >= 0) {
+            // The entry is immutable, so a racing reader sees either the old or the new one whole
+            cache[slot] = new CachedPrice(bits, size, cents);
+        }
+        return cents;
+    }
+
+    /**
+     * Prices toppings given as a bitset.
+     */
+    private long priceBits(int size, long bits) {
+        if (Long.bitCount(bits) > maxToppings) {
+            return TOO_MANY_TOPPINGS;
+        }
+        long total = basePrices[size];
+        int row = size * width;
+        for (long rest = bits; rest != 0; rest &= rest - 1) {
+            int id = Long.numberOfTrailingZeros(rest);
+            long price = id < width ? toppingPrices[row + id] : -1;
+            if (price < 0) {
+                return UNKNOWN_TOPPING;
+            }
+            total += price;
+        }
+        long discount = 0;
+        for (Combo combo : combos) {
+            if (combo.mask != -1 && (bits & combo.mask) == combo.mask) {
+                discount = Math.max(discount, combo.discounts[size]);
+            }
+        }
+        return total - discount;
+    }
+
+    /**
+     * Prices toppings given as sorted ids, for orders with a topping id past the bitset.
+     */
+    private long priceIds(int size, int[] ids) {
+        if (ids.length > maxToppings) {
+            return TOO_MANY_TOPPINGS;
+        }
+        long total = basePrices[size];
+        int row = size * width;
+        for (int id : ids) {
+            long price = id < width ? toppingPrices[row + id] : -1;
+            if (price < 0) {
+                return UNKNOWN_TOPPING;
+            }
+            total += price;
+        }
+        long discount = 0;
+        for (Combo combo : combos) {
+            if (containsAll(ids, combo.ids)) {
+                discount = Math.max(discount, combo.discounts[size]);
+            }
+        }
+        return total - discount;
+    }
+
+    private static boolean containsAll(int[] ids, int[] required) {
+        for (int id : required) {
+            if (Arrays.binarySearch(ids, id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads a size and topping bitset over the cache slots (the MurmurHash3 finalizer).
+     */
+    private static long mix(long bits, int size) {
+        long h = bits * 31 + size;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Names a rejection code for logs and error responses.
+     *
+     * @param code A negative result of priceCents()
+     * @return Why the order was rejected
+     */
+    public static String reason(long code) {
+        if (code == UNKNOWN_SIZE) {
+            return "size is not on the menu";
+        } else if (code == UNKNOWN_TOPPING) {
+            return "a topping is not on the menu";
+        } else if (code == TOO_MANY_TOPPINGS) {
+            return "too many toppings";
+        }
+        return "not priced";
+    }
+
+    @Override
+    public String toString() {
+        return summary;
+    }
+
+    /**
+     * A combo compiled to its topping ids, its bitset and its discount per size ordinal.
+     */
+    private static final class Combo {
+        private final int[] ids;
+        private final long mask;
+        private final long[] discounts;
+
+        private Combo(int[] ids, long mask, long[] discounts) {
+            this.ids = ids;
+            this.mask = mask;
+            this.discounts = discounts;
+        }
+    }
+
+    /**
+     * One cache entry: the price of a size and topping bitset.
+     */
+    private static final class CachedPrice {
+        private final long bits;
+        private final int size;
+        private final long cents;
+
+        private CachedPrice(long bits, int size, long cents) {
+            this.bits = bits;
+            this.size = size;
+            this.cents = cents;
+        }
+    }
+}
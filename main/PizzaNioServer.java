@@ -0,0 +1,811 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: NIO Web Service Engine
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 answer orders that fail with the response handleOrder returns instead of closing
+ */
+package main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PizzaNioServer serves /pizza straight from NIO selectors, the alternative to the com.sun.net.httpserver
+ * engine of WebServiceRecv picked with pizza.http.engine=nio. Orders go through WebServiceRecv.handleOrder,
+ * so the HMAC, replay, menu, journal and gateway handling and every response are the same on both engines.
+ * <p>
+ * One event loop runs per core, each with its own Selector, and accepted connections are dealt out to them
+ * round robin. Requests are read into direct ByteBuffers taken from the loop's pool and parsed incrementally:
+ * the head is scanned for its end as bytes arrive, and the body is hashed and decoded in place. A connection
+ * only holds a buffer while it has unparsed input or unsent output, so idle keep-alive connections cost no
+ * buffer. HTTP/1.1 connections are kept alive and pipelined requests are answered in order, their responses
+ * gathered into one write. Parsing pauses while the write buffer is short of room for another response.
+ * <p>
+ * When a journal or the gateway is open, handling an order waits for a disk sync or a broker confirm; those
+ * orders run on virtual threads and the connection reads no further request until the answer is posted back
+ * to its loop. Requests must fit one buffer and carry a Content-Length; chunked bodies are answered with 411.
+ * Tuned with pizza.nio.loops (one per core), pizza.nio.bufferBytes (16384) and pizza.nio.poolBuffers
+ * (256 idle buffers kept per loop).
+ */
+public class PizzaNioServer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PizzaNioServer.class);
+
+    /** The path served, with or without a query string */
+    private static final byte[] PATH = "/pizza".getBytes(StandardCharsets.US_ASCII);
+
+    /** The version whose connections close unless asked to stay open */
+    private static final byte[] HTTP_10 = "HTTP/1.0".getBytes(StandardCharsets.US_ASCII);
+
+    /** Room kept free in the write buffer for one more response, parsing pauses below it */
+    private static final int RESPONSE_RESERVE = 1024;
+
+    /** The request headers that are parsed, lower case; any other header is skipped */
+    private static final String[] HEADERS = {"content-length", "transfer-encoding", "connection", "expect",
+            "content-type", "hmac", "x-timestamp", "x-nonce", "x-sent-at"};
+    private static final int CONTENT_LENGTH = 0;
+    private static final int TRANSFER_ENCODING = 1;
+    private static final int CONNECTION = 2;
+    private static final int EXPECT = 3;
+
+    /** Answers to requests that are not orders */
+    private static final WebServiceRecv.OrderResponse NOT_FOUND =
+            new WebServiceRecv.OrderResponse(404, "<h1>404 Not Found</h1>No context found for request");
+    private static final WebServiceRecv.OrderResponse BAD_REQUEST =
+            new WebServiceRecv.OrderResponse(400, "Malformed request.");
+    private static final WebServiceRecv.OrderResponse LENGTH_REQUIRED =
+            new WebServiceRecv.OrderResponse(411, "Content-Length is required.");
+
+    /** The fixed parts of a response head */
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] CONTENT_LENGTH_HEADER = "Content-length: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTION_CLOSE = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /** Status lines by status code, built once */
+    private static final byte[][] STATUS_LINES = statusLines();
+
+    /** Requests the engine could not parse or serve, served on /metrics */
+    private static final LongAdder BAD_REQUESTS = Metrics.counter("pizza_nio_bad_requests_total", "Requests the NIO engine could not parse or did not serve");
+    private static final LongAdder PIPELINED = Metrics.counter("pizza_nio_pipelined_total", "Requests parsed from the same read as the request before them");
+
+    /** The listening socket, accepted on by the first loop */
+    private final ServerSocketChannel server;
+
+    /** The event loops, one thread each */
+    private final EventLoop[] loops;
+
+    /** Runs the orders that wait for a journal sync or a broker confirm, null when no order waits */
+    private final ExecutorService waiters;
+
+    /** The size of every pooled buffer, and so the largest request */
+    private final int bufferBytes;
+
+    /** The most idle buffers a loop keeps */
+    private final int poolBuffers;
+
+    /** The answer to requests that do not fit a buffer */
+    private final WebServiceRecv.OrderResponse tooLarge;
+
+    /** Open connections over all loops */
+    private final LongAdder open = new LongAdder();
+
+    /** The loop the next accepted connection goes to, only used by the first loop */
+    private int nextLoop;
+
+    /** Set by close() to stop the loops */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a PizzaNioServer, binds it and starts its event loops.
+     * WebServiceRecv.openBackends() must have run, start() does that.
+     *
+     * @param address     The address to listen on, port 0 picks a free port
+     * @param loopCount   The number of event loops
+     * @param bufferBytes The size of the pooled buffers, and so of the largest request
+     * @param poolBuffers The most idle buffers each loop keeps
+     * @throws IOException If the address cannot be bound
+     */
+    public PizzaNioServer(InetSocketAddress address, int loopCount, int bufferBytes, int poolBuffers) throws IOException {
+        if (loopCount < 1 || bufferBytes < 2 * RESPONSE_RESERVE || poolBuffers < 0) {
+            throw new IllegalArgumentException("loopCount must be positive and bufferBytes at least " + 2 * RESPONSE_RESERVE);
+        }
+        this.bufferBytes = bufferBytes;
+        this.poolBuffers = poolBuffers;
+        this.tooLarge = new WebServiceRecv.OrderResponse(413, "Request is larger than " + bufferBytes + " bytes.");
+        this.waiters = WebServiceRecv.ordersWait() ? VirtualThreads.newExecutor() : null;
+        this.server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        Metrics.gauge("pizza_nio_connections", "Open connections on the NIO engine", open::sum);
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Opens the order handling and starts a server configured from the system properties
+     * pizza.nio.loops (one per core), pizza.nio.bufferBytes (16384) and pizza.nio.poolBuffers (256).
+     * The benchmarks use this to run the engine in-process on a free port.
+     *
+     * @param address The address to listen on, port 0 picks a free port
+     * @return The running server
+     * @throws IOException If the order handling cannot be opened or the address bound
+     */
+    public static PizzaNioServer start(InetSocketAddress address) throws IOException {
+        WebServiceRecv.openBackends();
+        PizzaNioServer server = new PizzaNioServer(address,
+                Integer.getInteger("pizza.nio.loops", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("pizza.nio.bufferBytes", 16_384),
+                Integer.getInteger("pizza.nio.poolBuffers", 256));
+        LOG.info("NIO web service listening on {} with {} event loops", server.getAddress(), server.loops.length);
+        return server;
+    }
+
+    /**
+     * Gets the address the server listens on.
+     *
+     * @return The bound address, with the picked port when bound to port 0
+     * @throws IOException If the socket is closed
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Stops accepting, closes every connection and waits for the loops to end.
+     *
+     * @throws IOException If the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        for (EventLoop loop : loops) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        server.close();
+        if (waiters != null) {
+            waiters.shutdown();
+        }
+    }
+
+    /**
+     * Accepts every pending connection and deals them out to the loops. Runs on the first loop.
+     */
+    private void acceptAll() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                // Send responses without Nagle delays, like sun.net.httpserver.nodelay on the JDK engine
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[nextLoop].adopt(channel);
+                nextLoop = (nextLoop + 1) % loops.length;
+            }
+        } catch (IOException e) {
+            LOG.warn("Accept failed: {}", e.toString());
+        }
+    }
+
+    private static byte[][] statusLines() {
+        byte[][] lines = new byte[600][];
+        String[][] reasons = {{"200", "OK"}, {"400", "Bad Request"}, {"401", "Unauthorized"}, {"403", "Forbidden"},
+                {"404", "Not Found"}, {"405", "Method Not Allowed"}, {"409", "Conflict"}, {"411", "Length Required"},
+                {"413", "Payload Too Large"}, {"422", "Unprocessable Entity"}, {"431", "Request Header Fields Too Large"},
+                {"500", "Internal Server Error"}, {"502", "Bad Gateway"}, {"503", "Service Unavailable"},
+                {"504", "Gateway Timeout"}};
+        for (int status = 100; status < lines.length; status++) {
+            lines[status] = ("HTTP/1.1 " + status + " \r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+        for (String[] reason : reasons) {
+            lines[Integer.parseInt(reason[0])] = ("HTTP/1.1 " + reason[0] + " " + reason[1] + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+        return lines;
+    }
+
+    /**
+     * One selector and the thread running it, with the buffers of its connections.
+     */
+    private final class EventLoop implements Runnable {
+
+        /** Watches the loop's connections, and the listening socket on the first loop */
+        private final Selector selector;
+
+        /** Runs the loop */
+        private final Thread thread;
+
+        /** Work posted from other threads: adopted connections and answers of waiting orders */
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /** Idle direct buffers, only touched by the loop thread */
+        private final ArrayDeque<ByteBuffer> idle = new ArrayDeque<>();
+
+        /** A heap copy of the request head being parsed, so header bytes are read without per-byte buffer calls */
+        private final byte[] head = new byte[bufferBytes];
+
+        /** The Date header, rebuilt once a second */
+        private byte[] dateHeader;
+        private long dateSecond = -1;
+
+        private EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "pizza-nio-" + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            acceptAll();
+                        } else {
+                            ((Connection) key.attachment()).onReady(key.readyOps());
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Event loop {} failed", thread.getName(), e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close the selector of {}", thread.getName(), e);
+                }
+            }
+        }
+
+        /**
+         * Runs a task on the loop thread.
+         *
+         * @param task The task
+         */
+        private void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Takes over an accepted connection.
+         *
+         * @param channel The connection
+         */
+        private void adopt(SocketChannel channel) {
+            if (Thread.currentThread() == thread) {
+                register(channel);
+            } else {
+                execute(() -> register(channel));
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                open.increment();
+            } catch (IOException e) {
+                LOG.warn("Failed to register a connection: {}", e.toString());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already failing, nothing more to release
+                }
+            }
+        }
+
+        /**
+         * Takes an idle buffer, or allocates one when the pool is empty.
+         *
+         * @return A cleared direct buffer of bufferBytes
+         */
+        private ByteBuffer take() {
+            ByteBuffer buffer = idle.poll();
+            return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferBytes);
+        }
+
+        /**
+         * Returns a buffer to the pool, or drops it when the pool is full.
+         *
+         * @param buffer The buffer, no longer used by its connection
+         */
+        private void release(ByteBuffer buffer) {
+            if (idle.size() < poolBuffers) {
+                idle.push(buffer.clear());
+            }
+        }
+
+        /**
+         * Gets the Date header for responses sent this second.
+         *
+         * @return "Date: ...\r\n"
+         */
+        private byte[] dateHeader() {
+            long second = System.currentTimeMillis() / 1000;
+            if (second != dateSecond) {
+                dateSecond = second;
+                dateHeader = ("Date: " + DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC))
+                        + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            }
+            return dateHeader;
+        }
+    }
+
+    /**
+     * One client connection and the state of its current request. Only its loop thread touches it.
+     */
+    private final class Connection implements WebServiceRecv.RequestHeaders {
+
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SocketAddress remote;
+        private SelectionKey key;
+
+        /** Received bytes not yet parsed, between 0 and the position; null when there are none */
+        private ByteBuffer in;
+
+        /** Response bytes not yet sent, between 0 and the position; null when there are none */
+        private ByteBuffer out;
+
+        /** How many bytes of the current request were already scanned for the end of its head */
+        private int scanned;
+
+        /** Whether 100 Continue was sent for the current request */
+        private boolean continued;
+
+        /** Whether an order of this connection is being handled on a waiting thread */
+        private boolean awaiting;
+
+        /** Whether the connection closes once its output is sent */
+        private boolean closing;
+
+        /** The parsed HEADERS of the current request, null when absent */
+        private final String[] values = new String[HEADERS.length];
+
+        private Connection(EventLoop loop, SocketChannel channel) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.remote = channel.getRemoteAddress();
+        }
+
+        @Override
+        public String getFirst(String name) {
+            for (int i = 0; i < HEADERS.length; i++) {
+                if (HEADERS[i].equalsIgnoreCase(name)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Reads what arrived, answers every complete request and writes the responses.
+         *
+         * @param ready The ready operations of the key
+         */
+        private void onReady(int ready) {
+            try {
+                if ((ready & SelectionKey.OP_READ) != 0) {
+                    if (in == null) {
+                        in = loop.take();
+                    }
+                    if (channel.read(in) < 0) {
+                        close();
+                        return;
+                    }
+                }
+                serve();
+                flush();
+            } catch (IOException e) {
+                LOG.debug("Connection {} failed: {}", remote, e.toString());
+                close();
+            } catch (RuntimeException e) {
+                // handleOrder answers its own failures, so this is a fault in the engine and the connection state is unknown
+                LOG.error("Connection {} failed", remote, e);
+                close();
+            }
+        }
+
+        /**
+         * Answers the complete requests in the input, in order, until one is incomplete,
+         * an order is handed to a waiting thread or the output has no room for another response.
+         */
+        private void serve() {
+            if (in == null) {
+                return;
+            }
+            in.flip();
+            int served = 0;
+            try {
+                while (in.hasRemaining() && !awaiting && !closing
+                        && (out == null || out.remaining() >= RESPONSE_RESERVE)) {
+                    if (!serveOne()) {
+                        break;
+                    }
+                    if (++served > 1) {
+                        PIPELINED.increment();
+                    }
+                }
+            } finally {
+                in.compact();
+            }
+            if (in.position() == 0) {
+                loop.release(in);
+                in = null;
+            }
+        }
+
+        /**
+         * Parses and answers the request at the input position, or waits for the rest of it.
+         *
+         * @return true if the request was consumed, false if more bytes are needed or the connection is closing
+         */
+        private boolean serveOne() {
+            int start = in.position();
+            int limit = in.limit();
+            int headEnd = -1;
+            for (int i = Math.max(start + 3, start + scanned); i < limit; i++) {
+                if (in.get(i) == '\n' && in.get(i - 1) == '\r' && in.get(i - 2) == '\n' && in.get(i - 3) == '\r') {
+                    headEnd = i + 1;
+                    break;
+                }
+            }
+            if (headEnd < 0) {
+                scanned = limit - start;
+                if (limit - start == in.capacity()) {
+                    fail(new WebServiceRecv.OrderResponse(431, "Request head is larger than " + bufferBytes + " bytes."));
+                }
+                return false;
+            }
+            scanned = headEnd - 1 - start;
+
+            int headLength = headEnd - start;
+            in.get(start, loop.head, 0, headLength);
+            byte[] head = loop.head;
+
+            // Request line: method, target and version separated by single spaces
+            int lineEnd = indexOf(head, 0, headLength, (byte) '\r');
+            int methodEnd = indexOf(head, 0, lineEnd, (byte) ' ');
+            int targetEnd = methodEnd < 0 ? -1 : indexOf(head, methodEnd + 1, lineEnd, (byte) ' ');
+            if (methodEnd <= 0 || targetEnd < 0) {
+                fail(BAD_REQUEST);
+                return false;
+            }
+            String method = isPost(head, methodEnd) ? "POST" : new String(head, 0, methodEnd, StandardCharsets.US_ASCII);
+            boolean http10 = bytesEqual(head, targetEnd + 1, lineEnd, HTTP_10);
+            boolean orders = isPizzaPath(head, methodEnd + 1, targetEnd);
+            if (!parseHeaders(head, lineEnd + 2, headLength - 2)) {
+                fail(BAD_REQUEST);
+                return false;
+            }
+
+            if (values[TRANSFER_ENCODING] != null && !"identity".equalsIgnoreCase(values[TRANSFER_ENCODING])) {
+                fail(LENGTH_REQUIRED);
+                return false;
+            }
+            int contentLength;
+            try {
+                contentLength = values[CONTENT_LENGTH] == null ? 0 : Integer.parseInt(values[CONTENT_LENGTH]);
+            } catch (NumberFormatException e) {
+                contentLength = -1;
+            }
+            if (contentLength < 0) {
+                fail(BAD_REQUEST);
+                return false;
+            }
+            if (headLength + contentLength > in.capacity()) {
+                fail(tooLarge);
+                return false;
+            }
+            if (limit - headEnd < contentLength) {
+                // A client waiting for 100 Continue sends its body once told to
+                if (!continued && "100-continue".equalsIgnoreCase(values[EXPECT])) {
+                    continued = true;
+                    write(CONTINUE);
+                }
+                return false;
+            }
+            String connection = values[CONNECTION];
+            boolean keepAlive = http10 ? "keep-alive".equalsIgnoreCase(connection) : !"close".equalsIgnoreCase(connection);
+            ByteBuffer body = in.duplicate().position(headEnd).limit(headEnd + contentLength);
+            in.position(headEnd + contentLength);
+            scanned = 0;
+            continued = false;
+
+            if (!orders) {
+                BAD_REQUESTS.increment();
+                respond(NOT_FOUND, keepAlive);
+            } else if (waiters == null) {
+                respond(WebServiceRecv.handleOrder(method, this, body, remote), keepAlive);
+            } else {
+                // The buffer moves on, so the body is copied; the headers stay put, no request is parsed meanwhile
+                ByteBuffer copy = ByteBuffer.allocate(contentLength).put(body).flip();
+                awaiting = true;
+                waiters.execute(() -> {
+                    WebServiceRecv.OrderResponse response = WebServiceRecv.handleOrder(method, this, copy, remote);
+                    loop.execute(() -> resume(response, keepAlive));
+                });
+            }
+            return true;
+        }
+
+        /**
+         * Reads the header lines of a head into values, keeping the HEADERS and skipping the rest.
+         *
+         * @param head  The head bytes
+         * @param from  The start of the first header line
+         * @param to    The end of the last header line, before the blank line
+         * @return false if a header line has no colon
+         */
+        private boolean parseHeaders(byte[] head, int from, int to) {
+            Arrays.fill(values, null);
+            int line = from;
+            while (line < to) {
+                int end = indexOf(head, line, to, (byte) '\r');
+                if (end < 0) {
+                    end = to;
+                }
+                int colon = indexOf(head, line, end, (byte) ':');
+                if (colon <= line) {
+                    return false;
+                }
+                int header = find(head, line, colon);
+                if (header >= 0 && values[header] == null) {
+                    int valueStart = colon + 1;
+                    int valueEnd = end;
+                    while (valueStart < valueEnd && (head[valueStart] == ' ' || head[valueStart] == '\t')) {
+                        valueStart++;
+                    }
+                    while (valueEnd > valueStart && (head[valueEnd - 1] == ' ' || head[valueEnd - 1] == '\t')) {
+                        valueEnd--;
+                    }
+                    values[header] = new String(head, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+                }
+                line = end + 2;
+            }
+            return true;
+        }
+
+        /**
+         * Sends the answer of an order handled on a waiting thread and goes on with the next request.
+         *
+         * @param response  The answer
+         * @param keepAlive Whether the connection stays open after it
+         */
+        private void resume(WebServiceRecv.OrderResponse response, boolean keepAlive) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            awaiting = false;
+            respond(response, keepAlive);
+            serve();
+            try {
+                flush();
+            } catch (IOException e) {
+                LOG.debug("Connection {} failed: {}", remote, e.toString());
+                close();
+            }
+        }
+
+        /**
+         * Answers a request that cannot be parsed or served, then closes the connection.
+         *
+         * @param response The answer
+         */
+        private void fail(WebServiceRecv.OrderResponse response) {
+            BAD_REQUESTS.increment();
+            respond(response, false);
+        }
+
+        /**
+         * Appends a response to the output.
+         *
+         * @param response  The answer
+         * @param keepAlive false to close the connection once it is sent
+         */
+        private void respond(WebServiceRecv.OrderResponse response, boolean keepAlive) {
+            write(STATUS_LINES[response.status]);
+            write(loop.dateHeader());
+            write(CONTENT_LENGTH_HEADER);
+            writeDecimal(response.body.length);
+            write(CRLF);
+            if (!keepAlive) {
+                write(CONNECTION_CLOSE);
+                closing = true;
+            }
+            write(CRLF);
+            write(response.body);
+        }
+
+        /**
+         * Appends bytes to the output, taking a buffer when there is none. Parsing keeps RESPONSE_RESERVE free,
+         * so a response always fits.
+         *
+         * @param bytes The bytes
+         */
+        private void write(byte[] bytes) {
+            if (out == null) {
+                out = loop.take();
+            }
+            out.put(bytes);
+        }
+
+        /**
+         * Appends a non-negative number in decimal ASCII to the output.
+         *
+         * @param value The number
+         */
+        private void writeDecimal(int value) {
+            int digits = 1;
+            for (int rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            int end = out.position() + digits;
+            for (int i = end - 1; i >= out.position(); i--) {
+                out.put(i, (byte) ('0' + value % 10));
+                value /= 10;
+            }
+            out.position(end);
+        }
+
+        /**
+         * Writes as much output as the socket takes and sets the interest ops: read while requests may be
+         * served, write while output is pending.
+         *
+         * @throws IOException If the write fails
+         */
+        private void flush() throws IOException {
+            if (out != null) {
+                out.flip();
+                channel.write(out);
+                if (out.hasRemaining()) {
+                    out.compact();
+                } else {
+                    loop.release(out);
+                    out = null;
+                }
+            }
+            if (out == null && closing) {
+                close();
+                return;
+            }
+            if (!channel.isOpen()) {
+                return;
+            }
+            boolean reading = !awaiting && !closing && (in == null || in.hasRemaining())
+                    && (out == null || out.remaining() >= RESPONSE_RESERVE);
+            int ops = (reading ? SelectionKey.OP_READ : 0) | (out != null ? SelectionKey.OP_WRITE : 0);
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+
+        /**
+         * Closes the connection and returns its buffers to the pool.
+         */
+        private void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close connection {}: {}", remote, e.toString());
+            }
+            if (in != null) {
+                loop.release(in);
+                in = null;
+            }
+            if (out != null) {
+                loop.release(out);
+                out = null;
+            }
+            open.decrement();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isPost(byte[] head, int methodEnd) {
+        return methodEnd == 4 && head[0] == 'P' && head[1] == 'O' && head[2] == 'S' && head[3] == 'T';
+    }
+
+    /**
+     * Checks whether a request target is /pizza, ignoring a query string.
+     */
+    private static boolean isPizzaPath(byte[] head, int from, int to) {
+        int pathEnd = indexOf(head, from, to, (byte) '?');
+        if (pathEnd < 0) {
+            pathEnd = to;
+        }
+        return bytesEqual(head, from, pathEnd, PATH);
+    }
+
+    private static boolean bytesEqual(byte[] bytes, int from, int to, byte[] expected) {
+        return Arrays.equals(bytes, from, to, expected, 0, expected.length);
+    }
+
+    /**
+     * Finds a header name among HEADERS, ignoring ASCII case.
+     *
+     * @return The index in HEADERS, or -1 for a header that is not parsed
+     */
+    private static int find(byte[] head, int from, int to) {
+        int length = to - from;
+        for (int h = 0; h < HEADERS.length; h++) {
+            String name = HEADERS[h];
+            if (name.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && (head[from + i] | 0x20) == name.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return h;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,729 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: RabbitMQ Batched Publisher
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 11 complete confirm futures after the counters and the window are updated
+ */
+package main;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PizzaPublisher is a reusable, long-lived publisher for pizzaQueue.
+ * Keeps one connection open, spreads publishes over a pool of confirm-enabled channels,
+ * groups messages into batches and tracks publisher confirms asynchronously.
+ * At most maxOutstanding messages may be waiting for a broker confirm at any time;
+ * publish() blocks once that window is full.
+ * publishConfirmed() returns a future per message that completes when the broker confirms it. With a linger
+ * time, a batch that is not full is published at most that long after its first message, so callers waiting
+ * on single messages still share batches without waiting for a full one.
+ * publishRouted() and publishRoutedConfirmed() send to an exchange with a routing key. Routed messages are batched per channel: a routing key
+ * always uses the same channel, and its batches are published in order, so the messages of one key reach
+ * their queue in the order they were published.
+ * A pooled channel closed by the broker (for example after a channel error) is replaced by a new channel
+ * on the same connection the next time it is used; the messages it had not confirmed are failed.
+ */
+public class PizzaPublisher implements AutoCloseable {
+
+    /** Time from handing a message to the broker until its confirm arrives, over every publisher */
+    static final LatencyHistogram CONFIRM_TIME = Metrics.histogram("pizza_amqp_confirm_seconds", "Time from publish until the broker confirms the message");
+
+    /** Process-wide totals for /metrics, the per-publisher counts stay in the fields below */
+    private static final LongAdder PUBLISHED_TOTAL = Metrics.counter("pizza_amqp_published_total", "Messages handed to the broker");
+    private static final LongAdder NACKED_TOTAL = Metrics.counter("pizza_amqp_nacked_total", "Messages nacked by the broker or lost with their channel");
+    private static final LongAdder REOPENED_TOTAL = Metrics.counter("pizza_amqp_channels_reopened_total", "Pooled channels replaced after the broker closed them");
+
+    /** The single connection shared by every pooled channel */
+    private final Connection connection;
+
+    /** The queue the orders are routed to through the default exchange */
+    private final String queueName;
+
+    /** Idle channels ready to publish a batch */
+    private final BlockingQueue<ConfirmChannel> channels;
+
+    /** Number of messages collected before a batch is published */
+    private final int batchSize;
+
+    /** Maximum number of published messages waiting for a confirm */
+    private final int maxOutstanding;
+
+    /** Permits for the outstanding confirm window */
+    private final Semaphore window;
+
+    /** Lock guarding the pending batch */
+    private final Object pendingLock = new Object();
+
+    /** Messages collected for the next batch */
+    private List<Message> pending;
+
+    /** Routed batches, one lane per pooled channel */
+    private final Lane[] lanes;
+
+    /** Publishes batches that are not full after the linger time, null when batches only go out full */
+    private final ScheduledExecutorService lingerFlusher;
+
+    /** How long the first message of a batch may wait for the rest, in microseconds */
+    private final long lingerMicros;
+
+    /** Number of messages handed to the broker */
+    private final LongAdder published = new LongAdder();
+
+    /** Number of messages confirmed (ack) by the broker */
+    private final LongAdder confirmed = new LongAdder();
+
+    /** Number of messages rejected (nack) by the broker or lost with their channel */
+    private final LongAdder nacked = new LongAdder();
+
+    /** Sum of the publish to confirm times of the confirmed messages, in nanoseconds */
+    private final LongAdder confirmNanos = new LongAdder();
+
+    /**
+     * Constructs a PizzaPublisher and opens its connection and channel pool.
+     *
+     * @param factory        The factory used to open the single connection
+     * @param queueName      The queue the orders are sent to
+     * @param channelCount   The number of pooled channels
+     * @param batchSize      The number of messages per published batch
+     * @param maxOutstanding The maximum number of unconfirmed messages
+     * @throws IOException      If the connection or a channel cannot be opened
+     * @throws TimeoutException If the connection times out
+     */
+    public PizzaPublisher(ConnectionFactory factory, String queueName, int channelCount,
+                          int batchSize, int maxOutstanding) throws IOException, TimeoutException {
+        this(factory, queueName, channelCount, batchSize, maxOutstanding, 0);
+    }
+
+    /**
+     * Constructs a PizzaPublisher whose batches are published once full or after a linger time.
+     *
+     * @param factory        The factory used to open the single connection
+     * @param queueName      The queue the orders are sent to, or null to only publish routed messages
+     * @param channelCount   The number of pooled channels
+     * @param batchSize      The number of messages per published batch
+     * @param maxOutstanding The maximum number of unconfirmed messages
+     * @param lingerMicros   How long a batch may wait to fill up, 0 to publish batches only when full or flushed
+     * @throws IOException      If the connection or a channel cannot be opened
+     * @throws TimeoutException If the connection times out
+     */
+    public PizzaPublisher(ConnectionFactory factory, String queueName, int channelCount,
+                          int batchSize, int maxOutstanding, long lingerMicros) throws IOException, TimeoutException {
+        if (channelCount < 1 || batchSize < 1 || maxOutstanding < batchSize || lingerMicros < 0) {
+            throw new IllegalArgumentException("channelCount and batchSize must be positive and maxOutstanding >= batchSize");
+        }
+        this.lingerMicros = lingerMicros;
+        this.lingerFlusher = lingerMicros == 0 ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pizza-publisher-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queueName = queueName;
+        this.batchSize = batchSize;
+        this.maxOutstanding = maxOutstanding;
+        this.window = new Semaphore(maxOutstanding);
+        this.pending = new ArrayList<>(batchSize);
+        this.channels = new ArrayBlockingQueue<>(channelCount);
+        this.connection = factory.newConnection();
+
+        // Open the channel pool, each channel in confirm mode; each routing lane starts on one of them
+        List<ConfirmChannel> opened = new ArrayList<>(channelCount);
+        for (int i = 0; i < channelCount; i++) {
+            ConfirmChannel confirmChannel = new ConfirmChannel(connection.createChannel());
+            if (i == 0 && queueName != null) {
+                // Declare the queue once, the same way Send does
+                confirmChannel.channel.queueDeclare(queueName, false, false, false, null);
+            }
+            opened.add(confirmChannel);
+            channels.add(confirmChannel);
+        }
+        this.lanes = new Lane[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            lanes[i] = new Lane(opened.get(i));
+        }
+    }
+
+    /**
+     * Serializes a Pizza to JSON with the shared PizzaCodec and adds it to the current batch.
+     *
+     * @param pizza The Pizza order to publish
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    public void publish(Pizza pizza) throws IOException, InterruptedException {
+        publish(pizza, PizzaFormat.JSON);
+    }
+
+    /**
+     * Serializes a Pizza in the given format and adds it to the current batch.
+     * The format is carried in the content_type property.
+     *
+     * @param pizza  The Pizza order to publish
+     * @param format The wire format
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    public void publish(Pizza pizza, PizzaFormat format) throws IOException, InterruptedException {
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .contentType(format.getContentType())
+                .build();
+        publish(props, format.encode(pizza));
+    }
+
+    /**
+     * Adds a message to the current batch and publishes the batch once it is full.
+     *
+     * @param props The AMQP properties of the message, may be null
+     * @param body  The message body
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    public void publish(AMQP.BasicProperties props, byte[] body) throws IOException, InterruptedException {
+        add(new Message("", queueName, props, body, null));
+    }
+
+    /**
+     * Adds a message to the current batch and returns a future for its confirm.
+     *
+     * @param props The AMQP properties of the message, may be null
+     * @param body  The message body
+     * @return A future completed when the broker confirms the message, failed when it is nacked or lost
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    public CompletableFuture<Void> publishConfirmed(AMQP.BasicProperties props, byte[] body)
+            throws IOException, InterruptedException {
+        CompletableFuture<Void> confirm = new CompletableFuture<>();
+        add(new Message("", queueName, props, body, confirm));
+        return confirm;
+    }
+
+    /**
+     * Adds a message for an exchange and routing key to the batch of its lane and publishes the batch
+     * once it is full. Messages with the same routing key are published in order on one channel.
+     *
+     * @param exchange   The exchange to publish to
+     * @param routingKey The routing key, which also picks the lane
+     * @param props      The AMQP properties of the message, may be null
+     * @param body       The message body
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    public void publishRouted(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException, InterruptedException {
+        route(new Message(exchange, routingKey, props, body, null));
+    }
+
+    /**
+     * Adds a message for an exchange and routing key to the batch of its lane and returns a future for its confirm.
+     *
+     * @param exchange   The exchange to publish to
+     * @param routingKey The routing key, which also picks the lane
+     * @param props      The AMQP properties of the message, may be null
+     * @param body       The message body
+     * @return A future completed when the broker confirms the message, failed when it is nacked or lost
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    public CompletableFuture<Void> publishRoutedConfirmed(String exchange, String routingKey, AMQP.BasicProperties props,
+                                                          byte[] body) throws IOException, InterruptedException {
+        CompletableFuture<Void> confirm = new CompletableFuture<>();
+        route(new Message(exchange, routingKey, props, body, confirm));
+        return confirm;
+    }
+
+    /**
+     * Adds a routed message to the batch of its lane, publishes the batch once it is full
+     * and schedules the linger flush for the first message of a batch.
+     *
+     * @param message The message
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    private void route(Message message) throws IOException, InterruptedException {
+        Lane lane = lanes[Math.floorMod(message.routingKey.hashCode(), lanes.length)];
+        boolean first;
+        synchronized (lane) {
+            lane.pending.add(message);
+            first = lane.pending.size() == 1;
+            if (lane.pending.size() >= batchSize) {
+                // Published under the lane lock, so a later batch of the lane can never overtake this one
+                lane.flush();
+                return;
+            }
+        }
+        if (first && lingerFlusher != null) {
+            lingerFlusher.schedule(this::flushLingering, lingerMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Adds a message to the current batch, publishes the batch once it is full
+     * and schedules the linger flush for the first message of a batch.
+     *
+     * @param message The message
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    private void add(Message message) throws IOException, InterruptedException {
+        if (queueName == null) {
+            throw new IllegalStateException("This publisher has no queue, use publishRouted");
+        }
+        List<Message> batch = null;
+        boolean first;
+        synchronized (pendingLock) {
+            pending.add(message);
+            first = pending.size() == 1;
+            if (pending.size() >= batchSize) {
+                batch = pending;
+                pending = new ArrayList<>(batchSize);
+            }
+        }
+        if (first && batch == null && lingerFlusher != null) {
+            // May flush a later batch early if this one fills up first, which only makes it smaller
+            lingerFlusher.schedule(this::flushLingering, lingerMicros, TimeUnit.MICROSECONDS);
+        }
+        // Publish outside the lock so other threads can keep filling the next batch
+        if (batch != null) {
+            publishBatch(batch);
+        }
+    }
+
+    /**
+     * Publishes the current batch from the linger flusher, failing its futures if that does not work.
+     */
+    private void flushLingering() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // publishBatch already failed the futures of the messages it could not send
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publishes whatever is left in the current batch.
+     *
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    public void flush() throws IOException, InterruptedException {
+        for (Lane lane : lanes) {
+            synchronized (lane) {
+                lane.flush();
+            }
+        }
+        List<Message> batch;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>(batchSize);
+        }
+        publishBatch(batch);
+    }
+
+    /**
+     * Flushes the current batch and waits until every outstanding message is confirmed.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     * @return true if everything was confirmed (or nacked) in time, false on timeout
+     * @throws IOException          If the last batch cannot be published
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitConfirms(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        flush();
+        // The window is fully released only when nothing is outstanding
+        if (window.tryAcquire(maxOutstanding, timeout, unit)) {
+            window.release(maxOutstanding);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Publishes one batch on a single pooled channel.
+     *
+     * @param batch The messages to publish
+     * @throws IOException          If publishing fails
+     * @throws InterruptedException If interrupted while waiting for the window or a channel
+     */
+    private void publishBatch(List<Message> batch) throws IOException, InterruptedException {
+        // Reserve room in the confirm window before anything goes on the wire
+        window.acquire(batch.size());
+        ConfirmChannel confirmChannel = channels.take();
+        try {
+            confirmChannel = reopen(confirmChannel);
+        } catch (IOException e) {
+            channels.put(confirmChannel);
+            fail(batch, e);
+            throw e;
+        }
+        try {
+            publishOn(confirmChannel, batch);
+        } finally {
+            channels.put(confirmChannel);
+        }
+    }
+
+    /**
+     * Replaces a pooled channel the broker has closed with a new channel on the same connection.
+     * The shutdown listener of the closed channel has already failed the messages it had not confirmed.
+     *
+     * @param confirmChannel The pooled channel
+     * @return The channel itself while it is open, otherwise its replacement
+     * @throws IOException If the connection is closed or no new channel can be opened
+     */
+    private ConfirmChannel reopen(ConfirmChannel confirmChannel) throws IOException {
+        if (confirmChannel.channel.isOpen()) {
+            return confirmChannel;
+        }
+        if (!connection.isOpen()) {
+            throw new IOException("Connection is closed", connection.getCloseReason());
+        }
+        Channel channel = connection.createChannel();
+        if (channel == null) {
+            throw new IOException("No channel number left to replace a closed channel");
+        }
+        REOPENED_TOTAL.increment();
+        return new ConfirmChannel(channel);
+    }
+
+    /**
+     * Gives back the window permits of messages that never reached the broker and fails their futures.
+     *
+     * @param messages The messages that were not published
+     * @param cause    Why they were not published
+     */
+    private void fail(List<Message> messages, IOException cause) {
+        window.release(messages.size());
+        for (Message message : messages) {
+            if (message.confirm != null) {
+                message.confirm.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Publishes a batch on a channel whose window permits are already held.
+     * Lanes publish on pooled channels too, so the channel is locked while the batch goes out.
+     *
+     * @param confirmChannel The channel to publish on
+     * @param batch          The messages to publish
+     * @throws IOException If publishing fails
+     */
+    private void publishOn(ConfirmChannel confirmChannel, List<Message> batch) throws IOException {
+        int sent = 0;
+        int settled = 0;
+        IOException failure = null;
+        try {
+            synchronized (confirmChannel) {
+                for (Message message : batch) {
+                    long seqNo = confirmChannel.channel.getNextPublishSeqNo();
+                    confirmChannel.outstanding.put(seqNo, new Unconfirmed(System.nanoTime(), message.confirm));
+                    try {
+                        confirmChannel.channel.basicPublish(message.exchange, message.routingKey, message.props, message.body);
+                    } catch (IOException | AlreadyClosedException e) {
+                        // Never reached the broker. If the shutdown listener got to it first, it is already settled
+                        if (confirmChannel.outstanding.remove(seqNo) == null) {
+                            settled = 1;
+                        }
+                        failure = e instanceof IOException ? (IOException) e : new IOException("Channel is closed", e);
+                        throw failure;
+                    }
+                    sent++;
+                }
+            }
+        } finally {
+            published.add(sent);
+            PUBLISHED_TOTAL.add(sent);
+            // Give back the permits of messages that never reached the broker and fail their futures
+            if (sent + settled < batch.size()) {
+                fail(batch.subList(sent + settled, batch.size()),
+                        failure != null ? failure : new IOException("Batch was not published"));
+            }
+        }
+    }
+
+    /**
+     * Gets the number of messages handed to the broker.
+     *
+     * @return The published message count
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * Gets the number of messages confirmed by the broker.
+     *
+     * @return The confirmed message count
+     */
+    public long getConfirmed() {
+        return confirmed.sum();
+    }
+
+    /**
+     * Gets the number of messages nacked by the broker or lost with a closed channel.
+     *
+     * @return The nacked message count
+     */
+    public long getNacked() {
+        return nacked.sum();
+    }
+
+    /**
+     * Gets the number of messages currently waiting for a confirm.
+     *
+     * @return The outstanding message count
+     */
+    public int getOutstanding() {
+        return maxOutstanding - window.availablePermits();
+    }
+
+    /**
+     * Gets the size of the confirm window.
+     *
+     * @return The maximum number of unconfirmed messages
+     */
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    /**
+     * Gets the total time the confirmed messages waited for their confirm. Divided by the change in
+     * getConfirmed() over an interval, its change gives the mean confirm latency of that interval.
+     *
+     * @return The sum of the publish to confirm times, in nanoseconds
+     */
+    public long getConfirmNanos() {
+        return confirmNanos.sum();
+    }
+
+    /**
+     * Registers a listener for connection.blocked and connection.unblocked, which the broker sends
+     * while a resource alarm stops it from accepting publishes.
+     *
+     * @param listener The listener
+     */
+    public void addBlockedListener(BlockedListener listener) {
+        connection.addBlockedListener(listener);
+    }
+
+    /**
+     * Flushes, waits up to 30 seconds for outstanding confirms and closes the connection,
+     * which closes every channel on it.
+     *
+     * @throws IOException If closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitConfirms(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (lingerFlusher != null) {
+                lingerFlusher.shutdownNow();
+            }
+            connection.close();
+        }
+    }
+
+    /**
+     * A message waiting in the current batch.
+     */
+    private static final class Message {
+        private final String exchange;
+        private final String routingKey;
+        private final AMQP.BasicProperties props;
+        private final byte[] body;
+        private final CompletableFuture<Void> confirm;
+
+        private Message(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body,
+                        CompletableFuture<Void> confirm) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+            this.confirm = confirm;
+        }
+    }
+
+    /**
+     * The routed messages of one pooled channel. The pending batch and its publishing are guarded by the lane's lock.
+     */
+    private final class Lane {
+        private ConfirmChannel confirmChannel;
+        private List<Message> pending = new ArrayList<>();
+
+        private Lane(ConfirmChannel confirmChannel) {
+            this.confirmChannel = confirmChannel;
+        }
+
+        /**
+         * Publishes the pending batch of this lane. Called with the lane's lock held.
+         *
+         * @throws IOException          If the batch cannot be published
+         * @throws InterruptedException If interrupted while waiting for the confirm window
+         */
+        private void flush() throws IOException, InterruptedException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Message> batch = pending;
+            pending = new ArrayList<>(batchSize);
+            window.acquire(batch.size());
+            try {
+                confirmChannel = reopen(confirmChannel);
+            } catch (IOException e) {
+                fail(batch, e);
+                throw e;
+            }
+            publishOn(confirmChannel, batch);
+        }
+    }
+
+    /**
+     * A published message waiting for its confirm.
+     */
+    private static final class Unconfirmed {
+        private final long publishedAt;
+        private final CompletableFuture<Void> confirm;
+
+        private Unconfirmed(long publishedAt, CompletableFuture<Void> confirm) {
+            this.publishedAt = publishedAt;
+            this.confirm = confirm;
+        }
+
+        /**
+         * Records the confirm latency.
+         *
+         * @param now The time the confirm arrived, from System.nanoTime()
+         * @param ack true for an ack, false for a nack
+         * @return The confirm latency in nanoseconds, 0 for a nack
+         */
+        private long record(long now, boolean ack) {
+            if (!ack) {
+                return 0;
+            }
+            long latency = now - publishedAt;
+            CONFIRM_TIME.record(latency);
+            return latency;
+        }
+
+        /**
+         * Completes the future, if there is one.
+         *
+         * @param ack true for an ack, false for a nack
+         */
+        private void complete(boolean ack) {
+            if (confirm != null) {
+                if (ack) {
+                    confirm.complete(null);
+                } else {
+                    confirm.completeExceptionally(new IOException("Message was nacked or its channel closed"));
+                }
+            }
+        }
+    }
+
+    /**
+     * A pooled channel in confirm mode with its own map of unconfirmed sequence numbers.
+     */
+    private final class ConfirmChannel implements ConfirmListener {
+
+        /** The underlying AMQP channel */
+        private final Channel channel;
+
+        /** Sequence numbers published on this channel and not yet confirmed, with their publish time and future */
+        private final ConcurrentNavigableMap<Long, Unconfirmed> outstanding = new ConcurrentSkipListMap<>();
+
+        private ConfirmChannel(Channel channel) throws IOException {
+            this.channel = channel;
+            channel.confirmSelect();
+            channel.addConfirmListener(this);
+            // A closed channel will never confirm its messages, so free their window slots
+            channel.addShutdownListener(cause -> settle(Long.MAX_VALUE, true, false));
+        }
+
+        @Override
+        public void handleAck(long deliveryTag, boolean multiple) {
+            settle(deliveryTag, multiple, true);
+        }
+
+        @Override
+        public void handleNack(long deliveryTag, boolean multiple) {
+            settle(deliveryTag, multiple, false);
+        }
+
+        /**
+         * Removes confirmed sequence numbers, releases their window permits and completes their futures.
+         * The futures complete last, so code run on completion sees the counters and the window already updated
+         * and may publish again without waiting for its own permit.
+         *
+         * @param deliveryTag The confirmed sequence number
+         * @param multiple    Whether every sequence number up to deliveryTag is confirmed
+         * @param ack         true for an ack, false for a nack
+         */
+        private void settle(long deliveryTag, boolean multiple, boolean ack) {
+            List<Unconfirmed> settled = new ArrayList<>();
+            long latency = 0;
+            long now = System.nanoTime();
+            if (multiple) {
+                // Remove one by one so a concurrent settle never counts the same tag twice
+                for (Long tag : outstanding.headMap(deliveryTag, true).keySet()) {
+                    Unconfirmed unconfirmed = outstanding.remove(tag);
+                    if (unconfirmed != null) {
+                        settled.add(unconfirmed);
+                        latency += unconfirmed.record(now, ack);
+                    }
+                }
+            } else {
+                Unconfirmed unconfirmed = outstanding.remove(deliveryTag);
+                if (unconfirmed != null) {
+                    settled.add(unconfirmed);
+                    latency = unconfirmed.record(now, ack);
+                }
+            }
+            int count = settled.size();
+            if (count > 0) {
+                (ack ? confirmed : nacked).add(count);
+                confirmNanos.add(latency);
+                if (!ack) {
+                    NACKED_TOTAL.add(count);
+                }
+                window.release(count);
+            }
+            for (Unconfirmed unconfirmed : settled) {
+                unconfirmed.complete(ack);
+            }
+        }
+    }
+}
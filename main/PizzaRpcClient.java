@@ -0,0 +1,238 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: RabbitMQ Request/Reply Client
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Delivery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PizzaRpcClient sends orders to pizzaQueue and waits for Recv's reply, the order as Recv updated it.
+ * Every request carries a correlation id and reply_to, and Recv publishes its reply there once the order is
+ * processed. Replies come back over RabbitMQ's direct reply-to pseudo-queue amq.rabbitmq.reply-to, so no
+ * queue is declared per request or even per client; brokers without direct reply-to can use one exclusive
+ * reply queue per client instead.
+ * <p>
+ * Many requests are in flight at once on the one channel. Their futures wait in a concurrent map keyed by
+ * correlation id until the reply arrives or the timeout fails them. With direct reply-to the request is
+ * published with the timeout as its expiration, RabbitMQ's per-message TTL, so Recv never processes an order
+ * its caller already gave up on; other brokers may read expiration differently (Qpid takes it as an absolute
+ * time), so it is left off with a reply queue. A reply for an unknown correlation id, one that arrived after
+ * its timeout, is dropped.
+ */
+public class PizzaRpcClient implements AutoCloseable {
+
+    /** RabbitMQ's pseudo-queue that routes replies straight back to the consuming channel */
+    public static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    /** Header of a reply naming why the request failed, the body is then empty */
+    public static final String ERROR_HEADER = "X-Pizza-Error";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PizzaRpcClient.class);
+
+    /** Request round trips and their failures, served on /metrics */
+    static final LatencyHistogram CALL_TIME = Metrics.histogram("pizza_rpc_call_seconds", "Time from sending a request until its reply arrives");
+    private static final LongAdder TIMEOUTS = Metrics.counter("pizza_rpc_timeouts_total", "Requests that got no reply in time");
+    private static final LongAdder LATE_REPLIES = Metrics.counter("pizza_rpc_late_replies_total", "Replies that arrived after their request timed out");
+
+    /** The connection of the channel */
+    private final Connection connection;
+
+    /** Publishes the requests and consumes the replies */
+    private final Channel channel;
+
+    /** The queue the requests are sent to when they are not routed over shards */
+    private final String queueName;
+
+    /** The shard topology the requests are routed over, null to send them to queueName */
+    private final PizzaShards shards;
+
+    /** Where Recv sends the replies */
+    private final String replyTo;
+
+    /** How long a request waits for its reply, in milliseconds */
+    private final long timeoutMillis;
+
+    /** The futures of the requests in flight, by correlation id */
+    private final Map<String, CompletableFuture<Pizza>> pending = new ConcurrentHashMap<>();
+
+    /** Prefix of this client's correlation ids, so replies meant for a previous client are not mistaken */
+    private final String idPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong()) + "-";
+
+    /** The sequence of this client's correlation ids */
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Constructs a PizzaRpcClient, opens its connection and starts consuming replies.
+     *
+     * @param factory       The factory used to open the connection
+     * @param queueName     The queue the requests are sent to
+     * @param shards        The shard topology the requests are routed over instead, may be null
+     * @param directReplyTo true to receive replies over amq.rabbitmq.reply-to, false to declare
+     *                      one exclusive reply queue for this client
+     * @param timeoutMillis How long a request waits for its reply
+     * @throws IOException      If the connection cannot be opened or the reply consumer started
+     * @throws TimeoutException If the connection times out
+     */
+    public PizzaRpcClient(ConnectionFactory factory, String queueName, PizzaShards shards, boolean directReplyTo,
+                          long timeoutMillis) throws IOException, TimeoutException {
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("timeoutMillis must be positive");
+        }
+        this.queueName = queueName;
+        this.shards = shards;
+        this.timeoutMillis = timeoutMillis;
+        this.connection = factory.newConnection();
+        this.channel = connection.createChannel();
+        if (shards == null) {
+            channel.queueDeclare(queueName, false, false, false, null);
+        } else {
+            shards.declare(channel);
+        }
+        // Direct reply-to must be consumed without acks, on the channel that publishes the requests,
+        // before the first request goes out
+        this.replyTo = directReplyTo ? DIRECT_REPLY_TO : channel.queueDeclare().getQueue();
+        channel.basicConsume(replyTo, true, (consumerTag, delivery) -> handleReply(delivery),
+                consumerTag -> failAll(new IOException("The reply consumer was cancelled")));
+        channel.addShutdownListener(cause -> failAll(cause));
+    }
+
+    /**
+     * Builds the client from the system properties pizza.rpc.directReplyTo (true) and
+     * pizza.rpc.timeoutMillis (5000); requests are routed over the shards when pizza.shards is set.
+     *
+     * @param factory   The factory used to open the connection
+     * @param queueName The queue the requests are sent to
+     * @return The client
+     * @throws IOException      If the connection cannot be opened or the reply consumer started
+     * @throws TimeoutException If the connection times out
+     */
+    public static PizzaRpcClient configured(ConnectionFactory factory, String queueName)
+            throws IOException, TimeoutException {
+        return new PizzaRpcClient(factory, queueName, PizzaShards.configured(queueName),
+                !"false".equalsIgnoreCase(System.getProperty("pizza.rpc.directReplyTo")),
+                Long.getLong("pizza.rpc.timeoutMillis", 5_000));
+    }
+
+    /**
+     * Sends an order and returns a future for Recv's reply.
+     *
+     * @param pizza  The order
+     * @param format The wire format of the request, Recv replies in the same format
+     * @return A future completed with the order as Recv updated it, failed if Recv could not process it,
+     *         with a TimeoutException if no reply arrived in time, or with an IOException if sending failed
+     */
+    public CompletableFuture<Pizza> call(Pizza pizza, PizzaFormat format) {
+        String correlationId = idPrefix + nextId.incrementAndGet();
+        long sentAt = Metrics.nowMicros();
+        long start = System.nanoTime();
+        CompletableFuture<Pizza> reply = new CompletableFuture<>();
+        pending.put(correlationId, reply);
+        reply.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((ignored, failure) -> {
+            pending.remove(correlationId);
+            if (failure instanceof TimeoutException) {
+                TIMEOUTS.increment();
+            } else if (failure == null) {
+                CALL_TIME.record(System.nanoTime() - start);
+            }
+        });
+
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .contentType(format.getContentType())
+                .correlationId(correlationId)
+                .replyTo(replyTo)
+                .expiration(DIRECT_REPLY_TO.equals(replyTo) ? Long.toString(timeoutMillis) : null)
+                .headers(Map.of(Metrics.SENT_AT_HEADER, sentAt))
+                .build();
+        try {
+            byte[] body = format.encode(pizza);
+            // Publishes from many callers share the channel, one frame sequence at a time
+            synchronized (channel) {
+                if (shards == null) {
+                    channel.basicPublish("", queueName, props, body);
+                } else {
+                    channel.basicPublish(PizzaShards.EXCHANGE, shards.routingKey(pizza), props, body);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+
+    /**
+     * Completes the future of a reply.
+     *
+     * @param delivery The reply
+     */
+    private void handleReply(Delivery delivery) {
+        AMQP.BasicProperties props = delivery.getProperties();
+        CompletableFuture<Pizza> reply = props.getCorrelationId() == null ? null : pending.remove(props.getCorrelationId());
+        if (reply == null) {
+            LATE_REPLIES.increment();
+            LOG.debug("Dropping reply for unknown or timed out request {}", props.getCorrelationId());
+            return;
+        }
+        Object error = props.getHeaders() == null ? null : props.getHeaders().get(ERROR_HEADER);
+        if (error != null) {
+            reply.completeExceptionally(new IOException("Recv rejected the order: " + error));
+            return;
+        }
+        try {
+            reply.complete(PizzaFormat.forContentType(props.getContentType()).decode(delivery.getBody()));
+        } catch (RuntimeException e) {
+            reply.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Fails every request in flight, when the channel or its reply consumer goes away.
+     *
+     * @param cause Why no more replies will arrive
+     */
+    private void failAll(Exception cause) {
+        for (CompletableFuture<Pizza> reply : pending.values()) {
+            reply.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for a reply.
+     *
+     * @return The in-flight request count
+     */
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    /**
+     * Closes the connection, which fails the requests still in flight.
+     *
+     * @throws IOException If closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+}
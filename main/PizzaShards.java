@@ -0,0 +1,205 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Sharded Queue Topology
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 validate pizza.shards.instance against pizza.shards.instances
+ */
+package main;
+
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PizzaShards spreads orders over K queues, pizzaQueue.0 to pizzaQueue.K-1, so consumers can scale past one queue.
+ * Each queue is bound to a direct exchange with its shard number as routing key. Send hashes the order key,
+ * the pizza name, to a shard with jump consistent hashing, so every order of a key lands on the same queue and
+ * keeps its order, and growing from K to K+1 shards only moves about 1/(K+1) of the keys.
+ * The hash runs in the sender, so the topology needs no broker plugin and works on any AMQP 0-9-1 broker,
+ * including the embedded one used by the benchmarks.
+ * <p>
+ * Each Recv claims a subset of the shards and consumes each claimed queue with one exclusive consumer.
+ * The broker refuses a second exclusive consumer, so two instances never split a shard and per-key order holds.
+ */
+public class PizzaShards {
+
+    /** The exchange the shard queues are bound to */
+    public static final String EXCHANGE = "pizza.shards";
+
+    /** The name of the unsharded queue, and the prefix of the shard queues */
+    private final String baseQueue;
+
+    /** The number of shards */
+    private final int count;
+
+    /**
+     * Constructs the topology of count shards of a queue.
+     *
+     * @param baseQueue The name of the unsharded queue, the shard queues are baseQueue.0 and up
+     * @param count     The number of shards
+     */
+    public PizzaShards(String baseQueue, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        this.baseQueue = baseQueue;
+        this.count = count;
+    }
+
+    /**
+     * Builds the topology from the system property pizza.shards, the number of shards.
+     *
+     * @param baseQueue The name of the unsharded queue
+     * @return The topology, or null when pizza.shards is not set, which keeps the single queue
+     */
+    public static PizzaShards configured(String baseQueue) {
+        Integer count = Integer.getInteger("pizza.shards");
+        return count == null || count < 1 ? null : new PizzaShards(baseQueue, count);
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return The shard count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the queue of a shard.
+     *
+     * @param shard The shard number
+     * @return The queue name
+     */
+    public String queueName(int shard) {
+        return baseQueue + "." + shard;
+    }
+
+    /**
+     * Gets the routing key of a shard, its number.
+     *
+     * @param shard The shard number
+     * @return The routing key
+     */
+    public String routingKey(int shard) {
+        return Integer.toString(shard);
+    }
+
+    /**
+     * Gets the routing key of an order from its key, the pizza name.
+     *
+     * @param pizza The order
+     * @return The routing key of its shard
+     */
+    public String routingKey(Pizza pizza) {
+        return routingKey(shardOf(pizza.getName()));
+    }
+
+    /**
+     * Finds the shard of an order key.
+     *
+     * @param key The order key, null goes to shard 0
+     * @return The shard number
+     */
+    public int shardOf(String key) {
+        return key == null ? 0 : jumpHash(mix(key.hashCode()), count);
+    }
+
+    /**
+     * Declares the exchange, the shard queues and their bindings. Declaring is idempotent,
+     * so both Send and Recv declare the topology on startup, the way both declare pizzaQueue.
+     *
+     * @param channel The channel to declare on
+     * @throws IOException If a declaration fails
+     */
+    public void declare(Channel channel) throws IOException {
+        channel.exchangeDeclare(EXCHANGE, BuiltinExchangeType.DIRECT, false);
+        for (int shard = 0; shard < count; shard++) {
+            channel.queueDeclare(queueName(shard), false, false, false, null);
+            channel.queueBind(queueName(shard), EXCHANGE, routingKey(shard));
+        }
+    }
+
+    /**
+     * Picks the shards this instance consumes from the system properties.
+     * pizza.shards.claim lists them explicitly, e.g. "0,2,5-7"; otherwise pizza.shards.instance and
+     * pizza.shards.instances (0 of 1 by default) claim every shard whose number modulo instances is instance.
+     *
+     * @return The queue names of the claimed shards
+     * @throws IllegalArgumentException If a claimed shard does not exist, or instance is not between 0 and instances - 1
+     */
+    public List<String> claimedQueues() {
+        List<String> queues = new ArrayList<>();
+        String claim = System.getProperty("pizza.shards.claim");
+        if (claim != null && !claim.isBlank()) {
+            for (String part : claim.split(",")) {
+                String[] range = part.trim().split("-");
+                int from = Integer.parseInt(range[0].trim());
+                int to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+                for (int shard = from; shard <= to; shard++) {
+                    if (shard < 0 || shard >= count) {
+                        throw new IllegalArgumentException("Shard " + shard + " is not between 0 and " + (count - 1));
+                    }
+                    queues.add(queueName(shard));
+                }
+            }
+            return queues;
+        }
+        int instances = Integer.getInteger("pizza.shards.instances", 1);
+        int instance = Integer.getInteger("pizza.shards.instance", 0);
+        // A wrong instance number would claim no shard at all and leave its queues without a consumer
+        if (instances < 1 || instance < 0 || instance >= instances) {
+            throw new IllegalArgumentException("pizza.shards.instance " + instance
+                    + " is not between 0 and pizza.shards.instances - 1 (" + (instances - 1) + ")");
+        }
+        for (int shard = 0; shard < count; shard++) {
+            if (shard % instances == instance) {
+                queues.add(queueName(shard));
+            }
+        }
+        return queues;
+    }
+
+    /**
+     * Spreads the bits of a 32-bit hash over 64 bits (the MurmurHash3 finalizer), so keys whose
+     * String hashes differ only slightly still pick independent shards.
+     *
+     * @param hash The String hash of the key
+     * @return The mixed hash
+     */
+    private static long mix(int hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Jump consistent hash (Lamping and Veach): maps a key to one of buckets buckets in O(log buckets)
+     * without a ring, and moves only the keys that must move when a bucket is added.
+     *
+     * @param key     The 64-bit key hash
+     * @param buckets The number of buckets
+     * @return The bucket, between 0 and buckets - 1
+     */
+    static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+}
@@ -4,93 +4,456 @@
  * Course: IST 242
  * Author: Xue Thao
  * Date Developed: March 18, 2025,
- * Last Date Changed: March 25, 2025,
- * Rev: 6
+ * Last Date Changed: October 17, 2026,
+ * Rev: 21 price and update orders through MenuPricer, shared with WebServiceRecv
  */
 
 package main;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.DeliverCallback;
-import com.google.gson.Gson;
+import com.rabbitmq.client.Delivery;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Recv {
 
     /** RabbitMQ will show pizzaQueue attached in Capture*/
     private final static String QUEUE_NAME = "pizzaQueue";
 
+    /** Logger for the consumer; per-order events carry the ORDER marker so logback.xml can sample them */
+    private static final Logger LOG = LoggerFactory.getLogger(Recv.class);
+    private static final Marker ORDER = MarkerFactory.getMarker("ORDER");
+
+    /** Live rollups of the received orders, served on /pizza/stats when pizza.metrics.port is set */
+    private static final OrderStats STATS = new OrderStats();
+
+    /** Write-ahead journal of received orders when pizza.journal.dir is set, null otherwise */
+    private static volatile OrderJournal journal;
+
+    /** Prices and validates the received orders, null when pizza.menu is false */
+    private static volatile MenuPricer pricer;
+
+    /** The price of the updated order when no menu prices it */
+    private static final double UPDATED_PRICE = 17.99;
+
+    /** Publishes replies to orders that carry reply_to, null until main opens it */
+    private static volatile Channel replyChannel;
+
+    /** Delivery counters and latency histograms, served on /metrics when pizza.metrics.port is set */
+    private static final LongAdder RECEIVED = Metrics.counter("pizza_amqp_received_total", "Orders delivered from pizzaQueue");
+    private static final LongAdder ERRORS = Metrics.counter("pizza_amqp_errors_total", "Deliveries that could not be processed and were rejected");
+    private static final LatencyHistogram PARSE_TIME = Metrics.histogram("pizza_amqp_parse_seconds", "Time to decode a delivery");
+    private static final LatencyHistogram HANDLE_TIME = Metrics.histogram("pizza_amqp_handle_seconds", "Time spent processing a delivery");
+    private static final LatencyHistogram END_TO_END = Metrics.histogram("pizza_amqp_end_to_end_seconds", "Time from the sender's X-Sent-At stamp until the order is processed, including time queued");
+    private static final LongAdder BATCHES = Metrics.counter("pizza_amqp_batches_total", "Delivery batches processed");
+    private static final LongAdder REPLIES = Metrics.counter("pizza_amqp_replies_total", "Replies sent to request/reply orders");
+
     /**
-     * Set Up the RabbitMQ connection and creates a channel.
+     * Set Up the RabbitMQ connection and a pool of consuming channels.
      * Listen for messages on the pizzaQueue.
-     * The RECV class getting from pizza order deserializes the JSON data to a main.Pizza object.
-     * Prints the output details to the console.
+     * The RECV class getting from pizza order deserializes the JSON (or binary) data to a main.Pizza object.
+     * Logs the order details through SLF4J.
+     * The pool is tuned with the system properties pizza.amqp.host, pizza.consumer.count,
+     * pizza.consumer.prefetch, pizza.consumer.ackBatch and pizza.consumer.virtual.
+     * Deliveries are processed in batches of pizza.consumer.batch (100, at most the prefetch) or whatever
+     * arrived within pizza.consumer.lingerMicros (2000) of the first, and each batch is decoded, journaled,
+     * counted and acknowledged together. pizza.consumer.batch=1 processes and acknowledges deliveries one by one.
+     * With pizza.shards set, the shard queues of PizzaShards are declared and this instance claims the shards
+     * picked by pizza.shards.claim or pizza.shards.instance and pizza.shards.instances, one exclusive consumer each.
+     * Set pizza.metrics.port to serve the delivery metrics on /metrics in Prometheus format
+     * and the order rollups on /pizza/stats as JSON.
+     * Set pizza.journal.dir to write every order to an OrderJournal before it is acknowledged;
+     * the journal is replayed into the rollups on startup.
+     * Orders sent by a PizzaRpcClient carry reply_to and a correlation id; they are answered with the updated
+     * order once processed, or with an error header when they cannot be processed.
+     * Every order is priced from the MenuPricer menu before it is journaled, replacing the price it was sent with;
+     * orders with a size or topping that is not on the menu are rejected. Set pizza.menu.file to price from a menu
+     * file that is reloaded when it changes, or pizza.menu=false to keep the prices as sent.
      *
      * @param argv Command-line arguments (not used in this implementation)
      * @throws Exception If there is any issue during the connection, message consumption, or JSON deserialization
      */
     public static void main(String[] argv) throws Exception {
-        // Set up the RabbitMQ connection and channel
+        // Set up the RabbitMQ connection factory
         ConnectionFactory factory = new ConnectionFactory();
-        factory.setHost("localhost");
-        Connection connection = factory.newConnection();
-        Channel channel = connection.createChannel();
-
-        // Declare the queue that we are going to consume messages from
-        channel.queueDeclare(QUEUE_NAME, false, false, false, null);
-        System.out.println(" [*] Waiting for messages. To exit press CTRL+C");
-
-        // Set up the message consumer
-        DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            // Convert the message body to a string (UTF-8 encoding)
-            String message = new String(delivery.getBody(), "UTF-8");
-            System.out.println(" [x] Received Pizza Queue: '" + message + "'");
-
-            // Deserialize the JSON message to a Pizza object
-            Pizza pizza = deserializeJsonToPizza(message);
-
-            if (pizza != null) {
-                // Print the main.Pizza object details
-                System.out.println("Pizza Queue:");
-                System.out.println(" - Name: " + pizza.getName());
-                System.out.println(" - Size: " + pizza.getSize());
-                System.out.println(" - Price: $" + pizza.getPrice());
-                // Toppings printed once using Arrays.toString
-                System.out.println(" - Toppings: " + Arrays.toString(pizza.getToppings()));
-
-                // Update with Setter method to update Pizza object.
-                pizza.setName("Hawaiian");  // Setting the name
-                pizza.setSize("Large");     // Setting the size
-                pizza.setPrice(17.99);      // Setting the price
-                pizza.setToppings(new String[]{"Pineapple", "Bacon", "Ham"});  // Setting the toppings
-
-                // Print the updated Pizza object details
-                System.out.println("New Pizza Queue:");
-                System.out.println(" - Name: " + pizza.getName());
-                System.out.println(" - Size: " + pizza.getSize());
-                System.out.println(" - Price: $" + pizza.getPrice());
-                System.out.println(" - Toppings: " + Arrays.toString(pizza.getToppings()));
+        factory.setHost(System.getProperty("pizza.amqp.host", "localhost"));
+
+        // One channel and consumer per core by default, each with its own prefetch window
+        int consumers = Integer.getInteger("pizza.consumer.count", Runtime.getRuntime().availableProcessors());
+        int prefetch = Integer.getInteger("pizza.consumer.prefetch", 250);
+        int ackBatch = Integer.getInteger("pizza.consumer.ackBatch", 50);
+        boolean virtualThreads = Boolean.getBoolean("pizza.consumer.virtual");
+
+        // Rebuild the rollups before consuming, so replayed and new orders are not mixed up
+        journal = OrderJournal.configured();
+        if (journal != null) {
+            journal.replayInto(STATS);
+        }
+
+        pricer = MenuPricer.configured();
+
+        int batchSize = Math.min(Integer.getInteger("pizza.consumer.batch", 100), prefetch);
+        long lingerMicros = Long.getLong("pizza.consumer.lingerMicros", 2_000);
+        PizzaConsumerPool pool;
+        if (batchSize > 1) {
+            PizzaConsumerPool.BatchDeliveryHandler handler = Recv::handleBatch;
+            pool = new PizzaConsumerPool(factory, QUEUE_NAME, consumers, prefetch, batchSize, lingerMicros,
+                    virtualThreads, handler);
+        } else {
+            PizzaConsumerPool.AsyncDeliveryHandler handler = Recv::handleDelivery;
+            pool = new PizzaConsumerPool(factory, QUEUE_NAME, consumers, prefetch, ackBatch, virtualThreads, handler);
+        }
+        PizzaShards shards = PizzaShards.configured(QUEUE_NAME);
+        if (shards != null) {
+            // Declare the whole topology, then consume only the claimed shards
+            try (Connection connection = factory.newConnection();
+                 Channel channel = connection.createChannel()) {
+                shards.declare(channel);
+            }
+            List<String> claimed = shards.claimedQueues();
+            pool.claim(claimed);
+            LOG.info("Claimed {} of {} shards: {}", claimed.size(), shards.getCount(), claimed);
+        }
+        // Replies go out on their own connection, so they never wait behind the consumers' acks
+        Connection replyConnection = factory.newConnection();
+        openReplies(replyConnection);
+        pool.start();
+        HttpServer metricsServer = Metrics.startConfiguredServer();
+        if (metricsServer != null) {
+            metricsServer.createContext("/pizza/stats", STATS.handler());
+        }
+        LOG.info("Waiting for messages on {} with {} consumers (prefetch={}, batch={}, ackBatch={}). To exit press CTRL+C",
+                QUEUE_NAME, consumers, prefetch, batchSize, ackBatch);
+
+        // Acknowledge what was processed before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                pool.close();
+            } catch (Exception e) {
+                LOG.error("Failed to close the consumer pool", e);
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            if (pricer != null) {
+                pricer.close();
+            }
+            try {
+                replyConnection.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close the reply connection", e);
+            }
+        }));
+    }
 
+    /**
+     * Opens the channel replies are published on. Until it is open, orders asking for a reply get none.
+     *
+     * @param connection The connection to open the channel on
+     * @throws IOException If the channel cannot be opened
+     */
+    static void openReplies(Connection connection) throws IOException {
+        replyChannel = connection.createChannel();
+    }
+
+    /**
+     * Processes one pizza order delivery: deserializes it, journals it, logs it and updates it.
+     * Each order is logged as one event with its fields, so parallel consumers do not interleave their output.
+     * Records the delivery counters and the parse, handle and end-to-end latencies.
+     *
+     * @param delivery The delivery from pizzaQueue
+     * @return A stage completed once the order is durable and processed, the delivery may be acknowledged then
+     * @throws Exception If the message is not a valid encoded Pizza
+     */
+    static CompletionStage<Void> handleDelivery(Delivery delivery) throws Exception {
+        long start = System.nanoTime();
+        RECEIVED.increment();
+        CompletionStage<Void> done;
+        try {
+            done = processDelivery(delivery);
+        } catch (Exception e) {
+            ERRORS.increment();
+            replyFailure(delivery, e);
+            throw e;
+        } finally {
+            HANDLE_TIME.record(System.nanoTime() - start);
+        }
+        // Measured from the sender's clock, so it includes the time spent in the queue
+        Map<String, Object> headers = delivery.getProperties().getHeaders();
+        Object sentAt = headers == null ? null : headers.get(Metrics.SENT_AT_HEADER);
+        return done.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                ERRORS.increment();
+                replyFailure(delivery, failure);
             } else {
-                System.out.println("Failed to deserialize Pizza object.");
+                Metrics.recordSince(END_TO_END, sentAt);
             }
-        };
+        });
+    }
+
+    /**
+     * Processes a batch of deliveries from one channel: decodes each, journals the batch with one append,
+     * then counts, logs and updates the orders. The batch is logged as one summary event and each order
+     * only at DEBUG. A delivery that cannot be decoded or is not on the menu is logged, counted as an error
+     * and skipped, which ends the same way as rejecting it without requeueing. Every delivery that fails
+     * is counted as one error.
+     *
+     * @param batch The deliveries, in delivery order
+     * @return A stage completed once every order of the batch is durable and processed, failed if the batch
+     * cannot be journaled
+     */
+    static CompletionStage<Void> handleBatch(List<Delivery> batch) {
+        long start = System.nanoTime();
+        RECEIVED.add(batch.size());
+        BATCHES.increment();
+        OrderJournal current = journal;
+        List<PizzaFormat> formats = new ArrayList<>(batch.size());
+        List<byte[]> bodies = new ArrayList<>(batch.size());
+        List<Pizza> pizzas = new ArrayList<>(batch.size());
+        List<Delivery> accepted = new ArrayList<>(batch.size());
+        List<Object> sentAts = new ArrayList<>(batch.size());
+        for (Delivery delivery : batch) {
+            PizzaFormat format = PizzaFormat.forContentType(delivery.getProperties().getContentType());
+            long parseStart = System.nanoTime();
+            Pizza pizza;
+            try {
+                pizza = deserializePizza(delivery.getBody(), format);
+            } catch (RuntimeException e) {
+                ERRORS.increment();
+                LOG.warn(ORDER, "Skipping undecodable delivery deliveryTag={} error={}",
+                        delivery.getEnvelope().getDeliveryTag(), e.toString());
+                reply(delivery, null, null, e.toString());
+                continue;
+            } finally {
+                PARSE_TIME.record(System.nanoTime() - parseStart);
+            }
+            if (pizza == null) {
+                ERRORS.increment();
+                LOG.warn(ORDER, "Failed to deserialize Pizza object, deliveryTag={}", delivery.getEnvelope().getDeliveryTag());
+                reply(delivery, null, null, "not an order");
+                continue;
+            }
+            double sentPrice = pizza.getPrice();
+            String rejected = MenuPricer.priceOrder(pricer, pizza);
+            if (rejected != null) {
+                ERRORS.increment();
+                LOG.warn(ORDER, "Skipping order not on the menu deliveryTag={} reason={}",
+                        delivery.getEnvelope().getDeliveryTag(), rejected);
+                reply(delivery, null, null, rejected);
+                continue;
+            }
+            formats.add(format);
+            // The journal keeps the order at the menu price, so a replay counts what was charged
+            bodies.add(current == null || pizza.getPrice() == sentPrice ? delivery.getBody() : format.encode(pizza));
+            pizzas.add(pizza);
+            accepted.add(delivery);
+            Map<String, Object> headers = delivery.getProperties().getHeaders();
+            sentAts.add(headers == null ? null : headers.get(Metrics.SENT_AT_HEADER));
+        }
+
+        CompletionStage<Void> done;
+        try {
+            if (current == null) {
+                processOrders(accepted, formats, pizzas);
+                done = CompletableFuture.completedFuture(null);
+            } else {
+                // Write-ahead: one append and one sync wait for the whole batch
+                done = current.appendAll(formats, bodies).thenRun(() -> processOrders(accepted, formats, pizzas));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Settled below like a failed append, so the accepted orders are counted and answered once
+            done = CompletableFuture.failedFuture(e);
+        }
+        // The decode and hand-off cost is shared by the batch, record each delivery's share
+        long share = (System.nanoTime() - start) / batch.size();
+        for (int i = 0; i < batch.size(); i++) {
+            HANDLE_TIME.record(share);
+        }
+        return done.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                // The skipped deliveries were counted when they were skipped
+                ERRORS.add(accepted.size());
+                for (Delivery delivery : accepted) {
+                    replyFailure(delivery, failure);
+                }
+                return;
+            }
+            for (Object sentAt : sentAts) {
+                Metrics.recordSince(END_TO_END, sentAt);
+            }
+        });
+    }
+
+    /**
+     * Counts, logs and updates a batch of received orders, logging the batch as one event,
+     * and replies to the orders that ask for it.
+     *
+     * @param deliveries The delivery of each order
+     * @param formats    The wire format of each order
+     * @param pizzas     The orders as received
+     */
+    private static void processOrders(List<Delivery> deliveries, List<PizzaFormat> formats, List<Pizza> pizzas) {
+        double revenue = 0;
+        for (int i = 0; i < pizzas.size(); i++) {
+            Pizza pizza = pizzas.get(i);
+            STATS.record(pizza);
+            revenue += pizza.getPrice();
+            LOG.debug(ORDER, "Order received format={} name={} size={} price={} toppings={}",
+                    formats.get(i), pizza.getName(), pizza.getSize(), pizza.getPrice(), pizza.getToppings());
+
+            // Update with Setter method to update Pizza object.
+            MenuPricer.updateOrder(pricer, pizza, UPDATED_PRICE);
+            reply(deliveries.get(i), formats.get(i), pizza, null);
+        }
+        if (!pizzas.isEmpty()) {
+            LOG.info(ORDER, "Batch received orders={} revenue={}", pizzas.size(), String.format("%.2f", revenue));
+        }
+    }
+
+    /**
+     * Decodes, prices and journals one delivery, and logs and updates it once the journal has it on disk.
+     *
+     * @param delivery The delivery from pizzaQueue
+     * @return A stage completed once the order is processed
+     * @throws Exception If the message is not a valid encoded Pizza or cannot be journaled
+     */
+    private static CompletionStage<Void> processDelivery(Delivery delivery) throws Exception {
+        // Pick the decoder from the content_type property, JSON when it is missing
+        PizzaFormat format = PizzaFormat.forContentType(delivery.getProperties().getContentType());
+
+        // Deserialize the message body straight to a Pizza object
+        long parseStart = System.nanoTime();
+        Pizza pizza = deserializePizza(delivery.getBody(), format);
+        PARSE_TIME.record(System.nanoTime() - parseStart);
+
+        // The raw body is only turned into a String when DEBUG is on
+        if (LOG.isDebugEnabled(ORDER)) {
+            LOG.debug(ORDER, "Delivery bytes={} contentType={} body={}", delivery.getBody().length, format.getContentType(),
+                    format == PizzaFormat.JSON ? new String(delivery.getBody(), StandardCharsets.UTF_8) : "(binary)");
+        }
+        if (pizza == null) {
+            ERRORS.increment();
+            LOG.warn(ORDER, "Failed to deserialize Pizza object, deliveryTag={}", delivery.getEnvelope().getDeliveryTag());
+            reply(delivery, null, null, "not an order");
+            return CompletableFuture.completedFuture(null);
+        }
+        double sentPrice = pizza.getPrice();
+        String rejected = MenuPricer.priceOrder(pricer, pizza);
+        if (rejected != null) {
+            ERRORS.increment();
+            LOG.warn(ORDER, "Rejecting order not on the menu deliveryTag={} reason={}",
+                    delivery.getEnvelope().getDeliveryTag(), rejected);
+            reply(delivery, null, null, rejected);
+            return CompletableFuture.completedFuture(null);
+        }
+        OrderJournal current = journal;
+        if (current == null) {
+            processOrder(format, pizza);
+            reply(delivery, format, pizza, null);
+            return CompletableFuture.completedFuture(null);
+        }
+        // Write-ahead: the order is counted and handled only once the journal has it, on the journal's completion executor
+        byte[] body = pizza.getPrice() == sentPrice ? delivery.getBody() : format.encode(pizza);
+        return current.append(format, body).thenRun(() -> {
+            processOrder(format, pizza);
+            reply(delivery, format, pizza, null);
+        });
+    }
+
+    /**
+     * Answers an order sent with reply_to, with the updated order or with why it failed.
+     * Orders without reply_to, and every order while no reply channel is open, are left alone.
+     * A reply that cannot be sent is only logged, the order itself was processed.
+     *
+     * @param delivery The delivery of the order
+     * @param format   The wire format of the reply, the format of the order
+     * @param pizza    The updated order, null on failure
+     * @param error    Why the order failed, null on success
+     */
+    private static void reply(Delivery delivery, PizzaFormat format, Pizza pizza, String error) {
+        AMQP.BasicProperties request = delivery.getProperties();
+        Channel channel = replyChannel;
+        if (request.getReplyTo() == null || channel == null) {
+            return;
+        }
+        AMQP.BasicProperties.Builder props = new AMQP.BasicProperties.Builder()
+                .correlationId(request.getCorrelationId());
+        byte[] body;
+        if (error == null) {
+            props.contentType(format.getContentType());
+            body = format.encode(pizza);
+        } else {
+            props.headers(Map.of(PizzaRpcClient.ERROR_HEADER, error));
+            body = new byte[0];
+        }
+        try {
+            // The consumers share the reply channel, one publish at a time
+            synchronized (channel) {
+                channel.basicPublish("", request.getReplyTo(), props.build(), body);
+            }
+            REPLIES.increment();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn(ORDER, "Failed to reply to {} correlationId={} error={}",
+                    request.getReplyTo(), request.getCorrelationId(), e.toString());
+        }
+    }
+
+    /**
+     * Answers an order that failed with why, unless the consumer pool requeues it: a requeued order is answered
+     * once it is redelivered and processed.
+     *
+     * @param delivery The delivery of the order
+     * @param failure  Why it failed, possibly wrapped in a CompletionException
+     */
+    private static void replyFailure(Delivery delivery, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (!PizzaConsumerPool.requeue(cause)) {
+            reply(delivery, null, null, cause.toString());
+        }
+    }
+
+    /**
+     * Counts, logs and updates one received order.
+     *
+     * @param format The wire format of the order
+     * @param pizza  The order as received
+     */
+    private static void processOrder(PizzaFormat format, Pizza pizza) {
+        STATS.record(pizza);
+
+        // Log the main.Pizza object details
+        LOG.info(ORDER, "Order received format={} name={} size={} price={} toppings={}",
+                format, pizza.getName(), pizza.getSize(), pizza.getPrice(), pizza.getToppings());
 
-        // Start consuming the messages from the queue
-        channel.basicConsume(QUEUE_NAME, true, deliverCallback, consumerTag -> {});
+        // Update with Setter method to update Pizza object, the updated order is logged at DEBUG
+        MenuPricer.updateOrder(pricer, pizza, UPDATED_PRICE);
     }
 
     /**
-     * Deserializes a JSON string into a main.Pizza object using GSON library.
+     * Deserializes a message body into a main.Pizza object in the given wire format.
      *
-     * @param json The JSON string representation of a main.Pizza object
-     * @return A main.Pizza object or null if the deserialization fails
+     * @param body   The encoded main.Pizza object
+     * @param format The wire format named by the content_type property
+     * @return A main.Pizza object or null if a JSON message is empty or the JSON null
      */
-    private static Pizza deserializeJsonToPizza(String json) {
-        Gson gson = new Gson();
-        return gson.fromJson(json, Pizza.class);
+    private static Pizza deserializePizza(byte[] body, PizzaFormat format) {
+        return format.decode(body);
     }
-}
\ No newline at end of file
+}
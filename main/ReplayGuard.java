@@ -0,0 +1,246 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Replay Protection for Signed Requests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * ReplayGuard rejects signed requests that are stale or were seen before.
+ * Senders put an X-Timestamp (epoch milliseconds) and a random X-Nonce on every request and fold both into the
+ * HMAC, so neither can be changed without breaking the signature. A request is fresh while its timestamp is
+ * within the window of the receiver's clock, and each nonce is accepted once.
+ * <p>
+ * Nonces are remembered only as long as their timestamp is fresh. They are kept in generations one window
+ * wide, chosen by the request's own timestamp, in a ring of buckets replaced with compare-and-set once their
+ * window has passed; a fresh timestamp always falls in one of three live generations. Each generation is split
+ * into shards, each a concurrent set with its own size counter, so a check is one hash lookup and threads only
+ * meet when they hit the same shard. Memory is bounded: once a shard of a generation holds its share of
+ * maxNonces, new nonces in it are refused until the generation expires.
+ */
+public class ReplayGuard {
+
+    /** Header carrying the time the request was signed, in milliseconds since the epoch */
+    public static final String TIMESTAMP_HEADER = "X-Timestamp";
+
+    /** Header carrying the random, single-use request id */
+    public static final String NONCE_HEADER = "X-Nonce";
+
+    /** The outcome of a nonce check */
+    public enum Result {
+        /** First use of a fresh nonce */
+        ACCEPTED,
+        /** The timestamp is missing, malformed or outside the window */
+        STALE,
+        /** The nonce was already used */
+        REPLAYED,
+        /** The nonce cannot be remembered because its shard is full */
+        FULL
+    }
+
+    /** Generations live at once: the one before, of and after the current window */
+    private static final int LIVE_GENERATIONS = 3;
+
+    /** How far a timestamp may be from the receiver's clock, in milliseconds */
+    private final long windowMillis;
+
+    /** The number of nonces one shard of one generation may hold */
+    private final int shardCapacity;
+
+    /** The number of shards per generation, a power of two */
+    private final int shards;
+
+    /** One generation per window, indexed by the window number modulo the ring size */
+    private final AtomicReferenceArray<Generation> generations = new AtomicReferenceArray<>(LIVE_GENERATIONS + 1);
+
+    /** The clock, in milliseconds since the epoch */
+    private final LongSupplier clock;
+
+    /**
+     * Constructs a ReplayGuard.
+     *
+     * @param windowMillis How far a timestamp may be from the receiver's clock, in milliseconds
+     * @param maxNonces    The most nonces remembered at once
+     * @param shards       The number of shards per generation, rounded up to a power of two
+     * @param clock        The clock, in milliseconds since the epoch
+     */
+    ReplayGuard(long windowMillis, int maxNonces, int shards, LongSupplier clock) {
+        if (windowMillis < 1 || shards < 1 || maxNonces < shards * LIVE_GENERATIONS) {
+            throw new IllegalArgumentException("windowMillis and shards must be positive and maxNonces at least 3 per shard");
+        }
+        this.windowMillis = windowMillis;
+        int rounded = Integer.highestOneBit(shards);
+        this.shards = rounded < shards ? rounded << 1 : rounded;
+        this.shardCapacity = maxNonces / LIVE_GENERATIONS / this.shards;
+        this.clock = clock;
+    }
+
+    /**
+     * Builds the guard from the system properties pizza.replay.windowSeconds (300), pizza.replay.maxNonces
+     * (1000000) and pizza.replay.shards (64).
+     *
+     * @return The guard, or null when pizza.replay is false
+     */
+    public static ReplayGuard configured() {
+        if ("false".equalsIgnoreCase(System.getProperty("pizza.replay"))) {
+            return null;
+        }
+        return new ReplayGuard(TimeUnit.SECONDS.toMillis(Long.getLong("pizza.replay.windowSeconds", 300)),
+                Integer.getInteger("pizza.replay.maxNonces", 1_000_000),
+                Integer.getInteger("pizza.replay.shards", 64),
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Checks the headers before the body is read, so stale or unsigned requests cost nothing more.
+     *
+     * @param timestamp The X-Timestamp header, may be null
+     * @param nonce     The X-Nonce header, may be null
+     * @return true if the timestamp is fresh and the nonce well formed
+     */
+    public boolean isFresh(String timestamp, String nonce) {
+        return isFresh(parseTimestamp(timestamp), nonce);
+    }
+
+    private boolean isFresh(long millis, String nonce) {
+        return millis >= 0 && isValidNonce(nonce) && Math.abs(clock.getAsLong() - millis) <= windowMillis;
+    }
+
+    /**
+     * Records the first use of a nonce. Call it only once the HMAC over the timestamp and nonce is verified,
+     * so forged requests cannot fill the cache.
+     *
+     * @param timestamp The X-Timestamp header
+     * @param nonce     The X-Nonce header
+     * @return ACCEPTED the first time a fresh nonce is seen, otherwise why it is refused
+     */
+    public Result accept(String timestamp, String nonce) {
+        long millis = parseTimestamp(timestamp);
+        if (!isFresh(millis, nonce)) {
+            return Result.STALE;
+        }
+        Generation generation = generationOf(Math.floorDiv(millis, windowMillis));
+        if (generation == null) {
+            return Result.STALE;
+        }
+        // Spread the hash so nonces sharing low bits still use every shard
+        int hash = nonce.hashCode();
+        Shard shard = generation.shards[(hash ^ (hash >>> 16)) & (shards - 1)];
+        if (shard.nonces.contains(nonce)) {
+            return Result.REPLAYED;
+        }
+        // The size check and the add race, so a shard can go a few nonces over its capacity
+        if (shard.size.get() >= shardCapacity) {
+            return Result.FULL;
+        }
+        if (!shard.nonces.add(nonce)) {
+            return Result.REPLAYED;
+        }
+        shard.size.incrementAndGet();
+        return Result.ACCEPTED;
+    }
+
+    /**
+     * Gets the generation of a window, replacing the expired generation in its slot.
+     *
+     * @param index The window number, the timestamp divided by the window
+     * @return The generation, or null if the slot already holds a later window
+     */
+    private Generation generationOf(long index) {
+        int slot = (int) Math.floorMod(index, (long) generations.length());
+        Generation generation = generations.get(slot);
+        while (generation == null || generation.index < index) {
+            Generation fresh = new Generation(index, shards);
+            if (generations.compareAndSet(slot, generation, fresh)) {
+                return fresh;
+            }
+            generation = generations.get(slot);
+        }
+        // A later window in the slot means this timestamp expired while it was being checked
+        return generation.index == index ? generation : null;
+    }
+
+    /**
+     * Creates a nonce for a request: 128 random bits as 32 hex digits.
+     * Nonces only need to be unique, the HMAC is what makes them unforgeable.
+     *
+     * @return The nonce
+     */
+    public static String newNonce() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return String.format("%016x%016x", random.nextLong(), random.nextLong());
+    }
+
+    /**
+     * Parses an X-Timestamp header.
+     *
+     * @param timestamp The header value, may be null
+     * @return The milliseconds since the epoch, or -1 if missing or malformed
+     */
+    static long parseTimestamp(String timestamp) {
+        if (timestamp == null) {
+            return -1;
+        }
+        try {
+            long millis = Long.parseLong(timestamp.trim());
+            return millis >= 0 ? millis : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks that a nonce is 16 to 64 characters of letters, digits, '-' and '_'.
+     *
+     * @param nonce The header value, may be null
+     * @return true if the nonce is well formed
+     */
+    static boolean isValidNonce(String nonce) {
+        if (nonce == null || nonce.length() < 16 || nonce.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < nonce.length(); i++) {
+            char c = nonce.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The nonces of requests signed within one window.
+     */
+    private static final class Generation {
+        private final long index;
+        private final Shard[] shards;
+
+        private Generation(long index, int shardCount) {
+            this.index = index;
+            this.shards = new Shard[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new Shard();
+            }
+        }
+    }
+
+    /**
+     * One shard of a generation: a concurrent set and its size.
+     */
+    private static final class Shard {
+        private final Set<String> nonces = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+}
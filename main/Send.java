@@ -4,19 +4,39 @@
  * Course: IST 242
  * Author: Xue Thao
  * Date Developed: March 18, 2025,
- * Last Date Changed: March 25, 2025,
- * Rev: 6
+ * Last Date Changed: October 17, 2026,
+ * Rev: 16 route imported orders over the shard queues
  */
 package main;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.Channel;
-import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * RabbitMQSEND sends Pizza Orders as JSON messages to pizzaQueue.
  * Creates Pizza object, serializes it to JSON, and sends it to the pizzaQueue.
+ * Set the system property pizza.format=binary to send the compact binary format instead;
+ * the format is named in the content_type property.
+ * Run with "load [count]" to push many orders through a PizzaPublisher and report messages per second.
+ * Set pizza.shards to K to route each order to one of K shard queues by a hash of its pizza name instead,
+ * see PizzaShards.
+ * Run with "import file" to publish the orders of a JSON-lines export file, see OrderImporter.
+ * With pizza.flow=true both modes are paced by a FlowController, which backs off when the broker blocks the
+ * connection or its confirms fall behind.
+ * Run with "rpc [count]" to send orders through a PizzaRpcClient and wait for Recv to confirm each one.
  */
 public class Send {
     /**
@@ -24,43 +44,251 @@ public class Send {
      */
     private final static String QUEUE_NAME = "pizzaQueue";
 
+    private static final Logger LOG = LoggerFactory.getLogger(Send.class);
+
+    /**
+     * The pizza names cycled through in sharded load mode, so the orders spread over the shards.
+     */
+    private static final String[] LOAD_NAMES = {"Pepperoni", "Margherita", "Hawaiian", "Veggie",
+            "BBQ Chicken", "Meat Lovers", "Buffalo", "Supreme", "Four Cheese", "Mushroom"};
+
     /**
-     * Serializes a Pizza object into a JSON string using Gson.
+     * Serializes a Pizza object in the configured wire format (JSON by default).
      *
-     * @param pizza The Pizza object to be serialized.
-     * @return A JSON string representation of the Pizza object.
+     * @param pizza  The Pizza object to be serialized.
+     * @param format The wire format.
+     * @return The encoded bytes of the Pizza object.
      */
-    private static String serializePizzaToJson(Pizza pizza) {
-        Gson gson = new Gson();
-        return gson.toJson(pizza);
+    private static byte[] serializePizza(Pizza pizza, PizzaFormat format) {
+        return format.encode(pizza);
+    }
+
+    /**
+     * Builds the message properties naming the wire format and stamping the send time.
+     * The timestamp property only has second resolution, so the time is also sent in
+     * microseconds in the X-Sent-At header, which Recv uses for its end-to-end latency.
+     *
+     * @param format The wire format.
+     * @return The message properties with content_type, timestamp and X-Sent-At set.
+     */
+    private static AMQP.BasicProperties messageProperties(PizzaFormat format) {
+        long sentAt = Metrics.nowMicros();
+        return new AMQP.BasicProperties.Builder()
+                .contentType(format.getContentType())
+                .timestamp(new Date(TimeUnit.MICROSECONDS.toMillis(sentAt)))
+                .headers(Map.of(Metrics.SENT_AT_HEADER, sentAt))
+                .build();
     }
 
     /**
      * Main method that creates a Pizza object, serializes it to JSON, and sends it to pizzaQueue.
      *
-     * @param argv Command-line arguments (not used in this example).
+     * @param argv Command-line arguments, "load [count]" runs the load mode, "import file" the import mode
+     *             and "rpc [count]" the request/reply mode.
      * @throws Exception If an error occurs during the connection or messaging process.
      */
     public static void main(String[] argv) throws Exception {
+        if (argv.length > 0 && "load".equals(argv[0])) {
+            runLoad(argv.length > 1 ? Integer.parseInt(argv[1]) : 100_000);
+            return;
+        }
+        if (argv.length > 1 && "import".equals(argv[0])) {
+            runImport(Paths.get(argv[1]));
+            return;
+        }
+        if (argv.length > 0 && "rpc".equals(argv[0])) {
+            runRpc(argv.length > 1 ? Integer.parseInt(argv[1]) : 1);
+            return;
+        }
+
         // Create a Pizza Order
         Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
 
-        // Serialize the Pizza object to a JSON string
-        String message = serializePizzaToJson(pizza);
+        // Serialize the Pizza object in the configured format
+        PizzaFormat format = PizzaFormat.configured();
+        byte[] message = serializePizza(pizza, format);
 
         // Send the JSON string to RabbitMQ
         ConnectionFactory factory = new ConnectionFactory();
         factory.setHost("localhost");  // Set RabbitMQ server to localhost
+        PizzaShards shards = PizzaShards.configured(QUEUE_NAME);
         try (Connection connection = factory.newConnection();
              Channel channel = connection.createChannel()) {
-            // Declare a queue to send the message to
-            channel.queueDeclare(QUEUE_NAME, false, false, false, null);
+            if (shards == null) {
+                // Declare a queue to send the message to
+                channel.queueDeclare(QUEUE_NAME, false, false, false, null);
 
-            // Send the message (JSON string) to the queue
-            channel.basicPublish("", QUEUE_NAME, null, message.getBytes());
+                // Send the message to the queue, tagged with its content type
+                channel.basicPublish("", QUEUE_NAME, messageProperties(format), message);
+            } else {
+                // Declare the shard queues and send the message to the shard of its pizza name
+                shards.declare(channel);
+                channel.basicPublish(PizzaShards.EXCHANGE, shards.routingKey(pizza), messageProperties(format), message);
+            }
 
             // Output confirmation message
-            System.out.println(" [x] Sent: '" + message + "'");
+            if (format == PizzaFormat.JSON) {
+                LOG.info("Sent '{}'", new String(message, StandardCharsets.UTF_8));
+            } else {
+                LOG.info("Sent {} bytes as {}: {}", message.length, format.getContentType(), pizza);
+            }
+        }
+    }
+
+    /**
+     * Request/reply mode: sends count orders through one PizzaRpcClient, at most pizza.rpc.inFlight (100) at a
+     * time, and waits for Recv's reply to each. A single order logs the reply; more report the round trip times.
+     * The client is tuned with pizza.rpc.directReplyTo and pizza.rpc.timeoutMillis.
+     *
+     * @param count The number of orders to send
+     * @throws Exception If the client cannot connect, or an order is rejected or not confirmed in time.
+     */
+    private static void runRpc(int count) throws Exception {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(System.getProperty("pizza.amqp.host", "localhost"));
+        int maxInFlight = Integer.getInteger("pizza.rpc.inFlight", 100);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        PizzaFormat format = PizzaFormat.configured();
+
+        try (PizzaRpcClient client = PizzaRpcClient.configured(factory, QUEUE_NAME)) {
+            if (count == 1) {
+                Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
+                long start = System.nanoTime();
+                Pizza confirmed = client.call(pizza, format).get();
+                LOG.info("Recv confirmed the order in {} us: name={} size={} price={} toppings={}",
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+                        confirmed.getName(), confirmed.getSize(), confirmed.getPrice(), confirmed.getToppings());
+                return;
+            }
+            LongAdder failed = new LongAdder();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                inFlight.acquire();
+                Pizza pizza = new Pizza(LOAD_NAMES[i % LOAD_NAMES.length], "Medium", 14.99,
+                        new String[]{"Pepperoni", "Mushroom", "Sausage"});
+                client.call(pizza, format).whenComplete((reply, failure) -> {
+                    if (failure != null) {
+                        failed.increment();
+                    }
+                    inFlight.release();
+                });
+            }
+            // Every permit is back once the last reply or timeout is in
+            inFlight.acquire(maxInFlight);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            LOG.info("Confirmed {} of {} orders in {} s: {} orders/s", count - failed.sum(), count,
+                    String.format("%.2f", seconds), String.format("%.0f", count / seconds));
+            LOG.info("Request to reply: {}", PizzaRpcClient.CALL_TIME.summary(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    /**
+     * Import mode: publishes every order of a JSON-lines file through one PizzaPublisher, resuming from the
+     * file's checkpoint if an earlier import was interrupted. The publisher is tuned like the load mode;
+     * pizza.import.threads (one per processor) and pizza.import.chunkMb (32) size the parallel parse.
+     * With pizza.shards set, each order goes to the shard queue of its pizza name, as in the other modes.
+     *
+     * @param file The file to import
+     * @throws Exception If the file cannot be read or an order is not confirmed; run again to resume.
+     */
+    private static void runImport(Path file) throws Exception {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(System.getProperty("pizza.amqp.host", "localhost"));
+        int channels = Integer.getInteger("pizza.publisher.channels", 4);
+        int batchSize = Integer.getInteger("pizza.publisher.batch", 100);
+        int window = Integer.getInteger("pizza.publisher.window", 10_000);
+        int threads = Integer.getInteger("pizza.import.threads", Runtime.getRuntime().availableProcessors());
+        long chunkBytes = Long.getLong("pizza.import.chunkMb", 32) * 1024 * 1024;
+
+        PizzaShards shards = PizzaShards.configured(QUEUE_NAME);
+
+        try (PizzaPublisher publisher = new PizzaPublisher(factory, shards == null ? QUEUE_NAME : null,
+                channels, batchSize, window);
+             FlowController flow = FlowController.configured(publisher)) {
+            if (shards != null) {
+                try (Connection connection = factory.newConnection();
+                     Channel channel = connection.createChannel()) {
+                    shards.declare(channel);
+                }
+            }
+            new OrderImporter(publisher, PizzaFormat.configured(), flow, shards, threads, chunkBytes).importFile(file);
+            LOG.info("Publish to confirm: {}", PizzaPublisher.CONFIRM_TIME.summary(TimeUnit.MICROSECONDS));
+        }
+    }
+
+    /**
+     * Load mode: publishes count orders through one PizzaPublisher and reports sustained messages per second.
+     * The publisher is tuned with the system properties pizza.amqp.host, pizza.publisher.channels,
+     * pizza.publisher.batch and pizza.publisher.window; pizza.format selects the wire format.
+     * pizza.flow=true paces the orders with a FlowController, whose rate is reported with the confirmed rate.
+     *
+     * @param count The number of orders to publish
+     * @throws Exception If an error occurs during the connection or messaging process.
+     */
+    private static void runLoad(int count) throws Exception {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(System.getProperty("pizza.amqp.host", "localhost"));
+        int channels = Integer.getInteger("pizza.publisher.channels", 4);
+        int batchSize = Integer.getInteger("pizza.publisher.batch", 100);
+        int window = Integer.getInteger("pizza.publisher.window", 10_000);
+
+        // Serialize the orders once, the load mode measures the publish path only
+        PizzaFormat format = PizzaFormat.configured();
+        PizzaShards shards = PizzaShards.configured(QUEUE_NAME);
+        byte[][] bodies = new byte[LOAD_NAMES.length][];
+        String[] routingKeys = new String[LOAD_NAMES.length];
+        for (int i = 0; i < LOAD_NAMES.length; i++) {
+            Pizza pizza = new Pizza(LOAD_NAMES[i], "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
+            bodies[i] = serializePizza(pizza, format);
+            routingKeys[i] = shards == null ? null : shards.routingKey(pizza);
+        }
+
+        try (PizzaPublisher publisher = new PizzaPublisher(factory, shards == null ? QUEUE_NAME : null,
+                channels, batchSize, window);
+             FlowController flow = FlowController.configured(publisher)) {
+            if (shards != null) {
+                try (Connection connection = factory.newConnection();
+                     Channel channel = connection.createChannel()) {
+                    shards.declare(channel);
+                }
+            }
+            LOG.info("Publishing {} orders (channels={}, batch={}, window={}, format={}, shards={})",
+                    count, channels, batchSize, window, format, shards == null ? 0 : shards.getCount());
+            long start = System.nanoTime();
+            long lastReport = start;
+            long lastConfirmed = 0;
+            for (int i = 0; i < count; i++) {
+                // Fresh properties per order so each carries its own send time
+                int order = i % LOAD_NAMES.length;
+                if (flow != null) {
+                    flow.acquire();
+                }
+                if (shards == null) {
+                    publisher.publish(messageProperties(format), bodies[order]);
+                } else {
+                    publisher.publishRouted(PizzaShards.EXCHANGE, routingKeys[order], messageProperties(format), bodies[order]);
+                }
+
+                // Report the confirmed rate about once per second
+                long now = System.nanoTime();
+                if (now - lastReport >= TimeUnit.SECONDS.toNanos(1)) {
+                    long confirmedNow = publisher.getConfirmed();
+                    LOG.info("{} msg/s confirmed, {} outstanding{}",
+                            (confirmedNow - lastConfirmed) * TimeUnit.SECONDS.toNanos(1) / (now - lastReport),
+                            publisher.getOutstanding(),
+                            flow == null ? "" : String.format(", rate limit %.0f msg/s", flow.getRate()));
+                    lastReport = now;
+                    lastConfirmed = confirmedNow;
+                }
+            }
+            if (!publisher.awaitConfirms(60, TimeUnit.SECONDS)) {
+                LOG.warn("Timed out waiting for publisher confirms");
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            LOG.info("Published {}, confirmed {}, nacked {} in {} s: {} msg/s",
+                    publisher.getPublished(), publisher.getConfirmed(), publisher.getNacked(),
+                    String.format("%.2f", seconds), String.format("%.0f", publisher.getConfirmed() / seconds));
+            LOG.info("Publish to confirm: {}", PizzaPublisher.CONFIRM_TIME.summary(TimeUnit.MICROSECONDS));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Topping Registry
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 3 hand the predefined toppings to the binary codec
+ */
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ToppingRegistry gives every topping name a small numeric id, so a Pizza can store its toppings
+ * as a bitset instead of a String array. The common toppings are registered up front in the same order
+ * as the binary wire dictionary, and PizzaMenu registers the toppings on the menu. The registry only grows
+ * from those trusted names: a Pizza looks names up with find() and keeps the ones it does not know itself,
+ * so orders from the wire can never use up the ids or the bitset slots.
+ * Each name is stored once and shared by every order that uses it.
+ */
+public final class ToppingRegistry {
+
+    /** The largest number of distinct toppings, ids run from 0 to MAX_TOPPINGS - 1 */
+    public static final int MAX_TOPPINGS = 4096;
+
+    /** Toppings with an id below this fit in a Pizza's long bitset */
+    public static final int BITSET_TOPPINGS = Long.SIZE;
+
+    /** The toppings registered at startup, also the binary wire dictionary, so new ones may only be appended */
+    private static final String[] PREDEFINED = {
+            "Pepperoni", "Mushroom", "Sausage", "Pineapple", "Bacon", "Ham", "Onion", "Green Pepper",
+            "Black Olive", "Extra Cheese", "Chicken", "Spinach", "Tomato", "Jalapeno", "Anchovy", "Garlic"
+    };
+
+    /** The id of every registered name */
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    /** The name of every id, replaced as a whole when a name is added */
+    private static volatile String[] names = new String[0];
+
+    static {
+        for (String topping : PREDEFINED) {
+            idOf(topping);
+        }
+    }
+
+    private ToppingRegistry() {
+    }
+
+    /**
+     * Gets the id of a topping, registering the name if it is new. Only for trusted names, such as the menu's.
+     *
+     * @param name The topping name
+     * @return The topping id
+     * @throws IllegalArgumentException If MAX_TOPPINGS distinct toppings are already registered
+     */
+    public static int idOf(String name) {
+        Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        return register(name);
+    }
+
+    /**
+     * Finds the id of a topping without registering it.
+     *
+     * @param name The topping name
+     * @return The topping id, or -1 if the name is not registered
+     */
+    public static int find(String name) {
+        Integer id = name == null ? null : IDS.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the toppings registered at startup, in id order.
+     *
+     * @return A copy of the predefined names
+     */
+    static String[] predefined() {
+        return PREDEFINED.clone();
+    }
+
+    /**
+     * Gets the shared name of a topping id.
+     *
+     * @param id The topping id
+     * @return The topping name
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets the number of registered toppings.
+     *
+     * @return The topping count
+     */
+    public static int size() {
+        return names.length;
+    }
+
+    /**
+     * Adds a new name. Registration is rare, so it simply takes the class lock.
+     *
+     * @param name The topping name
+     * @return The id of the name
+     */
+    private static synchronized int register(String name) {
+        Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        if (current.length >= MAX_TOPPINGS) {
+            throw new IllegalArgumentException("Too many distinct toppings, cannot register " + name);
+        }
+        String[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = name;
+        // Publish the name before the id so readers of the id always find it
+        names = next;
+        IDS.put(name, current.length);
+        return current.length;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: Virtual Thread Support
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * VirtualThreads creates a virtual-thread-per-task executor when the running JDK offers one.
+ * The project is compiled for Java 20, where virtual threads are still a preview API,
+ * so the factory method is looked up at run time instead of being called directly.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task.
+     * Falls back to a cached platform thread pool when virtual threads are not available.
+     *
+     * @return A virtual-thread-per-task executor, or a cached thread pool
+     */
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Older JDK, or Java 20 without --enable-preview
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -1,15 +1,35 @@
 package main;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Project: Pizza Integration Lab
@@ -17,36 +37,251 @@ import java.util.Base64;
  * Course: IST 242
  * Author: Xue Thao
  * Date Developed: March 18, 2025,
- * Last Date Changed: April 8, 2025,
- * Rev: 11 add HMAC functionality
+ * Last Date Changed: October 17, 2026,
+ * Rev: 32 price and update orders through MenuPricer, shared with Recv
  */
 @SuppressWarnings("ALL")
 public class WebServiceRecv {
 
+    //Logger for the web service; per-order events carry the ORDER marker so logback.xml can sample them
+    private static final Logger LOG = LoggerFactory.getLogger(WebServiceRecv.class);
+    private static final Marker ORDER = MarkerFactory.getMarker("ORDER");
+
     //Shared secret key for HMAC functionality
     private static final String SECRET_KEY = "shared_secret_key";
 
+    //Pre-keyed HMAC engine shared by all handler threads
+    private static final HmacSigner SIGNER = new HmacSigner(SECRET_KEY);
+
+    //Rejects stale and replayed requests, null when pizza.replay is false
+    private static final ReplayGuard REPLAY_GUARD = ReplayGuard.configured();
+
+    //Live rollups of the received orders, served on /pizza/stats
+    private static final OrderStats STATS = new OrderStats();
+
+    //Write-ahead journal of accepted orders when pizza.journal.dir is set, null otherwise
+    private static volatile OrderJournal journal;
+
+    //Prices and validates the received orders, null when pizza.menu is false
+    private static volatile MenuPricer pricer;
+
+    //The price of the updated order when no menu prices it
+    private static final double UPDATED_PRICE = 16.99;
+
+    //Queue the gateway forwards verified orders to, the one Recv consumes
+    private static final String QUEUE_NAME = "pizzaQueue";
+
+    //Publisher forwarding verified orders to pizzaQueue when pizza.gateway is set, null otherwise
+    private static volatile PizzaPublisher gateway;
+
+    //Shard queues the gateway routes orders over when pizza.shards is set, null to forward to pizzaQueue
+    private static final PizzaShards SHARDS = PizzaShards.configured(QUEUE_NAME);
+
+    //How long a gateway request waits for the broker confirm before answering 504
+    private static final long GATEWAY_TIMEOUT_MILLIS = Long.getLong("pizza.gateway.timeoutMillis", 5_000);
+
+    //The most orders a batch may hold in memory until its HMAC is verified, past it the batch gets 413
+    private static final int MAX_BATCH_ORDERS = Integer.getInteger("pizza.batch.maxOrders", 10_000);
+
+    //The fixed answers to /pizza requests, shared by both server engines
+    private static final OrderResponse ORDER_RECEIVED = new OrderResponse(200, "HMAC Verified! Order received.");
+    private static final OrderResponse ORDER_FORWARDED = new OrderResponse(200, "HMAC Verified! Order forwarded.");
+    private static final OrderResponse MALFORMED = new OrderResponse(400, "Malformed order.");
+    private static final OrderResponse STALE = new OrderResponse(401, "Missing or stale " + ReplayGuard.TIMESTAMP_HEADER
+            + " or " + ReplayGuard.NONCE_HEADER + ".");
+    private static final OrderResponse STALE_TIMESTAMP = new OrderResponse(401, "Stale " + ReplayGuard.TIMESTAMP_HEADER + ".");
+    private static final OrderResponse HMAC_FAILED = new OrderResponse(403, "HMAC Verification Failed!");
+    private static final OrderResponse METHOD_NOT_ALLOWED = new OrderResponse(405, "Only POST requests are supported.");
+    private static final OrderResponse REPLAYED = new OrderResponse(409, "Request was already received.");
+    private static final OrderResponse NOT_STORED = new OrderResponse(500, "Order could not be stored.");
+    private static final OrderResponse ORDER_FAILED = new OrderResponse(500, "Order failed.");
+    private static final OrderResponse NOT_CONFIRMED = new OrderResponse(502, "Order was not accepted by the broker.");
+    private static final OrderResponse REPLAY_FULL = new OrderResponse(503, "Replay cache is full, retry later.");
+    private static final OrderResponse CONFIRM_TIMED_OUT = new OrderResponse(504, "Order was not confirmed in time.");
+
+    //Request counters and latency histograms, served on /metrics
+    private static final LongAdder REQUESTS = Metrics.counter("pizza_http_requests_total", "Orders posted to /pizza");
+    private static final LongAdder HMAC_FAILURES = Metrics.counter("pizza_http_hmac_failures_total", "Orders and batches rejected for a bad HMAC");
+    private static final LongAdder ERRORS = Metrics.counter("pizza_http_errors_total", "Requests that failed or were answered with 400, 405 or 422");
+    private static final LongAdder REPLAY_REJECTS = Metrics.counter("pizza_http_replay_rejects_total", "Requests rejected for a stale timestamp or a reused nonce");
+    private static final LongAdder BATCH_ORDERS = Metrics.counter("pizza_http_batch_orders_total", "Orders received in verified /pizza/batch uploads");
+    private static final LatencyHistogram VERIFY_TIME = Metrics.histogram("pizza_http_verify_seconds", "Time to read, hash and verify an order body");
+    private static final LatencyHistogram PARSE_TIME = Metrics.histogram("pizza_http_parse_seconds", "Time to decode an order body");
+    private static final LatencyHistogram HANDLE_TIME = Metrics.histogram("pizza_http_handle_seconds", "Time spent in the /pizza handler");
+    private static final LatencyHistogram END_TO_END = Metrics.histogram("pizza_http_end_to_end_seconds", "Time from the sender's X-Sent-At stamp until the order is handled");
+    private static final LongAdder FORWARDED = Metrics.counter("pizza_gateway_forwarded_total", "Orders forwarded to pizzaQueue and confirmed by the broker");
+    private static final LongAdder FORWARD_FAILURES = Metrics.counter("pizza_gateway_failures_total", "Orders the broker nacked or did not confirm in time");
+    private static final LatencyHistogram FORWARD_TIME = Metrics.histogram("pizza_gateway_forward_seconds", "Time from handing an order to the gateway publisher until the broker confirms it");
+
     /**
-     * Main method to start the HTTP server and set up the /pizza endpoint.
-     * Creates an HttpServer that listens on port 8000 and routes requests to the PizzaHandler.
+     * Main method to start the HTTP server and set up the /pizza, /pizza/batch, /pizza/stats and /metrics endpoints.
+     * Creates an HttpServer that listens on port 8000 and routes requests to the PizzaHandler
+     * and the BatchHandler; /pizza/stats serves the order rollups as JSON and
+     * /metrics serves the counters and latency histograms in Prometheus format.
+     * With -Dpizza.http.executor=virtual or pool, requests run on worker threads behind a
+     * LoadShedder that answers 503 once pizza.http.maxInFlight requests are in flight.
+     * With -Dpizza.journal.dir every order is written to an OrderJournal before it is answered,
+     * and the journal is replayed into /pizza/stats on startup.
+     * With -Dpizza.gateway=true verified orders are forwarded to pizzaQueue, or its shard queues with pizza.shards,
+     * instead of being handled here, and answered once the broker confirms them; see openGateway() for its settings.
+     * Every signed request must carry a fresh X-Timestamp and an unused X-Nonce, covered by the HMAC;
+     * see ReplayGuard for its settings, -Dpizza.replay=false accepts body-only signatures again.
+     * Every order is priced from the MenuPricer menu before it is journaled, forwarded or counted, and orders
+     * with a size or topping that is not on the menu are answered with 422; see MenuPricer for its settings,
+     * -Dpizza.menu=false keeps the prices as sent.
+     * With -Dpizza.http.engine=nio, /pizza is served by PizzaNioServer instead, an event loop per core over
+     * pooled direct buffers, and /metrics by the pizza.metrics.port server; see PizzaNioServer for its settings.
      *
      * @param args Command-line arguments (not used in this case).
      * @throws Exception Handles potential server startup exceptions.
      */
     public static void main(String[] args) throws Exception {
-        // Create an HTTP server instance listening on port 8000
-        HttpServer server = HttpServer.create(new InetSocketAddress(8000), 0);
+        String engine = System.getProperty("pizza.http.engine", "jdk");
+        switch (engine) {
+            case "jdk":
+                // Create an HTTP server instance listening on port 8000
+                startServer(new InetSocketAddress(8000));
+                break;
+            case "nio":
+                PizzaNioServer.start(new InetSocketAddress(8000));
+                Metrics.startConfiguredServer();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown pizza.http.engine: " + engine);
+        }
+    }
+
+    /**
+     * Creates, configures and starts the server on an address.
+     * The benchmarks use this to run the service in-process on a free port.
+     *
+     * @param address The address to listen on, port 0 picks a free port
+     * @return The running server
+     * @throws IOException If the server cannot bind the address
+     */
+    static HttpServer startServer(InetSocketAddress address) throws IOException {
+        // Send responses without Nagle delays, otherwise keep-alive clients wait on delayed ACKs
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        openBackends();
+        HttpServer server = HttpServer.create(address, 0);
+        // Hand requests to bounded workers unless the executor mode is "default"
+        LoadShedder loadShedder = LoadShedder.configured();
         // Map the "/pizza" context to the PizzaHandler
-        server.createContext("/pizza", new PizzaHandler());
+        server.createContext("/pizza", dispatch(new PizzaHandler(), loadShedder));
+        // Map the "/pizza/batch" context to the BatchHandler for NDJSON uploads
+        server.createContext("/pizza/batch", dispatch(new BatchHandler(), loadShedder));
+        // Map the "/pizza/stats" context to the rollups of every order received so far
+        server.createContext("/pizza/stats", dispatch(STATS.handler(), loadShedder));
+        // Map the "/metrics" context to the Prometheus exporter, it skips the LoadShedder so it answers under load
+        server.createContext("/metrics", Metrics.handler());
+        if (loadShedder != null) {
+            Metrics.gauge("pizza_http_in_flight", "Requests admitted and not yet finished", loadShedder::getInFlight);
+            Metrics.gauge("pizza_http_shed", "Requests answered with 503 since startup", loadShedder::getRejected);
+        }
         // Set the default executor for handling HTTP requests
-        server.setExecutor(null); // creates a default executor
+        server.setExecutor(null); // the dispatcher thread only runs admission when a LoadShedder is set
         // Start the server
         server.start();
+        LOG.info("Web service listening on {}", server.getAddress());
+        return server;
+    }
+
+    /**
+     * Opens what the order handling uses, once per JVM however many servers are started: the journal,
+     * replayed into the rollups before any order is accepted, the menu pricer and the gateway publisher.
+     *
+     * @throws IOException If the journal, the menu or the broker cannot be opened
+     */
+    static void openBackends() throws IOException {
+        // Rebuild the rollups from the journal before accepting orders, once per JVM
+        synchronized (WebServiceRecv.class) {
+            if (journal == null) {
+                journal = OrderJournal.configured();
+                if (journal != null) {
+                    journal.replayInto(STATS);
+                }
+            }
+        }
+        synchronized (WebServiceRecv.class) {
+            if (pricer == null) {
+                pricer = MenuPricer.configured();
+            }
+        }
+        synchronized (WebServiceRecv.class) {
+            if (gateway == null) {
+                gateway = openGateway();
+            }
+        }
+    }
+
+    /**
+     * Checks whether handling an order waits for a journal sync or a broker confirm,
+     * so an event loop must hand it to another thread.
+     *
+     * @return true when a journal or the gateway is open
+     */
+    static boolean ordersWait() {
+        return journal != null || gateway != null;
+    }
+
+    /**
+     * Opens the gateway publisher when pizza.gateway is true. Orders from concurrent requests share
+     * micro-batches on a pool of confirm channels over one connection, tuned with pizza.amqp.host,
+     * pizza.amqp.port, pizza.gateway.channels (4), pizza.gateway.batch (32), pizza.gateway.window (10000)
+     * and pizza.gateway.lingerMicros (500). Requests wait for their confirm, so run the gateway with
+     * pizza.http.executor set, otherwise every order waits out the linger time on its own.
+     * With pizza.shards set, the shard topology is declared and each order is routed to the shard queue
+     * of its pizza name, the same as Send, so the sharded Recv instances get the forwarded orders.
+     *
+     * @return The publisher, or null when gateway mode is off
+     * @throws IOException If the broker cannot be reached
+     */
+    static PizzaPublisher openGateway() throws IOException {
+        if (!Boolean.getBoolean("pizza.gateway")) {
+            return null;
+        }
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(System.getProperty("pizza.amqp.host", "localhost"));
+        factory.setPort(Integer.getInteger("pizza.amqp.port", AMQP.PROTOCOL.PORT));
+        int channels = Integer.getInteger("pizza.gateway.channels", 4);
+        int batchSize = Integer.getInteger("pizza.gateway.batch", 32);
+        int window = Integer.getInteger("pizza.gateway.window", 10_000);
+        long lingerMicros = Long.getLong("pizza.gateway.lingerMicros", 500);
+        try {
+            if (SHARDS != null) {
+                try (Connection connection = factory.newConnection();
+                     Channel channel = connection.createChannel()) {
+                    SHARDS.declare(channel);
+                }
+            }
+            PizzaPublisher publisher = new PizzaPublisher(factory, SHARDS == null ? QUEUE_NAME : null, channels,
+                    batchSize, window, Math.max(1, lingerMicros));
+            LOG.info("Gateway forwarding orders to {} on {}:{} (channels={}, batch={}, lingerMicros={})",
+                    SHARDS == null ? QUEUE_NAME : SHARDS.getCount() + " shards of " + QUEUE_NAME,
+                    factory.getHost(), factory.getPort(), channels, batchSize, lingerMicros);
+            return publisher;
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out connecting the gateway to the broker", e);
+        }
+    }
+
+    /**
+     * Routes a handler through the LoadShedder when one is configured.
+     *
+     * @param handler     The handler of a context
+     * @param loadShedder The LoadShedder, or null to run on the dispatcher thread
+     * @return The handler to register
+     */
+    private static HttpHandler dispatch(HttpHandler handler, LoadShedder loadShedder) {
+        return loadShedder == null ? handler : loadShedder.wrap(handler);
     }
 
     /**
      * PizzaHandler class handles HTTP requests made to the "/pizza" endpoint.
-     * Processes POST requests containing a pizza order in JSON format.
+     * Processes POST requests containing a pizza order in JSON format,
+     * or in the binary format when Content-Type says so.
      */
     static class PizzaHandler implements HttpHandler {
 
@@ -60,114 +295,689 @@ public class WebServiceRecv {
          */
         @Override
         public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            try {
+                handleOrder(exchange);
+            } catch (IOException e) {
+                ERRORS.increment();
+                LOG.error("Order failed remote={}", exchange.getRemoteAddress(), e);
+                throw e;
+            } catch (RuntimeException e) {
+                ERRORS.increment();
+                LOG.error("Order failed remote={}", exchange.getRemoteAddress(), e);
+                // Answer like the NIO engine unless the response has already started
+                if (exchange.getResponseCode() < 0) {
+                    ORDER_FAILED.send(exchange);
+                } else {
+                    throw e;
+                }
+            } finally {
+                HANDLE_TIME.record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Verifies, decodes and updates one order, recording the verify, parse and end-to-end latencies.
+         *
+         * @param exchange The HTTP exchange object containing the request and response.
+         * @throws IOException If there is an I/O error during the request processing.
+         */
+        private void handleOrder(HttpExchange exchange) throws IOException {
             // Ensure the request is a POST request
-            if ("POST".equals(exchange.getRequestMethod())) {
-                // Read the JSON body from the request using InputStream
-                InputStream inputStream = exchange.getRequestBody();
-                byte[] jsonBytes = inputStream.readAllBytes(); // Read the request body as bytes
-                String json = new String(jsonBytes); // Convert bytes into a string representation
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                // Respond with HTTP status 405 Method Not Allowed for non-POST requests
+                ERRORS.increment();
+                METHOD_NOT_ALLOWED.send(exchange);
+                return;
+            }
+            REQUESTS.increment();
+            // Turn away stale or unsigned requests before reading their body
+            if (rejectStale(exchange)) {
+                return;
+            }
+            long verifyStart = System.nanoTime();
+            // Read the body through the HMAC engine so it is hashed while it streams in, after the timestamp and nonce
+            // Extract the HMAC from the request headers
+            String receivedHMAC = exchange.getRequestHeaders().getFirst("HMAC");
+            byte[] jsonBytes;
+            byte[] generatedHMAC;
+            boolean verified;
+            // Closing the stream returns its Mac to the pool even when reading the body fails
+            try (HmacSigner.SigningInputStream inputStream = SIGNER.newInputStream(exchange.getRequestBody(),
+                    signedPreamble(exchange.getRequestHeaders()::getFirst))) {
+                jsonBytes = inputStream.readAllBytes(); // Read the request body as bytes
 
-                // Extract the HMAC from the request headers
-                String receivedHMAC = exchange.getRequestHeaders().getFirst("HMAC");
+                // Finish the HMAC of the received payload using the shared secret key
+                generatedHMAC = inputStream.digest();
+
+                // Verify the integrity of the payload by comparing the raw HMAC digests in constant time
+                verified = inputStream.verify(receivedHMAC);
+            }
+            VERIFY_TIME.record(System.nanoTime() - verifyStart);
+
+            // Log the received and generated HMAC values for debugging, only encoded when DEBUG is on
+            if (LOG.isDebugEnabled(ORDER)) {
+                LOG.debug(ORDER, "HMAC received={} generated={}",
+                        receivedHMAC, Base64.getEncoder().encodeToString(generatedHMAC));
+            }
+
+            // A verified signature can still be a captured request sent again
+            if (verified && rejectReplay(exchange)) {
+                return;
+            }
+
+            if (verified) {
+                // Deserialize the body into a Pizza object, the Content-Type header names the format
+                PizzaFormat format = PizzaFormat.forContentType(exchange.getRequestHeaders().getFirst("Content-Type"));
+                decodeOrder(format, ByteBuffer.wrap(jsonBytes),
+                        exchange.getRequestHeaders().getFirst(Metrics.SENT_AT_HEADER), exchange.getRemoteAddress())
+                        .send(exchange);
+            } else {
+                // HMAC verification failed, respond with HTTP status 403 Forbidden
+                rejectSignature(exchange.getRemoteAddress()).send(exchange);
+            }
+        }
+    }
+
+    /**
+     * Handles one /pizza request whose body was read into a buffer, the PizzaNioServer counterpart of
+     * PizzaHandler: the same checks in the same order, the same counters and the same responses.
+     * The buffer may be direct; it is hashed and decoded in place and only copied when the order is
+     * journaled or forwarded.
+     *
+     * @param method  The request method
+     * @param headers The request headers
+     * @param body    The request body between its position and limit, not changed
+     * @param remote  The client address, for the log
+     * @return The response to send, 500 if the order fails unexpectedly
+     */
+    static OrderResponse handleOrder(String method, RequestHeaders headers, ByteBuffer body, SocketAddress remote) {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(method)) {
+                ERRORS.increment();
+                return METHOD_NOT_ALLOWED;
+            }
+            REQUESTS.increment();
+            OrderResponse stale = checkFresh(headers, remote);
+            if (stale != null) {
+                return stale;
+            }
+            long verifyStart = System.nanoTime();
+            boolean verified = SIGNER.verify(signedPreamble(headers), body, headers.getFirst("HMAC"));
+            VERIFY_TIME.record(System.nanoTime() - verifyStart);
+            if (!verified) {
+                return rejectSignature(remote);
+            }
+            OrderResponse replayed = checkReplay(headers, remote);
+            if (replayed != null) {
+                return replayed;
+            }
+            PizzaFormat format = PizzaFormat.forContentType(headers.getFirst("Content-Type"));
+            return decodeOrder(format, body, headers.getFirst(Metrics.SENT_AT_HEADER), remote);
+        } catch (RuntimeException e) {
+            ERRORS.increment();
+            LOG.error("Order failed remote={}", remote, e);
+            return ORDER_FAILED;
+        } finally {
+            HANDLE_TIME.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Decodes a verified order and accepts it, answering 400 when the body is empty or not a valid order.
+     *
+     * @param format The format of the body
+     * @param body   The order as received, between its position and limit, not changed
+     * @param sentAt The sender's X-Sent-At stamp, may be null
+     * @param remote The client address, for the log
+     * @return The response to send
+     */
+    private static OrderResponse decodeOrder(PizzaFormat format, ByteBuffer body, String sentAt, SocketAddress remote) {
+        long parseStart = System.nanoTime();
+        Pizza pizza;
+        try {
+            pizza = format.decode(body);
+        } catch (JsonParseException | IllegalArgumentException e) {
+            // The JSON codec reports bad input as JsonParseException, the binary codec as IllegalArgumentException
+            ERRORS.increment();
+            LOG.warn(ORDER, "Order rejected malformed format={} remote={} error={}", format, remote, e.toString());
+            return MALFORMED;
+        }
+        PARSE_TIME.record(System.nanoTime() - parseStart);
+        if (pizza == null) {
+            ERRORS.increment();
+            LOG.warn(ORDER, "Order rejected empty format={} remote={}", format, remote);
+            return MALFORMED;
+        }
+        return acceptOrder(format, pizza, body, sentAt, remote);
+    }
+
+    /**
+     * Prices, journals or forwards, counts and updates a verified order.
+     *
+     * @param format The format of the body
+     * @param pizza  The decoded order
+     * @param body   The order as received, between its position and limit
+     * @param sentAt The sender's X-Sent-At stamp, may be null
+     * @param remote The client address, for the log
+     * @return The response to send
+     */
+    private static OrderResponse acceptOrder(PizzaFormat format, Pizza pizza, ByteBuffer body, String sentAt,
+                                             SocketAddress remote) {
+        // Charge the menu price, not the one the client sent, and turn away orders not on the menu
+        double sentPrice = pizza.getPrice();
+        String rejected = MenuPricer.priceOrder(pricer, pizza);
+        if (rejected != null) {
+            ERRORS.increment();
+            LOG.warn(ORDER, "Order rejected menu={} remote={}", rejected, remote);
+            return new OrderResponse(422, "Order is not on the menu: " + rejected + ".");
+        }
+
+        // In gateway mode the Recv consumers handle the order, it is answered once the broker has it
+        PizzaPublisher publisher = gateway;
+        if (publisher != null) {
+            return forwardOrder(publisher, format, pizza, pricedBytes(format, pizza, sentPrice, body), sentAt, remote);
+        }
+
+        // The order is only acknowledged once the journal has it on disk
+        if (journal != null && !journalOrder(format, pricedBytes(format, pizza, sentPrice, body))) {
+            ERRORS.increment();
+            return NOT_STORED;
+        }
+        STATS.record(pizza);
+
+        // Log the details of the received pizza order as one event
+        LOG.info(ORDER, "Order received hmac=verified format={} name={} size={} price={} toppings={}",
+                format, pizza.getName(), pizza.getSize(), pizza.getPrice(), pizza.getToppings());
+
+        // Update the pizza order using setter methods, the updated order is logged at DEBUG
+        MenuPricer.updateOrder(pricer, pizza, UPDATED_PRICE);
+
+        // The order is handled once it is verified, decoded and updated
+        Metrics.recordSince(END_TO_END, sentAt);
+        return ORDER_RECEIVED;
+    }
+
+    /**
+     * Gets the bytes to journal or forward: the body as received, or the order re-encoded when the menu
+     * changed its price.
+     *
+     * @param format    The format of the body
+     * @param pizza     The priced order
+     * @param sentPrice The price the order was sent with
+     * @param body      The order as received, between its position and limit
+     * @return The order bytes
+     */
+    private static byte[] pricedBytes(PizzaFormat format, Pizza pizza, double sentPrice, ByteBuffer body) {
+        if (pizza.getPrice() != sentPrice) {
+            return format.encode(pizza);
+        }
+        if (body.hasArray() && body.arrayOffset() == 0 && body.position() == 0 && body.limit() == body.array().length) {
+            return body.array();
+        }
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Counts and logs an order whose HMAC did not match.
+     *
+     * @param remote The client address, for the log
+     * @return The 403 response
+     */
+    private static OrderResponse rejectSignature(SocketAddress remote) {
+        HMAC_FAILURES.increment();
+        LOG.warn(ORDER, "Order rejected hmac=failed remote={}", remote);
+        return HMAC_FAILED;
+    }
+
+    /**
+     * Builds the bytes signed ahead of a request body from its X-Timestamp and X-Nonce headers.
+     *
+     * @param headers The request headers
+     * @return The preamble, empty when the request has neither header
+     */
+    private static byte[] signedPreamble(RequestHeaders headers) {
+        return HmacSigner.preamble(headers.getFirst(ReplayGuard.TIMESTAMP_HEADER),
+                headers.getFirst(ReplayGuard.NONCE_HEADER));
+    }
+
+    /**
+     * Answers 401 without reading the body when the X-Timestamp or X-Nonce header is missing, malformed or stale.
+     *
+     * @param exchange The HTTP exchange of the request
+     * @return true if the request was rejected
+     * @throws IOException If the response cannot be sent
+     */
+    private static boolean rejectStale(HttpExchange exchange) throws IOException {
+        OrderResponse response = checkFresh(exchange.getRequestHeaders()::getFirst, exchange.getRemoteAddress());
+        if (response == null) {
+            return false;
+        }
+        // Drain the body so the connection can be reused
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        response.send(exchange);
+        return true;
+    }
+
+    /**
+     * Checks the X-Timestamp and X-Nonce headers of a request before its body is verified.
+     *
+     * @param headers The request headers
+     * @param remote  The client address, for the log
+     * @return null if the request is fresh or replay protection is off, otherwise the 401 response
+     */
+    private static OrderResponse checkFresh(RequestHeaders headers, SocketAddress remote) {
+        if (REPLAY_GUARD == null || REPLAY_GUARD.isFresh(headers.getFirst(ReplayGuard.TIMESTAMP_HEADER),
+                headers.getFirst(ReplayGuard.NONCE_HEADER))) {
+            return null;
+        }
+        REPLAY_REJECTS.increment();
+        LOG.warn("Request rejected timestamp=stale remote={}", remote);
+        return STALE;
+    }
+
+    /**
+     * Records the nonce of a verified request, answering 409 when it was used before
+     * and 503 when the replay cache has no room for it.
+     *
+     * @param exchange The HTTP exchange of the request, its body already read
+     * @return true if the request was rejected
+     * @throws IOException If the response cannot be sent
+     */
+    private static boolean rejectReplay(HttpExchange exchange) throws IOException {
+        OrderResponse response = checkReplay(exchange.getRequestHeaders()::getFirst, exchange.getRemoteAddress());
+        if (response == null) {
+            return false;
+        }
+        response.send(exchange);
+        return true;
+    }
+
+    /**
+     * Records the nonce of a verified request.
+     *
+     * @param headers The request headers
+     * @param remote  The client address, for the log
+     * @return null if the nonce is new or replay protection is off, otherwise the 409, 503 or 401 response
+     */
+    private static OrderResponse checkReplay(RequestHeaders headers, SocketAddress remote) {
+        if (REPLAY_GUARD == null) {
+            return null;
+        }
+        ReplayGuard.Result result = REPLAY_GUARD.accept(headers.getFirst(ReplayGuard.TIMESTAMP_HEADER),
+                headers.getFirst(ReplayGuard.NONCE_HEADER));
+        if (result == ReplayGuard.Result.ACCEPTED) {
+            return null;
+        }
+        REPLAY_REJECTS.increment();
+        LOG.warn("Request rejected nonce={} remote={}", result, remote);
+        switch (result) {
+            case REPLAYED:
+                return REPLAYED;
+            case FULL:
+                return REPLAY_FULL;
+            default:
+                return STALE_TIMESTAMP;
+        }
+    }
+
+    /**
+     * Forwards a verified order to pizzaQueue and waits until the broker confirms it.
+     * The body is forwarded as received or at its menu price, with its content type and the sender's X-Sent-At stamp,
+     * so Recv decodes it and measures its end-to-end latency the same way as orders from Send.
+     * Answers 502 when the broker nacks the order and 504 when no confirm arrives in time.
+     *
+     * @param publisher The gateway publisher
+     * @param format    The format of the body
+     * @param pizza     The decoded order, for the log
+     * @param body      The order as received, re-encoded when the menu changed its price
+     * @param sentAt    The sender's X-Sent-At stamp, may be null
+     * @param remote    The client address, for the log
+     * @return The response to send
+     */
+    private static OrderResponse forwardOrder(PizzaPublisher publisher, PizzaFormat format, Pizza pizza,
+                                              byte[] body, String sentAt, SocketAddress remote) {
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .contentType(format.getContentType())
+                .headers(Collections.singletonMap(Metrics.SENT_AT_HEADER,
+                        sentAt != null ? sentAt : Long.toString(Metrics.nowMicros())))
+                .build();
+        long start = System.nanoTime();
+        OrderResponse response;
+        try {
+            publish(publisher, pizza, props, body).get(GATEWAY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            FORWARD_TIME.record(System.nanoTime() - start);
+            FORWARDED.increment();
+            LOG.info(ORDER, "Order forwarded hmac=verified format={} name={} size={} price={} toppings={}",
+                    format, pizza.getName(), pizza.getSize(), pizza.getPrice(), pizza.getToppings());
+            return ORDER_FORWARDED;
+        } catch (ExecutionException e) {
+            FORWARD_FAILURES.increment();
+            LOG.error("Order not confirmed by the broker remote={}", remote, e.getCause());
+            response = NOT_CONFIRMED;
+        } catch (TimeoutException e) {
+            FORWARD_FAILURES.increment();
+            LOG.error("Order confirm timed out after {} ms remote={}", GATEWAY_TIMEOUT_MILLIS, remote);
+            response = CONFIRM_TIMED_OUT;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to forward the order", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while forwarding the order", e);
+        }
+        ERRORS.increment();
+        return response;
+    }
+
+    /**
+     * Hands an order to the gateway publisher, routed to its shard queue when pizza.shards is set.
+     *
+     * @param publisher The gateway publisher
+     * @param pizza     The order, whose name picks the shard
+     * @param props     The AMQP properties of the message
+     * @param body      The encoded order
+     * @return A future completed when the broker confirms the order
+     * @throws IOException          If the batch cannot be published
+     * @throws InterruptedException If interrupted while waiting for the confirm window
+     */
+    private static CompletableFuture<Void> publish(PizzaPublisher publisher, Pizza pizza, AMQP.BasicProperties props,
+                                                   byte[] body) throws IOException, InterruptedException {
+        if (SHARDS == null) {
+            return publisher.publishConfirmed(props, body);
+        }
+        return publisher.publishRoutedConfirmed(PizzaShards.EXCHANGE, SHARDS.routingKey(pizza), props, body);
+    }
+
+    /**
+     * Forwards the priced orders of a verified batch through the gateway, or writes them to the journal with one
+     * append, and waits until the broker confirms them or they are on disk: the batch counterpart of forwardOrder
+     * and journalOrder. A batch that fails part way may leave some of its orders forwarded or journaled.
+     *
+     * @param orders The orders at their menu price
+     * @param sentAt The sender's X-Sent-At stamp, may be null
+     * @param remote The client address, for the log
+     * @return null once every order is confirmed or durable, otherwise the response to send
+     */
+    private static OrderResponse storeBatch(List<Pizza> orders, String sentAt, SocketAddress remote) {
+        PizzaPublisher publisher = gateway;
+        if (publisher != null) {
+            return forwardBatch(publisher, orders, sentAt, remote);
+        }
+        OrderJournal current = journal;
+        if (current == null) {
+            return null;
+        }
+        List<byte[]> bodies = new ArrayList<>(orders.size());
+        for (Pizza pizza : orders) {
+            bodies.add(PizzaCodec.encode(pizza));
+        }
+        try {
+            current.appendAll(Collections.nCopies(orders.size(), PizzaFormat.JSON), bodies).join();
+            return null;
+        } catch (IOException | CompletionException e) {
+            ERRORS.increment();
+            LOG.error("Failed to journal batch orders={} remote={}", orders.size(), remote, e);
+            return NOT_STORED;
+        }
+    }
+
+    /**
+     * Publishes the orders of a batch to the gateway and waits for every broker confirm.
+     *
+     * @param publisher The gateway publisher
+     * @param orders    The orders at their menu price, forwarded as JSON
+     * @param sentAt    The sender's X-Sent-At stamp, may be null
+     * @param remote    The client address, for the log
+     * @return null once every order is confirmed, otherwise the response to send
+     */
+    private static OrderResponse forwardBatch(PizzaPublisher publisher, List<Pizza> orders, String sentAt,
+                                              SocketAddress remote) {
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .contentType(PizzaFormat.JSON.getContentType())
+                .headers(Collections.singletonMap(Metrics.SENT_AT_HEADER,
+                        sentAt != null ? sentAt : Long.toString(Metrics.nowMicros())))
+                .build();
+        long start = System.nanoTime();
+        OrderResponse response;
+        try {
+            List<CompletableFuture<Void>> confirms = new ArrayList<>(orders.size());
+            for (Pizza pizza : orders) {
+                confirms.add(publish(publisher, pizza, props, PizzaCodec.encode(pizza)));
+            }
+            CompletableFuture.allOf(confirms.toArray(new CompletableFuture<?>[0]))
+                    .get(GATEWAY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            FORWARD_TIME.record(System.nanoTime() - start);
+            FORWARDED.add(orders.size());
+            LOG.info(ORDER, "Batch forwarded hmac=verified orders={} remote={}", orders.size(), remote);
+            return null;
+        } catch (ExecutionException e) {
+            FORWARD_FAILURES.increment();
+            LOG.error("Batch not confirmed by the broker orders={} remote={}", orders.size(), remote, e.getCause());
+            response = NOT_CONFIRMED;
+        } catch (TimeoutException e) {
+            FORWARD_FAILURES.increment();
+            LOG.error("Batch confirm timed out after {} ms orders={} remote={}", GATEWAY_TIMEOUT_MILLIS, orders.size(), remote);
+            response = CONFIRM_TIMED_OUT;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to forward the batch", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while forwarding the batch", e);
+        }
+        ERRORS.increment();
+        return response;
+    }
+
+    /**
+     * Writes an order to the journal and waits until it is on disk.
+     * Concurrent handler threads share one disk sync, see OrderJournal.
+     *
+     * @param format The format of the body
+     * @param body   The order at its menu price
+     * @return True when the order is durable or no journal is configured, false if the write failed
+     */
+    private static boolean journalOrder(PizzaFormat format, byte[] body) {
+        OrderJournal current = journal;
+        if (current == null) {
+            return true;
+        }
+        try {
+            current.append(format, body).join();
+            return true;
+        } catch (IOException | CompletionException e) {
+            LOG.error("Failed to journal order", e);
+            return false;
+        }
+    }
+
+    /**
+     * BatchHandler class handles HTTP requests made to the "/pizza/batch" endpoint.
+     * Processes POST requests whose body is newline-delimited JSON, one pizza order per line,
+     * signed with one HMAC over the whole body. Orders are parsed one at a time while the body
+     * streams in. Only a journal or gateway needs them again after the HMAC is verified, and then at most
+     * pizza.batch.maxOrders (10000) are held; otherwise memory use does not depend on the batch size.
+     */
+    static class BatchHandler implements HttpHandler {
+
+        /**
+         * Handles the HTTP exchange for POST requests.
+         * Parses, prices and totals every order while the body is hashed, verifies the HMAC and the replay
+         * check once the body is read, and only then answers from the orders: 400 for a malformed order,
+         * 422 for one that is not on the menu, otherwise a JSON summary of the batch. An unsigned client
+         * therefore learns nothing about the menu or the parser.
+         *
+         * @param exchange The HTTP exchange object containing the request and response.
+         * @throws IOException If there is an I/O error during the request processing.
+         */
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                // Respond with HTTP status 405 Method Not Allowed for non-POST requests
+                ERRORS.increment();
+                sendResponse(exchange, 405, "Only POST requests are supported.");
+                return;
+            }
+
+            // Turn away stale or unsigned batches before parsing them
+            if (rejectStale(exchange)) {
+                return;
+            }
+
+            // Hash the timestamp, nonce and body while the orders are parsed from it; closing the stream
+            // returns its Mac to the pool on every early return
+            BatchSummary summary = new BatchSummary();
+            // The priced orders are kept until the HMAC is verified when they still have to be journaled or forwarded
+            List<Pizza> orders = ordersWait() ? new ArrayList<>() : null;
+            int status = 200;
+            String failure = null;
+            try (HmacSigner.SigningInputStream body = SIGNER.newInputStream(exchange.getRequestBody(),
+                    signedPreamble(exchange.getRequestHeaders()::getFirst))) {
+                JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+                // Lenient mode reads the newline separated top-level objects one after another
+                reader.setLenient(true);
 
-                // Generate HMAC for the received payload using the shared secret key
-                String generatedHMAC;
                 try {
-                    generatedHMAC = generateHMAC(json, SECRET_KEY); // Generate the HMAC
-                } catch (Exception e) {
-                    // Handle any exceptions during HMAC generation
-                    e.printStackTrace();
-                    String response = "Error generating HMAC.";
-                    exchange.sendResponseHeaders(500, response.getBytes().length);
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
+                    while (reader.peek() != JsonToken.END_DOCUMENT) {
+                        Pizza pizza = PizzaCodec.ADAPTER.read(reader);
+                        if (pizza == null) {
+                            continue;
+                        }
+                        String rejected = MenuPricer.priceOrder(pricer, pizza);
+                        if (rejected != null) {
+                            status = 422;
+                            failure = "Order #" + (summary.getOrders() + 1) + " is not on the menu: " + rejected + ".";
+                            break;
+                        }
+                        if (orders != null) {
+                            if (orders.size() == MAX_BATCH_ORDERS) {
+                                status = 413;
+                                break;
+                            }
+                            orders.add(pizza);
+                        }
+                        summary.add(pizza);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    status = 400;
+                    failure = "Malformed order #" + (summary.getOrders() + 1) + ": " + e.getMessage();
+                }
+                if (status == 413) {
+                    // Bounds the memory an unsigned client can tie up, so it is answered before the HMAC
+                    ERRORS.increment();
+                    LOG.warn("Batch rejected status=413 orders>{} remote={}", MAX_BATCH_ORDERS, exchange.getRemoteAddress());
+                    sendResponse(exchange, 413, "A batch may hold at most " + MAX_BATCH_ORDERS + " orders.");
                     return;
                 }
+                // Hash whatever the parser did not get to, so the HMAC still covers the whole body
+                body.transferTo(OutputStream.nullOutputStream());
 
-                // Print the received and generated HMAC values for debugging
-                System.out.println("Received HMAC (SHA): " + receivedHMAC);
-                System.out.println("Generated HMAC (SHA): " + generatedHMAC);
-
-                // Verify the integrity of the payload by comparing HMAC values
-                if (generatedHMAC.equals(receivedHMAC)) {
-                    // HMAC verification passed
-                    System.out.println("HMAC Verified! Payload integrity confirmed.");
-
-                    // Deserialize the JSON into a Pizza object
-                    Gson gson = new Gson();
-                    Pizza pizza = gson.fromJson(json, Pizza.class);
-
-                    // Print the details of the received pizza order
-                    System.out.println("Received Pizza order:");
-                    System.out.println("Name: " + pizza.getName());
-                    System.out.println("Size: " + pizza.getSize());
-                    System.out.println("Price: $" + pizza.getPrice());
-                    System.out.println("Toppings: " + String.join(", ", pizza.getToppings()));
-
-                    // Update the pizza order using setter methods
-                    pizza.setName("Hawaiian");
-                    pizza.setSize("Large");
-                    pizza.setPrice(16.99);
-                    pizza.setToppings(new String[]{"Pineapple", "Ham", "Bacon"});
-
-                    // Print the updated pizza order
-                    System.out.println("Updated Pizza order:");
-                    System.out.println("Name: " + pizza.getName());
-                    System.out.println("Size: " + pizza.getSize());
-                    System.out.println("Price: $" + pizza.getPrice());
-                    System.out.println("Toppings: " + String.join(", ", pizza.getToppings()));
-
-                    // Send a success response to the client
-                    String response = "HMAC Verified! Order received.";
-                    exchange.sendResponseHeaders(200, response.getBytes().length); // HTTP 200 OK
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
-                } else {
-                    // HMAC verification failed
-                    System.out.println("HMAC Verification Failed! Payload integrity compromised.");
-
-                    // Respond with an error message and HTTP status 403 Forbidden
-                    String response = "HMAC Verification Failed!";
-                    exchange.sendResponseHeaders(403, response.getBytes().length);
-                    OutputStream os = exchange.getResponseBody();
-                    os.write(response.getBytes());
-                    os.close();
+                // Verify the integrity of the whole batch by comparing the raw HMAC digests
+                String receivedHMAC = exchange.getRequestHeaders().getFirst("HMAC");
+                if (!body.verify(receivedHMAC)) {
+                    HMAC_FAILURES.increment();
+                    LOG.warn("Batch rejected hmac=failed remote={}", exchange.getRemoteAddress());
+                    sendResponse(exchange, 403, "HMAC Verification Failed!");
+                    return;
                 }
-            } else {
-                // Respond with HTTP status 405 Method Not Allowed for non-POST requests
-                String response = "Only POST requests are supported.";
-                exchange.sendResponseHeaders(405, response.getBytes().length); // HTTP 405
-                OutputStream os = exchange.getResponseBody();
-                os.write(response.getBytes());
-                os.close();
             }
+            if (rejectReplay(exchange)) {
+                return;
+            }
+
+            if (failure != null) {
+                ERRORS.increment();
+                LOG.warn("Batch rejected hmac=verified status={} error={}", status, failure);
+                sendResponse(exchange, status, failure);
+                return;
+            }
+            // The same path as single orders: forwarded through the gateway, or on disk before it is counted
+            if (orders != null && !orders.isEmpty()) {
+                OrderResponse notStored = storeBatch(orders,
+                        exchange.getRequestHeaders().getFirst(Metrics.SENT_AT_HEADER), exchange.getRemoteAddress());
+                if (notStored != null) {
+                    notStored.send(exchange);
+                    return;
+                }
+            }
+            BATCH_ORDERS.add(summary.getOrders());
+            if (gateway == null) {
+                // Forwarded orders are counted by the Recv consumers
+                STATS.merge(summary);
+            }
+            LOG.info("Batch received hmac=verified orders={} revenue={}", summary.getOrders(), summary.getRevenue());
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            sendResponse(exchange, 200, summary.toJson(true));
         }
 
         /**
-         * Generates an HMAC (SHA256) for the given data using the specified key.
-         * Combines the message (JSON payload) and the key to produce a secure hash.
+         * Sends a complete response with a text body.
          *
-         * @param data The input string (e.g., JSON payload).
-         * @param key  The shared secret key used for HMAC generation.
-         * @return The generated HMAC as a Base64-encoded string.
-         * @throws IOException If an error occurs during HMAC generation.
+         * @param exchange The HTTP exchange to answer
+         * @param status   The HTTP status code
+         * @param response The response body
+         * @throws IOException If the response cannot be sent
          */
-        private String generateHMAC(String data, String key) throws IOException {
-            try {
-                // Create an HMAC instance using SHA256 algorithm
-                Mac mac = Mac.getInstance("HmacSHA256");
-                // Initialize the HMAC with the provided secret key
-                SecretKeySpec secretKeySpec = new SecretKeySpec(key.getBytes(), "HmacSHA256");
-                mac.init(secretKeySpec);
-                // Compute the HMAC for the input data
-                byte[] hmacBytes = mac.doFinal(data.getBytes());
-                // Return the HMAC data
-                return Base64.getEncoder().encodeToString(hmacBytes);
-            } catch (Exception e) {
-                throw new IOException("Error while generating HMAC", e);
-            }
+        private static void sendResponse(HttpExchange exchange, int status, String response) throws IOException {
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(bytes);
+            os.close();
+        }
+    }
+
+    /**
+     * Looks up request headers by name, ignoring case. The JDK server passes its Headers::getFirst,
+     * PizzaNioServer the headers it parsed itself.
+     */
+    @FunctionalInterface
+    interface RequestHeaders {
+
+        /**
+         * Gets the first value of a header.
+         *
+         * @param name The header name
+         * @return The value, or null when the request has no such header
+         */
+        String getFirst(String name);
+    }
+
+    /**
+     * A status code and text body answering a /pizza request, built once for the fixed answers.
+     */
+    static final class OrderResponse {
+
+        /** The HTTP status code */
+        final int status;
+
+        /** The response body, UTF-8 */
+        final byte[] body;
+
+        /**
+         * Constructs an OrderResponse.
+         *
+         * @param status The HTTP status code
+         * @param text   The response body
+         */
+        OrderResponse(int status, String text) {
+            this.status = status;
+            this.body = text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Sends this response on the JDK server.
+         *
+         * @param exchange The HTTP exchange to answer
+         * @throws IOException If the response cannot be sent
+         */
+        void send(HttpExchange exchange) throws IOException {
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(body);
+            os.close();
         }
     }
 }
@@ -1,13 +1,19 @@
 package main;
 
-import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
-import java.util.Base64;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Project: Pizza Integration Lab
@@ -15,107 +21,202 @@ import java.util.Base64;
  * Course: IST 242
  * Author: Xue Thao
  * Date Developed: March 18, 2025,
- * Last Date Changed: April, 2025,
- * Rev: 11 add HMAC functionality
+ * Last Date Changed: October 17, 2026,
+ * Rev: 21 count the unfinished sends instead of keeping their futures, build the URL from a URI
  */
 @SuppressWarnings("ALL")
 public class WebServiceSend {
 
+    private static final Logger LOG = LoggerFactory.getLogger(WebServiceSend.class);
+
     /**
      * The URL of the web service to which the pizza order is sent.
      * Specifies the address of the receiving service.
      */
     private static final String SERVICE_URL = "http://localhost:8000/pizza";
 
+    /**
+     * The URL of the batch endpoint that accepts newline-delimited JSON orders.
+     */
+    private static final String BATCH_URL = "http://localhost:8000/pizza/batch";
+
+    /**
+     * The sizes cycled through by the generated batch orders.
+     */
+    private static final String[] BATCH_SIZES = {"Small", "Medium", "Large"};
+
     /**
      * The shared secret key used to generate the HMAC (SHA256) value.
      * Ensures the integrity of the transmitted message.
      */
     private static final String SECRET_KEY = "shared_secret_key";
 
+    /**
+     * The pre-keyed HMAC engine for SECRET_KEY.
+     */
+    private static final HmacSigner SIGNER = new HmacSigner(SECRET_KEY);
+
     /**
      * Main method to send Pizza Order to the web service.
      * Creates a Pizza Order, generates an HMAC, serializes the order to JSON,
      * and sends both the order and HMAC to the server. Prints the server's response.
+     * Run with "batch [count]" to stream count orders to /pizza/batch instead,
+     * or with "load [rate] [seconds]" to drive /pizza at a target rate and log latency percentiles.
      *
-     * @param args Command-line arguments (not used here).
+     * @param args Command-line arguments, "batch [count]" or "load [rate] [seconds]" select a mode.
      */
     public static void main(String[] args) {
         try {
+            if (args.length > 0 && "batch".equals(args[0])) {
+                sendBatch(args.length > 1 ? Integer.parseInt(args[1]) : 10_000);
+                return;
+            }
+            if (args.length > 0 && "load".equals(args[0])) {
+                runLoad(args.length > 1 ? Integer.parseInt(args[1]) : 1_000,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 10);
+                return;
+            }
+
             // CRUD Create a Pizza object with initial order details
             Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
 
-            // Serialize the Pizza object into JSON format using Gson
-            Gson gson = new Gson();
-            String jsonPayload = gson.toJson(pizza);
-
-            // Generate an HMAC (SHA256) for the JSON payload
-            String hmac = generateHMAC(jsonPayload, SECRET_KEY);
-
-            // Configure and send the HTTP POST request with the JSON payload and HMAC
-            HttpURLConnection con = getHttpURLConnection(hmac);
-            OutputStream os = con.getOutputStream();
-            os.write(jsonPayload.getBytes()); // Write the JSON payload to the request body
-            os.flush(); // Ensure all data is sent
-            os.close();
-
-            // Read the response code from the server
-            int responseCode = con.getResponseCode();
-            System.out.println("Response Code: " + responseCode);
-
-            // Read the server's response from the input stream
-            BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-            String inputLine;
-            StringBuilder response = new StringBuilder();
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine); // Append each line of the response
-            }
-            in.close(); // Close the input stream
+            // Serialize, sign and send the order in the configured format (JSON unless pizza.format=binary)
+            PizzaHttpClient client = new PizzaHttpClient(URI.create(SERVICE_URL), SIGNER, PizzaFormat.configured(), 1);
+            HttpResponse<String> response = client.send(pizza);
 
-            // Print the response from the server
-            System.out.println("Response: " + response);
+            // Log the response code and the response from the server
+            LOG.info("Response code={} body={}", response.statusCode(), response.body());
 
         } catch (Exception e) {
             // Handle exceptions during HMAC generation or HTTP request
-            e.printStackTrace();
+            LOG.error("Sending failed", e);
         }
     }
 
     /**
-     * Generates an HMAC (SHA256) for the given data using the specified secret key.
-     * Combines the message (JSON payload) and the shared key to create a secure hash value.
+     * Load mode: sends orders to /pizza at a fixed target rate for a number of seconds.
+     * Requests are scheduled open-loop and latency is measured from each request's planned start,
+     * so a slow server shows up in the percentiles instead of silently lowering the rate.
+     * pizza.http.concurrency caps the requests in flight (default 64).
      *
-     * @param data The message to hash (e.g., JSON payload).
-     * @param key  The shared secret key used for HMAC generation.
-     * @return The generated HMAC as a Base64-encoded string.
-     * @throws Exception If an error occurs during HMAC generation.
+     * @param rate    The target requests per second
+     * @param seconds The duration of the run
+     * @throws InterruptedException If interrupted while sending
      */
-    private static String generateHMAC(String data, String key) throws Exception {
-        // Create a Mac instance configured with the HmacSHA256 algorithm
-        Mac mac = Mac.getInstance("HmacSHA256");
+    private static void runLoad(int rate, int seconds) throws InterruptedException {
+        int concurrency = Integer.getInteger("pizza.http.concurrency", 64);
+        PizzaHttpClient client = new PizzaHttpClient(URI.create(SERVICE_URL), SIGNER, PizzaFormat.configured(), concurrency);
+        Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder ok = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long total = (long) rate * seconds;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        // Counts the sends that have not finished, the last one to finish completes allDone
+        AtomicLong unfinished = new AtomicLong(total);
+        CompletableFuture<Void> allDone = new CompletableFuture<>();
+        if (total == 0) {
+            allDone.complete(null);
+        }
 
-        // Initialize the Mac instance with the provided secret key
-        SecretKeySpec secretKeySpec = new SecretKeySpec(key.getBytes(), "HmacSHA256");
-        mac.init(secretKeySpec);
+        LOG.info("Sending {} orders at {}/s with concurrency {}", total, rate, concurrency);
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            // Wait for this request's slot in the schedule
+            long planned = start + i * intervalNanos;
+            long wait = planned - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            client.sendAsync(pizza).whenComplete((response, error) -> {
+                latency.record(System.nanoTime() - planned);
+                if (error == null && response.statusCode() == 200) {
+                    ok.increment();
+                } else {
+                    failed.increment();
+                }
+                if (unfinished.decrementAndGet() == 0) {
+                    allDone.complete(null);
+                }
+            });
+        }
+        allDone.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        LOG.info("{} ok, {} failed in {} s: {} orders/s (target {}/s)", ok.sum(), failed.sum(),
+                String.format("%.2f", elapsed), String.format("%.0f", (ok.sum() + failed.sum()) / elapsed), rate);
+        LOG.info("Latency {}", latency.summary(TimeUnit.MICROSECONDS));
+    }
 
-        // Compute the HMAC value for the input data
-        byte[] hmacBytes = mac.doFinal(data.getBytes());
+    /**
+     * Streams count generated orders to /pizza/batch as newline-delimited JSON with chunked transfer encoding.
+     * The batch is signed with a timestamp and nonce so the receiver accepts it only once.
+     * The HMAC header has to be sent before the body, so the batch is generated twice:
+     * once into the HMAC only, then again onto the wire. Neither pass holds the batch in memory.
+     *
+     * @param count The number of orders in the batch
+     * @throws IOException If the request fails
+     */
+    private static void sendBatch(int count) throws IOException {
+        // First pass: hash the timestamp, nonce and batch without keeping the batch
+        String timestamp = Long.toString(System.currentTimeMillis());
+        String nonce = ReplayGuard.newNonce();
+        String hmac;
+        try (HmacSigner.SigningOutputStream signing = SIGNER.newOutputStream(OutputStream.nullOutputStream(),
+                HmacSigner.preamble(timestamp, nonce))) {
+            writeBatch(signing, count);
+            hmac = signing.digestBase64();
+        }
 
-        // Encode the HMAC as a Base64 string for transmission
-        return Base64.getEncoder().encodeToString(hmacBytes);
+        // Second pass: stream the same orders in 64 KB chunks
+        HttpURLConnection con = getHttpURLConnection(BATCH_URL, hmac, "application/x-ndjson");
+        con.setRequestProperty(ReplayGuard.TIMESTAMP_HEADER, timestamp);
+        con.setRequestProperty(ReplayGuard.NONCE_HEADER, nonce);
+        con.setChunkedStreamingMode(64 * 1024);
+        long start = System.nanoTime();
+        try (OutputStream os = new BufferedOutputStream(con.getOutputStream(), 64 * 1024)) {
+            writeBatch(os, count);
+        }
+
+        // Read the summary, or the error message for a rejected batch
+        int responseCode = con.getResponseCode();
+        InputStream responseStream = responseCode < 400 ? con.getInputStream() : con.getErrorStream();
+        String response = new String(responseStream.readAllBytes(), StandardCharsets.UTF_8);
+        responseStream.close();
+        LOG.info("Response code={} orders={} elapsed={} ms body={}", responseCode, count,
+                String.format("%.1f", (System.nanoTime() - start) / 1e6), response);
+    }
+
+    /**
+     * Writes count generated orders, one JSON object per line.
+     *
+     * @param out   The stream to write to
+     * @param count The number of orders
+     * @throws IOException If writing fails
+     */
+    private static void writeBatch(OutputStream out, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Pizza pizza = new Pizza("Pepperoni", BATCH_SIZES[i % BATCH_SIZES.length], 12.99 + (i % 3) * 2,
+                    new String[]{"Pepperoni", "Mushroom", "Sausage"});
+            PizzaCodec.encode(pizza, out);
+            out.write('\n');
+        }
     }
 
     /**
-     * Creates and configures an HttpURLConnection for sending a POST request to the pizza web service.
+     * Creates and configures an HttpURLConnection for sending a streamed POST request to the pizza web service.
      * Adds the generated HMAC as a custom HTTP header to the request.
      *
-     * @param hmac The generated HMAC (SHA256) to include in the request headers.
+     * @param serviceUrl  The endpoint to post to.
+     * @param hmac        The generated HMAC (SHA256) to include in the request headers.
+     * @param contentType The content type of the body.
      * @return A configured HttpURLConnection object ready for sending the request.
      * @throws IOException If there is an error while opening the connection.
      */
-    private static HttpURLConnection getHttpURLConnection(String hmac) throws IOException {
+    private static HttpURLConnection getHttpURLConnection(String serviceUrl, String hmac, String contentType) throws IOException {
         // Create a URL object representing the web service endpoint
-        URL url = new URL(SERVICE_URL);
+        URL url = URI.create(serviceUrl).toURL();
 
         // Open a connection to the URL
         HttpURLConnection con = (HttpURLConnection) url.openConnection();
@@ -124,7 +225,7 @@ public class WebServiceSend {
         con.setRequestMethod("POST");
 
         // Set request headers, including the Content-Type and the HMAC
-        con.setRequestProperty("Content-Type", "application/json"); // Indicate JSON payload
+        con.setRequestProperty("Content-Type", contentType); // Indicate the payload format
         con.setRequestProperty("HMAC", hmac); // Add the HMAC to the headers for integrity verification
 
         // Enable input/output streams for sending and receiving data
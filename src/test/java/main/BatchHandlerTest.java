@@ -0,0 +1,146 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: /pizza/batch Handler Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 batches past pizza.batch.maxOrders
+ */
+package main;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Posts newline-delimited batches to /pizza/batch on an in-process server with a journal and checks the answers:
+ * a signed batch is priced and summed, a batch with a bad HMAC gets 403 whatever it holds, and malformed,
+ * off-menu and replayed batches are turned away only once the signature is verified. A batch holding more
+ * than pizza.batch.maxOrders orders is turned away before that.
+ */
+class BatchHandlerTest {
+
+    private static final String ORDER = "{\"name\":\"Pepperoni\",\"size\":\"Medium\",\"price\":1.00,\"toppings\":[\"Pepperoni\"]}";
+    private static final String OFF_MENU = "{\"name\":\"Unicorn\",\"size\":\"Medium\",\"price\":1.00,\"toppings\":[\"Unicorn\"]}";
+    private static final String MALFORMED = "{\"name\":\"Broken\",\"price\":\"abc\"}";
+
+    /** pizza.batch.maxOrders for this server */
+    private static final int MAX_ORDERS = 3;
+
+    private static final HmacSigner SIGNER = new HmacSigner("shared_secret_key");
+    private static final HmacSigner WRONG_KEY = new HmacSigner("not_the_key");
+
+    @TempDir
+    static Path journalDir;
+
+    private static HttpServer server;
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        // Journaled orders are held until the HMAC is verified, the path with the most to check
+        System.setProperty("pizza.journal.dir", journalDir.toString());
+        System.setProperty("pizza.batch.maxOrders", Integer.toString(MAX_ORDERS));
+        server = WebServiceRecv.startServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void signedBatchIsPricedFromTheMenuAndSummed() throws Exception {
+        HttpResponse<String> response = post(SIGNER, ORDER + "\n" + ORDER + "\n");
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertTrue(response.body().contains("\"orders\":2"), response.body());
+        // Medium 12.99 plus Pepperoni 1.50, twice, whatever price the client sent
+        assertTrue(response.body().contains("\"revenue\":28.98"), response.body());
+    }
+
+    @Test
+    void badSignatureIsRejectedWhateverTheBatchHolds() throws Exception {
+        assertEquals(403, post(WRONG_KEY, ORDER + "\n" + ORDER).statusCode());
+        assertEquals(403, post(WRONG_KEY, ORDER + "\n" + OFF_MENU + "\n" + ORDER).statusCode());
+        assertEquals(403, post(WRONG_KEY, ORDER + "\n" + MALFORMED + "\n" + ORDER).statusCode());
+    }
+
+    @Test
+    void signedBatchWithAnOffMenuOrderIsRejected() throws Exception {
+        HttpResponse<String> response = post(SIGNER, ORDER + "\n" + OFF_MENU + "\n" + ORDER);
+
+        assertEquals(422, response.statusCode());
+        assertTrue(response.body().startsWith("Order #2 "), response.body());
+    }
+
+    @Test
+    void signedBatchWithAMalformedOrderIsRejected() throws Exception {
+        HttpResponse<String> response = post(SIGNER, ORDER + "\n" + MALFORMED + "\n" + ORDER);
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().startsWith("Malformed order #2"), response.body());
+    }
+
+    @Test
+    void replayedBatchIsRejected() throws Exception {
+        HttpRequest request = signed(SIGNER, ORDER);
+
+        assertEquals(200, CLIENT.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(409, CLIENT.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    void batchHoldingTooManyOrdersIsRejectedEvenUnsigned() throws Exception {
+        String full = (ORDER + "\n").repeat(MAX_ORDERS);
+
+        assertEquals(200, post(SIGNER, full).statusCode());
+        assertEquals(413, post(SIGNER, full + ORDER).statusCode());
+        assertEquals(413, post(WRONG_KEY, full + ORDER).statusCode());
+    }
+
+    @Test
+    void onlyPostIsAccepted() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri()).GET().build();
+
+        assertEquals(405, CLIENT.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private static HttpResponse<String> post(HmacSigner signer, String body) throws Exception {
+        return CLIENT.send(signed(signer, body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Builds a batch request with a fresh timestamp and nonce, signed the way WebServiceSend signs it.
+     */
+    private static HttpRequest signed(HmacSigner signer, String body) {
+        String timestamp = Long.toString(System.currentTimeMillis());
+        String nonce = ReplayGuard.newNonce();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(uri())
+                .header(ReplayGuard.TIMESTAMP_HEADER, timestamp)
+                .header(ReplayGuard.NONCE_HEADER, nonce)
+                .header("HMAC", signer.signBase64(HmacSigner.preamble(timestamp, nonce), bytes))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(bytes))
+                .build();
+    }
+
+    private static URI uri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/pizza/batch");
+    }
+}
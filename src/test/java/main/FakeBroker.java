@@ -0,0 +1,389 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: In-Process AMQP Stand-In for Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 2 deliver messages to consumers and record their acks and nacks
+ */
+package main;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FakeBroker hands out connections whose channels confirm every publish without a network, so PizzaPublisher
+ * and the classes built on it can be tested in-process. Confirms arrive in publish order on a thread of their
+ * own, as they do from a real broker; the first ackLimit messages are acked and the rest nacked. Confirms can
+ * be held back and released later, and open channels can be closed as a channel error would close them.
+ * Messages can also be delivered to the consumers of a queue, round robin over their channels and in order
+ * on each channel, and every ack and nack the consumers send is recorded. There is no prefetch limit.
+ * Only the calls PizzaPublisher and PizzaConsumerPool make are answered, every other call returns a default value.
+ */
+final class FakeBroker implements AutoCloseable {
+
+    /** The bodies of every published message, in publish order */
+    private final List<byte[]> published = Collections.synchronizedList(new ArrayList<>());
+
+    /** Listeners registered for connection.blocked */
+    private final List<BlockedListener> blockedListeners = new CopyOnWriteArrayList<>();
+
+    /** Sends the confirms in publish order */
+    private final ExecutorService confirmer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fake-broker-confirms");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The number of messages acked before every later one is nacked */
+    private final int ackLimit;
+
+    /** The number of messages published so far */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** Confirms held back while holding, guarded by itself */
+    private final List<Runnable> held = new ArrayList<>();
+
+    /** Whether confirms are held back, guarded by held */
+    private boolean holding;
+
+    /** Closes each open channel and notifies its shutdown listeners */
+    private final List<Runnable> channelClosers = new CopyOnWriteArrayList<>();
+
+    /** Every consumer registered with basicConsume */
+    private final List<FakeConsumer> consumers = new CopyOnWriteArrayList<>();
+
+    /** The number of messages delivered so far, picks the next consumer */
+    private final AtomicInteger delivered = new AtomicInteger();
+
+    /** Every ack and nack, in the order they were sent */
+    private final List<String> settlements = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Constructs a broker that acks every message.
+     */
+    FakeBroker() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a broker that acks the first ackLimit messages and nacks the rest.
+     *
+     * @param ackLimit The number of messages acked
+     */
+    FakeBroker(int ackLimit) {
+        this.ackLimit = ackLimit;
+    }
+
+    /**
+     * Gets a factory whose connections publish to this broker.
+     *
+     * @return The factory
+     */
+    ConnectionFactory factory() {
+        return new ConnectionFactory() {
+            @Override
+            public Connection newConnection() {
+                return newConnectionProxy();
+            }
+
+            @Override
+            public Connection newConnection(ExecutorService executor) {
+                return newConnectionProxy();
+            }
+        };
+    }
+
+    /**
+     * Gets the bodies published so far as UTF-8 strings.
+     *
+     * @return The bodies in publish order
+     */
+    List<String> publishedBodies() {
+        List<String> bodies = new ArrayList<>();
+        synchronized (published) {
+            for (byte[] body : published) {
+                bodies.add(new String(body, StandardCharsets.UTF_8));
+            }
+        }
+        return bodies;
+    }
+
+    /**
+     * Delivers a message to the next consumer of a queue, on that consumer's delivery thread.
+     *
+     * @param queue The queue the message is on
+     * @param body  The message body, UTF-8
+     */
+    void deliver(String queue, String body) {
+        List<FakeConsumer> queueConsumers = new ArrayList<>();
+        for (FakeConsumer consumer : consumers) {
+            if (consumer.queue.equals(queue)) {
+                queueConsumers.add(consumer);
+            }
+        }
+        if (queueConsumers.isEmpty()) {
+            throw new IllegalStateException("Nobody consumes " + queue);
+        }
+        queueConsumers.get(Math.floorMod(delivered.getAndIncrement(), queueConsumers.size()))
+                .deliver(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the acks and nacks sent so far, such as "ack 5 multiple" or "nack 3 requeue".
+     *
+     * @return The settlements in the order they were sent
+     */
+    List<String> settlements() {
+        synchronized (settlements) {
+            return new ArrayList<>(settlements);
+        }
+    }
+
+    /**
+     * Holds back every confirm until release().
+     */
+    void holdConfirms() {
+        synchronized (held) {
+            holding = true;
+        }
+    }
+
+    /**
+     * Sends the held confirms in publish order and stops holding.
+     */
+    void releaseConfirms() {
+        synchronized (held) {
+            holding = false;
+            for (Runnable confirm : held) {
+                confirmer.execute(confirm);
+            }
+            held.clear();
+        }
+    }
+
+    /**
+     * Closes every open channel, the way the broker closes a channel after a channel error.
+     * Confirms still held for those channels are dropped.
+     */
+    void closeChannels() {
+        synchronized (held) {
+            held.clear();
+        }
+        for (Runnable closer : channelClosers) {
+            closer.run();
+        }
+        channelClosers.clear();
+    }
+
+    /**
+     * Sends connection.blocked to every connection listener.
+     *
+     * @param reason The resource alarm
+     */
+    void block(String reason) throws Exception {
+        for (BlockedListener listener : blockedListeners) {
+            listener.handleBlocked(reason);
+        }
+    }
+
+    /**
+     * Sends connection.unblocked to every connection listener.
+     */
+    void unblock() throws Exception {
+        for (BlockedListener listener : blockedListeners) {
+            listener.handleUnblocked();
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        confirmer.shutdown();
+        confirmer.awaitTermination(5, TimeUnit.SECONDS);
+        for (FakeConsumer consumer : consumers) {
+            consumer.deliverer.shutdown();
+            consumer.deliverer.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private Connection newConnectionProxy() {
+        boolean[] open = {true};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "createChannel" -> newChannelProxy();
+                    case "addBlockedListener" -> {
+                        blockedListeners.add((BlockedListener) args[0]);
+                        yield null;
+                    }
+                    case "isOpen" -> open[0];
+                    case "close" -> {
+                        open[0] = false;
+                        yield null;
+                    }
+                    default -> defaultValue(method, proxy, args);
+                });
+    }
+
+    private Channel newChannelProxy() {
+        AtomicLong nextSeqNo = new AtomicLong(1);
+        List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+        List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+        AtomicBoolean open = new AtomicBoolean(true);
+        channelClosers.add(() -> {
+            open.set(false);
+            ShutdownSignalException cause = new ShutdownSignalException(false, true, null, null);
+            for (ShutdownListener listener : shutdownListeners) {
+                listener.shutdownCompleted(cause);
+            }
+        });
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "addConfirmListener" -> {
+                        confirmListeners.add((ConfirmListener) args[0]);
+                        yield null;
+                    }
+                    case "addShutdownListener" -> {
+                        shutdownListeners.add((ShutdownListener) args[0]);
+                        yield null;
+                    }
+                    case "getNextPublishSeqNo" -> nextSeqNo.get();
+                    case "basicPublish" -> {
+                        if (!open.get()) {
+                            throw new AlreadyClosedException(new ShutdownSignalException(false, true, null, null));
+                        }
+                        long seqNo = nextSeqNo.getAndIncrement();
+                        published.add((byte[]) args[args.length - 1]);
+                        boolean ack = count.incrementAndGet() <= ackLimit;
+                        confirm(() -> {
+                            for (ConfirmListener listener : confirmListeners) {
+                                try {
+                                    if (ack) {
+                                        listener.handleAck(seqNo, false);
+                                    } else {
+                                        listener.handleNack(seqNo, false);
+                                    }
+                                } catch (Exception e) {
+                                    throw new IllegalStateException(e);
+                                }
+                            }
+                        });
+                        yield null;
+                    }
+                    case "basicConsume" -> {
+                        // Every overload PizzaConsumerPool uses ends with the deliver and cancel callbacks
+                        String consumerTag = "fake-consumer-" + consumers.size();
+                        consumers.add(new FakeConsumer((String) args[0], consumerTag,
+                                (DeliverCallback) args[args.length - 2]));
+                        yield consumerTag;
+                    }
+                    case "basicAck" -> {
+                        settlements.add("ack " + args[0] + ((Boolean) args[1] ? " multiple" : ""));
+                        yield null;
+                    }
+                    case "basicNack" -> {
+                        settlements.add("nack " + args[0] + ((Boolean) args[1] ? " multiple" : "")
+                                + ((Boolean) args[2] ? " requeue" : " drop"));
+                        yield null;
+                    }
+                    case "isOpen" -> open.get();
+                    default -> defaultValue(method, proxy, args);
+                });
+    }
+
+    /**
+     * Sends a confirm now, or keeps it while confirms are held.
+     */
+    private void confirm(Runnable confirm) {
+        synchronized (held) {
+            if (holding) {
+                held.add(confirm);
+                return;
+            }
+        }
+        confirmer.execute(confirm);
+    }
+
+    /**
+     * One basicConsume registration: its deliveries run in order on a thread of its own, as they do on a channel.
+     */
+    private static final class FakeConsumer {
+        private final String queue;
+        private final String consumerTag;
+        private final DeliverCallback callback;
+        private final AtomicLong nextTag = new AtomicLong(1);
+        private final ExecutorService deliverer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fake-broker-deliveries");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private FakeConsumer(String queue, String consumerTag, DeliverCallback callback) {
+            this.queue = queue;
+            this.consumerTag = consumerTag;
+            this.callback = callback;
+        }
+
+        private void deliver(byte[] body) {
+            Envelope envelope = new Envelope(nextTag.getAndIncrement(), false, "", queue);
+            Delivery delivery = new Delivery(envelope, null, body);
+            deliverer.execute(() -> {
+                try {
+                    callback.handle(consumerTag, delivery);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Answers the calls the fakes do not model: Object methods as usual, everything else with a zero value.
+     */
+    private static Object defaultValue(Method method, Object proxy, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "FakeBroker " + method.getDeclaringClass().getSimpleName();
+            default:
+                break;
+        }
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: FlowController Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the additive increase and multiplicative decrease of FlowController against a PizzaPublisher
+ * on a FakeBroker, and that producers stop while the broker blocks the connection.
+ */
+class FlowControllerTest {
+
+    /** Long enough that the periodic adjustment never runs during a test that does not want it */
+    private static final long NO_ADJUSTMENT = 60_000;
+
+    @Test
+    void blockCutsTheRateAndHoldsProducersUntilUnblocked() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100);
+             FlowController flow = new FlowController(publisher, 1_000, 100, 10_000, 100, 0.5, 0.5, 50,
+                     NO_ADJUSTMENT, 1_000)) {
+            broker.block("memory alarm");
+
+            assertTrue(flow.isBlocked());
+            assertEquals(500, flow.getRate());
+
+            CountDownLatch acquired = new CountDownLatch(1);
+            Thread producer = new Thread(() -> {
+                try {
+                    flow.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            assertFalse(acquired.await(200, TimeUnit.MILLISECONDS), "acquire must wait while blocked");
+
+            broker.unblock();
+
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+            assertFalse(flow.isBlocked());
+            producer.join();
+        }
+    }
+
+    @Test
+    void repeatedCutsStopAtTheMinimumRate() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100);
+             FlowController flow = new FlowController(publisher, 1_000, 100, 10_000, 100, 0.5, 0.5, 50,
+                     NO_ADJUSTMENT, 1_000)) {
+            for (int i = 0; i < 10; i++) {
+                broker.block("memory alarm");
+            }
+
+            assertEquals(100, flow.getRate());
+        }
+    }
+
+    @Test
+    void throttledProducerRaisesTheRateStepByStep() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100);
+             FlowController flow = new FlowController(publisher, 100, 100, 400, 50, 0.5, 0.5, 50, 50, 0)) {
+            // At 100 msg/s without burst, every acquire waits for its token, so the bucket is the limit
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(600);
+            while (System.nanoTime() < end) {
+                flow.acquire();
+            }
+
+            double rate = flow.getRate();
+            assertTrue(rate > 100, "rate should have grown, was " + rate);
+            assertEquals(0, (rate - 100) % 50, "the rate grows in steps of increase");
+            assertTrue(rate <= 400);
+        }
+    }
+
+    @Test
+    void idleProducerDoesNotRaiseTheRate() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100);
+             FlowController flow = new FlowController(publisher, 100, 100, 400, 50, 0.5, 0.5, 50, 20, 0)) {
+            Thread.sleep(200);
+
+            assertEquals(100, flow.getRate());
+        }
+    }
+
+    @Test
+    void nackCutsTheRateOnce() throws Exception {
+        try (FakeBroker broker = new FakeBroker(0);
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100);
+             FlowController flow = new FlowController(publisher, 1_000, 100, 10_000, 100, 0.5, 0.5, 50, 20, 1_000)) {
+            CompletableFuture<Void> confirm = publisher.publishConfirmed(null, new byte[]{1});
+            assertThrows(ExecutionException.class, () -> confirm.get(5, TimeUnit.SECONDS));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (flow.getRate() == 1_000 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // Later intervals see no new nack and nothing throttled, so the rate holds
+            Thread.sleep(100);
+
+            assertEquals(500, flow.getRate());
+            assertEquals(1, publisher.getNacked());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: HmacSigner Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks HmacSigner against a published HMAC-SHA256 vector, and that every way of signing the same bytes,
+ * whole, as a range, from a buffer or through the streams, gives the same digest.
+ */
+class HmacSignerTest {
+
+    private static final HmacSigner SIGNER = new HmacSigner("shared_secret_key");
+    private static final byte[] BODY = "{\"name\":\"Pepperoni\",\"size\":\"Medium\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void signMatchesTheRfc4231Vector() {
+        // RFC 4231 test case 2
+        byte[] digest = new HmacSigner("Jefe").sign("what do ya want for nothing?".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843", HexFormat.of().formatHex(digest));
+    }
+
+    @Test
+    void rangeAndBase64AgreeWithTheWholeMessage() {
+        byte[] padded = new byte[BODY.length + 8];
+        System.arraycopy(BODY, 0, padded, 4, BODY.length);
+
+        assertArrayEquals(SIGNER.sign(BODY), SIGNER.sign(padded, 4, BODY.length));
+        assertTrue(SIGNER.verify(BODY, SIGNER.signBase64(BODY)));
+    }
+
+    @Test
+    void preambleIsSignedAheadOfTheBody() {
+        byte[] preamble = HmacSigner.preamble("1700000000000", "abc");
+        assertEquals("1700000000000\nabc\n", new String(preamble, StandardCharsets.UTF_8));
+        assertEquals(0, HmacSigner.preamble(null, null).length);
+
+        String hmac = SIGNER.signBase64(preamble, BODY);
+        assertTrue(SIGNER.verify(concat(preamble, BODY), hmac));
+        assertFalse(SIGNER.verify(BODY, hmac));
+        assertFalse(SIGNER.verify(concat(HmacSigner.preamble("1700000000001", "abc"), BODY), hmac));
+    }
+
+    @Test
+    void bufferVerifyLeavesThePositionAlone() {
+        byte[] preamble = HmacSigner.preamble("1700000000000", "abc");
+        String hmac = SIGNER.signBase64(preamble, BODY);
+        ByteBuffer direct = ByteBuffer.allocateDirect(BODY.length + 3);
+        direct.put(new byte[3]).put(BODY).flip().position(3);
+
+        assertTrue(SIGNER.verify(preamble, direct, hmac));
+        assertEquals(3, direct.position());
+        assertTrue(SIGNER.verify(preamble, direct, hmac));
+    }
+
+    @Test
+    void malformedOrMissingHmacDoesNotVerify() {
+        assertFalse(SIGNER.verify(BODY, null));
+        assertFalse(SIGNER.verify(BODY, "not base64!"));
+        assertFalse(SIGNER.verify(BODY, ""));
+        assertFalse(SIGNER.verify(BODY, new HmacSigner("other_key").signBase64(BODY)));
+        // The header value may carry surrounding whitespace
+        assertTrue(SIGNER.verify(BODY, " " + SIGNER.signBase64(BODY) + "\n"));
+    }
+
+    @Test
+    void streamsHashWhatPassesThroughThem() throws Exception {
+        byte[] preamble = HmacSigner.preamble("1700000000000", "abc");
+        String expected = SIGNER.signBase64(preamble, BODY);
+
+        try (HmacSigner.SigningInputStream in = SIGNER.newInputStream(new ByteArrayInputStream(BODY), preamble)) {
+            assertEquals(1, in.read(new byte[1], 0, 1));
+            // Skipped bytes are hashed as well
+            assertEquals(5, in.skip(5));
+            assertEquals(BODY.length - 6, in.readAllBytes().length);
+            assertTrue(in.verify(expected));
+        }
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (HmacSigner.SigningOutputStream out = SIGNER.newOutputStream(sink, preamble)) {
+            out.write(BODY[0]);
+            out.write(BODY, 1, BODY.length - 1);
+            assertEquals(expected, out.digestBase64());
+        }
+        assertArrayEquals(BODY, sink.toByteArray());
+    }
+
+    @Test
+    void streamClosedBeforeItsDigestHasNone() throws Exception {
+        HmacSigner.SigningInputStream in = SIGNER.newInputStream(new ByteArrayInputStream(BODY));
+        in.close();
+        assertThrows(IllegalStateException.class, in::digest);
+
+        HmacSigner.SigningOutputStream out = SIGNER.newOutputStream(OutputStream.nullOutputStream());
+        out.close();
+        assertThrows(IllegalStateException.class, out::digest);
+    }
+
+    @Test
+    void pooledMacsGiveTheSameDigestOnEveryThread() throws Exception {
+        byte[] expected = SIGNER.sign(BODY);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> digests = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                digests.add(pool.submit(() -> SIGNER.sign(BODY)));
+            }
+            for (Future<byte[]> digest : digests) {
+                assertArrayEquals(expected, digest.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: MenuPricer Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Prices orders with MenuPricer: the menu price replaces the client's, orders off the menu keep their price and
+ * are rejected, the shared receiver helpers work with and without a menu, and a changed menu file is picked up
+ * while one that does not compile is ignored.
+ */
+class MenuPricerTest {
+
+    private static final String MENU = "{\"sizes\":{\"Small\":10.00,\"Large\":15.00},"
+            + "\"toppingScale\":{\"Large\":1.5},"
+            + "\"toppings\":{\"Pepperoni\":1.00,\"Mushroom\":0.50,\"Ham\":1.00,\"Pineapple\":1.00,\"Bacon\":2.00},"
+            + "\"maxToppings\":3,"
+            + "\"combos\":[{\"name\":\"Hawaiian\",\"toppings\":[\"Pineapple\",\"Ham\",\"Bacon\"],"
+            + "\"prices\":{\"Small\":12.00,\"Large\":18.00}}]}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void applyReplacesTheClientPrice() {
+        MenuPricer pricer = new MenuPricer(PizzaMenu.parse(new StringReader(MENU)));
+        Pizza pizza = new Pizza("Pepperoni", "Large", 1.00, new String[]{"Pepperoni", "Mushroom"});
+
+        // Large 15.00, toppings at 1.5 times their price
+        assertEquals(1725, pricer.apply(pizza));
+        assertEquals(17.25, pizza.getPrice());
+    }
+
+    @Test
+    void orderOffTheMenuKeepsItsPriceAndIsRejected() {
+        MenuPricer pricer = new MenuPricer(PizzaMenu.parse(new StringReader(MENU)));
+        Pizza unknownSize = new Pizza("Plain", "Medium", 3.00, new String[0]);
+        Pizza unknownTopping = new Pizza("Odd", "Small", 3.00, new String[]{"Pepperoni", "Unicorn"});
+        Pizza tooMany = new Pizza("Loaded", "Small", 3.00, new String[]{"Pepperoni", "Mushroom", "Ham", "Bacon"});
+
+        assertEquals("size is not on the menu", MenuPricer.priceOrder(pricer, unknownSize));
+        assertEquals("a topping is not on the menu", MenuPricer.priceOrder(pricer, unknownTopping));
+        assertEquals("too many toppings", MenuPricer.priceOrder(pricer, tooMany));
+        assertEquals(3.00, unknownSize.getPrice());
+        assertEquals(3.00, unknownTopping.getPrice());
+        assertEquals(3.00, tooMany.getPrice());
+    }
+
+    @Test
+    void withoutAMenuOrdersKeepTheirPrice() {
+        Pizza pizza = new Pizza("Plain", "Medium", 3.00, new String[]{"Unicorn"});
+
+        assertNull(MenuPricer.priceOrder(null, pizza));
+        assertEquals(3.00, pizza.getPrice());
+    }
+
+    @Test
+    void updatedOrderIsPricedAsTheComboOrAtTheFallback() {
+        MenuPricer pricer = new MenuPricer(PizzaMenu.parse(new StringReader(MENU)));
+        Pizza priced = new Pizza("Pepperoni", "Small", 11.00, new String[]{"Pepperoni"});
+        Pizza unpriced = new Pizza("Pepperoni", "Small", 11.00, new String[]{"Pepperoni"});
+
+        MenuPricer.updateOrder(pricer, priced, 99.99);
+        MenuPricer.updateOrder(null, unpriced, 99.99);
+
+        assertEquals("Hawaiian", priced.getName());
+        assertEquals("Large", priced.getSize());
+        assertEquals(3, priced.getToppings().length);
+        assertEquals(18.00, priced.getPrice());
+        assertEquals(99.99, unpriced.getPrice());
+    }
+
+    @Test
+    void changedMenuFileIsReloaded() throws Exception {
+        Path file = Files.writeString(dir.resolve("menu.json"), MENU, StandardCharsets.UTF_8);
+        try (MenuPricer pricer = new MenuPricer(file, 1)) {
+            Pizza pizza = new Pizza("Plain", "Small", 0, new String[0]);
+            assertEquals(1000, pricer.apply(pizza));
+
+            // A menu that does not compile is ignored
+            rewrite(file, "{\"sizes\":", 10);
+            Thread.sleep(1_500);
+            assertEquals(1000, pricer.apply(pizza));
+
+            rewrite(file, MENU.replace("\"Small\":10.00", "\"Small\":11.00"), 20);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pricer.apply(pizza) == 1000 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(1100, pricer.apply(pizza));
+        }
+    }
+
+    @Test
+    void menuFileThatDoesNotCompileIsRefused() throws Exception {
+        Path file = Files.writeString(dir.resolve("menu.json"), "{\"sizes\":{\"Huge\":30.00},\"toppings\":{}}",
+                StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> new MenuPricer(file, 0));
+    }
+
+    /**
+     * Replaces the file and moves its modification time on, so the change is seen whatever the clock resolution.
+     */
+    private static void rewrite(Path file, String menu, int secondsLater) throws IOException {
+        FileTime loaded = Files.getLastModifiedTime(file);
+        Files.writeString(file, menu, StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(loaded.toMillis() + TimeUnit.SECONDS.toMillis(secondsLater)));
+    }
+}
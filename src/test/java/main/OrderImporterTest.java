@@ -0,0 +1,114 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: OrderImporter Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Imports JSON-lines files through a PizzaPublisher on a FakeBroker and checks the checkpoint: an import stopped
+ * by a nack resumes after the last confirmed line, and a finished import removes its checkpoint.
+ */
+class OrderImporterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void importPublishesEveryOrderAndRemovesTheCheckpoint() throws Exception {
+        List<String> lines = lines(10);
+        Path file = write(lines);
+
+        try (FakeBroker broker = new FakeBroker()) {
+            assertEquals(10, importFile(broker, file));
+            assertEquals(lines, broker.publishedBodies());
+        }
+        assertFalse(Files.exists(OrderImporter.checkpointOf(file)));
+    }
+
+    @Test
+    void nackedImportResumesAfterTheLastConfirmedLine() throws Exception {
+        List<String> lines = lines(10);
+        Path file = write(lines);
+        Path checkpoint = OrderImporter.checkpointOf(file);
+
+        // The broker confirms the first four orders and nacks the rest
+        try (FakeBroker broker = new FakeBroker(4)) {
+            assertThrows(IOException.class, () -> importFile(broker, file));
+        }
+        long firstUnconfirmed = 4L * (lines.get(0).length() + 1);
+        assertEquals(firstUnconfirmed, OrderImporter.readCheckpoint(checkpoint, Files.size(file)));
+
+        try (FakeBroker broker = new FakeBroker()) {
+            assertEquals(6, importFile(broker, file));
+            assertEquals(lines.subList(4, 10), broker.publishedBodies());
+        }
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void checkpointOfAnotherFileIsIgnored() throws Exception {
+        List<String> lines = lines(3);
+        Path file = write(lines);
+        OrderImporter.writeCheckpoint(OrderImporter.checkpointOf(file), 5, Files.size(file) + 1);
+
+        assertEquals(0, OrderImporter.readCheckpoint(OrderImporter.checkpointOf(file), Files.size(file)));
+        try (FakeBroker broker = new FakeBroker()) {
+            assertEquals(3, importFile(broker, file));
+        }
+    }
+
+    @Test
+    void linesThatAreNotOrdersAreSkipped() throws Exception {
+        List<String> lines = lines(2);
+        Path file = write(List.of(lines.get(0), "", "{bad", "[1,2]", "{\"price\":\"abc\"}", lines.get(1)));
+
+        try (FakeBroker broker = new FakeBroker()) {
+            assertEquals(2, importFile(broker, file));
+            assertEquals(lines, broker.publishedBodies());
+        }
+    }
+
+    /**
+     * Imports a file one line per chunk, so the checkpoint can stop after any line.
+     */
+    private static long importFile(FakeBroker broker, Path file) throws Exception {
+        try (PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100)) {
+            return new OrderImporter(publisher, PizzaFormat.JSON, 1, 1).importFile(file);
+        }
+    }
+
+    private Path write(List<String> lines) throws IOException {
+        return Files.writeString(dir.resolve("orders.jsonl"), String.join("\n", lines) + "\n", StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds count orders whose lines all have the same length.
+     */
+    private static List<String> lines(int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Pizza pizza = new Pizza(String.format("Order %03d", i), "Medium", 14.99, new String[]{"Pepperoni"});
+            lines.add(new String(PizzaCodec.encode(pizza), StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: OrderJournal Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes orders to an OrderJournal, reopens it and checks what replay reads back, including segments that
+ * were damaged or cut off the way a crash leaves them.
+ */
+class OrderJournalTest {
+
+    /** The record header: payload length, CRC32C and type */
+    private static final int HEADER_BYTES = 9;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayReadsBackEveryOrderInItsFormat() throws Exception {
+        Pizza binary = new Pizza("Hawaiian", "Large", 17.25, new String[]{"Ham", "Pineapple"});
+        List<byte[]> json = orders(5);
+        try (OrderJournal journal = new OrderJournal(dir, 64 * 1024, 4, 100)) {
+            journal.appendAll(Collections.nCopies(3, PizzaFormat.JSON), json.subList(0, 3)).get(5, TimeUnit.SECONDS);
+            journal.append(PizzaFormat.BINARY, PizzaFormat.BINARY.encode(binary)).get(5, TimeUnit.SECONDS);
+            journal.appendAll(Collections.nCopies(2, PizzaFormat.JSON), json.subList(3, 5)).get(5, TimeUnit.SECONDS);
+        }
+
+        List<PizzaFormat> formats = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        try (OrderJournal journal = new OrderJournal(dir, 64 * 1024, 4, 100)) {
+            assertEquals(6, journal.replay(1, (format, payload) -> {
+                formats.add(format);
+                payloads.add(payload);
+            }));
+        }
+
+        assertEquals(List.of(PizzaFormat.JSON, PizzaFormat.JSON, PizzaFormat.JSON, PizzaFormat.BINARY,
+                PizzaFormat.JSON, PizzaFormat.JSON), formats);
+        assertArrayEquals(json.get(0), payloads.get(0));
+        assertArrayEquals(json.get(4), payloads.get(5));
+        assertEquals("Hawaiian", PizzaFormat.BINARY.decode(payloads.get(3)).getName());
+    }
+
+    @Test
+    void replaySpansEverySegment() throws Exception {
+        List<byte[]> payloads = orders(200);
+        try (OrderJournal journal = new OrderJournal(dir, 2048, 16, 100)) {
+            for (byte[] payload : payloads) {
+                journal.append(PizzaFormat.JSON, payload);
+            }
+            journal.append(PizzaFormat.JSON, payloads.get(0)).get(5, TimeUnit.SECONDS);
+        }
+        assertTrue(segments().size() > 2, "the orders should fill several segments");
+
+        try (OrderJournal journal = new OrderJournal(dir, 2048, 16, 100)) {
+            OrderStats stats = new OrderStats();
+            assertEquals(201, journal.replayInto(stats));
+        }
+    }
+
+    @Test
+    void replayStopsAtADamagedRecord() throws Exception {
+        List<byte[]> payloads = orders(5);
+        writeAndClose(payloads);
+        Path segment = segments().get(0);
+
+        // Flip a byte in the payload of the third record, its checksum no longer matches
+        long third = 2L * (HEADER_BYTES + payloads.get(0).length);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long position = third + HEADER_BYTES + 2;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x20);
+        }
+
+        assertEquals(2, replayCount());
+    }
+
+    @Test
+    void replayIgnoresARecordCutOffByACrash() throws Exception {
+        List<byte[]> payloads = orders(5);
+        writeAndClose(payloads);
+        Path segment = segments().get(0);
+
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        assertEquals(4, replayCount());
+    }
+
+    @Test
+    void closeTruncatesTheLastSegmentAndDeletesAnEmptyOne() throws Exception {
+        List<byte[]> payloads = orders(3);
+        writeAndClose(payloads);
+
+        List<Path> segments = segments();
+        assertEquals(1, segments.size());
+        assertEquals(3L * (HEADER_BYTES + payloads.get(0).length), Files.size(segments.get(0)));
+
+        // Opening and closing without an order leaves no new segment behind
+        new OrderJournal(dir, 64 * 1024, 4, 100).close();
+        assertEquals(segments, segments());
+    }
+
+    @Test
+    void retentionKeepsOnlyTheNewestSegments() throws Exception {
+        List<byte[]> payloads = orders(300);
+        try (OrderJournal journal = new OrderJournal(dir, 2048, 1, 0, 3)) {
+            for (byte[] payload : payloads) {
+                journal.append(PizzaFormat.JSON, payload).get(5, TimeUnit.SECONDS);
+            }
+        }
+
+        assertTrue(segments().size() <= 3, "kept " + segments());
+    }
+
+    private void writeAndClose(List<byte[]> payloads) throws Exception {
+        try (OrderJournal journal = new OrderJournal(dir, 64 * 1024, 4, 100)) {
+            journal.appendAll(Collections.nCopies(payloads.size(), PizzaFormat.JSON), payloads).get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private long replayCount() throws IOException {
+        try (OrderJournal journal = new OrderJournal(dir, 64 * 1024, 4, 100)) {
+            return journal.replay(1, (format, payload) -> PizzaFormat.JSON.decode(payload));
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Encodes count orders of the same encoded length.
+     */
+    private static List<byte[]> orders(int count) {
+        List<byte[]> payloads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Pizza pizza = new Pizza(String.format("Order %05d", i), "Medium", 14.99, new String[]{"Pepperoni"});
+            payloads.add(PizzaCodec.encode(pizza));
+        }
+        assertEquals(new String(payloads.get(0), StandardCharsets.UTF_8).length(),
+                new String(payloads.get(count - 1), StandardCharsets.UTF_8).length());
+        return payloads;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: PizzaBinaryCodec Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the binary order format: the exact bytes of a dictionary coded order, round trips of literal and
+ * missing fields, and that truncated or malformed messages are rejected with IllegalArgumentException.
+ */
+class PizzaBinaryCodecTest {
+
+    @Test
+    void dictionaryEntriesAreWrittenAsTheirCodes() {
+        Pizza pizza = new Pizza("A", "Medium", 1.0, new String[]{"Pepperoni", "Garlic"});
+
+        byte[] expected = {
+                1,                      // version
+                7,                      // name, size and toppings present
+                1, 'A',                 // name
+                2,                      // Medium
+                0x3F, (byte) 0xF0, 0, 0, 0, 0, 0, 0,
+                2, 1, 16                // Pepperoni, Garlic
+        };
+        assertArrayEquals(expected, PizzaBinaryCodec.encode(pizza));
+    }
+
+    @Test
+    void literalSizesAndToppingsRoundTrip() {
+        Pizza pizza = new Pizza("Café Special", "Family", 21.5, new String[]{"Ham", "Truffle", "Pineapple"});
+
+        Pizza decoded = PizzaBinaryCodec.decode(PizzaBinaryCodec.encode(pizza));
+
+        assertEquals("Café Special", decoded.getName());
+        assertEquals("Family", decoded.getSize());
+        assertEquals(21.5, decoded.getPrice());
+        assertArrayEquals(pizza.getToppings(), decoded.getToppings());
+    }
+
+    @Test
+    void missingFieldsStayMissing() {
+        Pizza decoded = PizzaBinaryCodec.decode(PizzaBinaryCodec.encode(new Pizza(null, null, 0, null)));
+
+        assertNull(decoded.getName());
+        assertNull(decoded.getSize());
+        assertNull(decoded.getToppings());
+    }
+
+    @Test
+    void decodeAdvancesADirectBuffer() {
+        byte[] first = PizzaBinaryCodec.encode(new Pizza("First", "Small", 9.99, new String[]{"Onion"}));
+        byte[] second = PizzaBinaryCodec.encode(new Pizza("Second", "Large", 14.99, new String[0]));
+        ByteBuffer in = ByteBuffer.allocateDirect(first.length + second.length);
+        in.put(first).put(second).flip();
+
+        assertEquals("First", PizzaBinaryCodec.decode(in).getName());
+        assertEquals("Second", PizzaBinaryCodec.decode(in).getName());
+        assertEquals(0, in.remaining());
+    }
+
+    @Test
+    void oversizedOrderDoesNotDisturbTheNextOne() {
+        char[] longName = new char[100_000];
+        Arrays.fill(longName, 'x');
+        Pizza large = new Pizza(new String(longName), "Medium", 12.99, null);
+        Pizza small = new Pizza("Small one", "Small", 9.99, new String[]{"Bacon"});
+
+        assertEquals(large.getName(), PizzaBinaryCodec.decode(PizzaBinaryCodec.encode(large)).getName());
+        assertEquals("Small one", PizzaBinaryCodec.decode(PizzaBinaryCodec.encode(small)).getName());
+    }
+
+    @Test
+    void truncatedMessagesAreRejected() {
+        byte[] encoded = PizzaBinaryCodec.encode(new Pizza("Margherita", "Medium", 12.99, new String[]{"Tomato"}));
+
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(IllegalArgumentException.class, () -> PizzaBinaryCodec.decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void malformedMessagesAreRejected() {
+        // Unknown version
+        assertThrows(IllegalArgumentException.class, () -> PizzaBinaryCodec.decode(new byte[]{2, 0, 0, 0, 0, 0, 0, 0, 0, 0}));
+        // Size code past the dictionary
+        assertThrows(IllegalArgumentException.class,
+                () -> PizzaBinaryCodec.decode(new byte[]{1, 2, 99, 0, 0, 0, 0, 0, 0, 0, 0}));
+        // Name length past the end of the message
+        assertThrows(IllegalArgumentException.class, () -> PizzaBinaryCodec.decode(new byte[]{1, 1, 100, 'A'}));
+        // A topping count the message cannot hold
+        assertThrows(IllegalArgumentException.class,
+                () -> PizzaBinaryCodec.decode(new byte[]{1, 4, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, 3}));
+        // A varint longer than 32 bits
+        assertThrows(IllegalArgumentException.class, () -> PizzaBinaryCodec.decode(
+                new byte[]{1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1}));
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: PizzaCodec Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Round trips orders through the JSON codec and checks that malformed input is refused with a JsonParseException,
+ * the exception the HTTP handlers answer with 400.
+ */
+class PizzaCodecTest {
+
+    @Test
+    void encodedOrderDecodesToTheSameOrder() {
+        Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni", "Mushroom", "Sausage"});
+
+        Pizza decoded = PizzaCodec.decode(PizzaCodec.encode(pizza));
+
+        assertSameOrder(pizza, decoded);
+    }
+
+    @Test
+    void escapedAndNonAsciiTextSurvivesTheRoundTrip() {
+        Pizza pizza = new Pizza("Quattro \"Stagioni\" \\ Café 🍕", "Large", 21.5,
+                new String[]{"Extra \"Cheese\"", "Jalapeño"});
+
+        Pizza decoded = PizzaCodec.decode(PizzaCodec.encode(pizza));
+
+        assertSameOrder(pizza, decoded);
+    }
+
+    @Test
+    void orderWithoutToppingsKeepsThemUnset() {
+        Pizza pizza = new Pizza("Margherita", "Small", 9.99, null);
+
+        Pizza decoded = PizzaCodec.decode(PizzaCodec.encode(pizza));
+
+        assertEquals("Margherita", decoded.getName());
+        assertNull(decoded.getToppings());
+    }
+
+    @Test
+    void everyEncoderAndDecoderAgrees() throws Exception {
+        Pizza pizza = new Pizza("Hawaiian", "Large", 17.25, new String[]{"Ham", "Pineapple"});
+        byte[] json = PizzaCodec.encode(pizza);
+
+        ByteBuffer target = ByteBuffer.allocate(json.length + 8);
+        target.position(8);
+        int written = PizzaCodec.encode(pizza, target);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PizzaCodec.encode(pizza, out);
+
+        assertEquals(json.length, written);
+        assertArrayEquals(json, Arrays.copyOfRange(target.array(), 8, 8 + written));
+        assertArrayEquals(json, out.toByteArray());
+
+        ByteBuffer buffer = ByteBuffer.wrap(json);
+        assertSameOrder(pizza, PizzaCodec.decode(buffer));
+        assertEquals(0, buffer.position(), "decoding must not move the buffer");
+        assertSameOrder(pizza, PizzaCodec.decode(new ByteArrayInputStream(json)));
+        assertSameOrder(pizza, PizzaFormat.JSON.decode(json));
+    }
+
+    @Test
+    void emptyInputAndNullLiteralDecodeToNull() {
+        assertNull(PizzaCodec.decode(new byte[0]));
+        assertNull(PizzaCodec.decode("null".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void malformedInputIsAParseError() {
+        for (String json : new String[]{
+                "{bad",
+                "{\"name\":\"Pepperoni\",\"price\":14.99",
+                "{\"price\":\"abc\"}",
+                "{\"price\":\"1e\"}",
+                "[1,2]",
+                "\"Pepperoni\"",
+                "{\"toppings\":[{}]}"}) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            assertThrows(JsonParseException.class, () -> PizzaCodec.decode(bytes), json);
+        }
+    }
+
+    private static void assertSameOrder(Pizza expected, Pizza actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        // Registered toppings come back in registry order
+        String[] expectedToppings = expected.getToppings().clone();
+        String[] actualToppings = actual.getToppings().clone();
+        Arrays.sort(expectedToppings);
+        Arrays.sort(actualToppings);
+        assertArrayEquals(expectedToppings, actualToppings);
+    }
+}
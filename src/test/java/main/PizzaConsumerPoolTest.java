@@ -0,0 +1,191 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: PizzaConsumerPool Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import com.rabbitmq.client.Delivery;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a PizzaConsumerPool on a FakeBroker and checks how deliveries are settled: successes are acked together
+ * with one multiple ack, failures are nacked with or without requeueing after the successes before them, and
+ * batches reach the batch handler in delivery order.
+ */
+class PizzaConsumerPoolTest {
+
+    private static final String QUEUE = "pizzaQueue";
+
+    @Test
+    void consecutiveSuccessesShareOneMultipleAck() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaConsumerPool pool = new PizzaConsumerPool(broker.factory(), QUEUE, 1, 10, 5, false,
+                     (PizzaConsumerPool.DeliveryHandler) delivery -> { })) {
+            pool.start();
+            deliver(broker, 10);
+
+            awaitSettlements(broker, 2);
+            assertEquals(List.of("ack 5 multiple", "ack 10 multiple"), broker.settlements());
+        }
+    }
+
+    @Test
+    void partialAckBatchIsFlushedByTheTimer() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaConsumerPool pool = new PizzaConsumerPool(broker.factory(), QUEUE, 1, 10, 5, false,
+                     (PizzaConsumerPool.DeliveryHandler) delivery -> { })) {
+            pool.start();
+            deliver(broker, 3);
+
+            awaitSettlements(broker, 1);
+            assertEquals(List.of("ack 3 multiple"), broker.settlements());
+        }
+    }
+
+    @Test
+    void ioFailureIsRequeuedAndAnyOtherFailureDropped() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaConsumerPool pool = new PizzaConsumerPool(broker.factory(), QUEUE, 1, 10, 5, false,
+                     (PizzaConsumerPool.DeliveryHandler) delivery -> {
+                         switch (body(delivery)) {
+                             case "io" -> throw new IOException("journal full");
+                             case "bad" -> throw new IllegalArgumentException("not an order");
+                             default -> { }
+                         }
+                     })) {
+            pool.start();
+            broker.deliver(QUEUE, "ok");
+            broker.deliver(QUEUE, "ok");
+            broker.deliver(QUEUE, "io");
+            broker.deliver(QUEUE, "bad");
+
+            awaitSettlements(broker, 3);
+            // The successes are acked first, so the multiple ack does not cover the failed tag
+            assertEquals(List.of("ack 2 multiple", "nack 3 requeue", "nack 4 drop"), broker.settlements());
+        }
+    }
+
+    @Test
+    void asyncDeliveriesAreAckedInDeliveryOrder() throws Exception {
+        List<CompletableFuture<Void>> stages = new CopyOnWriteArrayList<>();
+        try (FakeBroker broker = new FakeBroker();
+             PizzaConsumerPool pool = new PizzaConsumerPool(broker.factory(), QUEUE, 1, 10, 2, false,
+                     (PizzaConsumerPool.AsyncDeliveryHandler) delivery -> {
+                         CompletableFuture<Void> stage = new CompletableFuture<>();
+                         stages.add(stage);
+                         return stage;
+                     })) {
+            pool.start();
+            deliver(broker, 2);
+            await(() -> stages.size() == 2);
+
+            // The second finishes first, but cannot be acked before the first
+            stages.get(1).complete(null);
+            Thread.sleep(200);
+            assertEquals(List.of(), broker.settlements());
+
+            stages.get(0).complete(null);
+            awaitSettlements(broker, 1);
+            assertEquals(List.of("ack 2 multiple"), broker.settlements());
+        }
+    }
+
+    @Test
+    void batchesReachTheHandlerInOrderAndSettleTogether() throws Exception {
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (FakeBroker broker = new FakeBroker();
+             PizzaConsumerPool pool = new PizzaConsumerPool(broker.factory(), QUEUE, 1, 10, 4, 50_000, false,
+                     batch -> {
+                         List<String> bodies = new ArrayList<>();
+                         for (Delivery delivery : batch) {
+                             bodies.add(body(delivery));
+                         }
+                         batches.add(bodies);
+                         return CompletableFuture.completedFuture(null);
+                     })) {
+            pool.start();
+            deliver(broker, 10);
+
+            awaitSettlements(broker, 3);
+            assertEquals(List.of(List.of("0", "1", "2", "3"), List.of("4", "5", "6", "7"), List.of("8", "9")), batches);
+            assertEquals(List.of("ack 4 multiple", "ack 8 multiple", "ack 10 multiple"), broker.settlements());
+        }
+    }
+
+    @Test
+    void failedBatchIsNackedAsAWhole() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaConsumerPool pool = new PizzaConsumerPool(broker.factory(), QUEUE, 1, 10, 3, 50_000, false,
+                     batch -> CompletableFuture.failedFuture(new IOException("journal full")))) {
+            pool.start();
+            deliver(broker, 3);
+
+            awaitSettlements(broker, 1);
+            assertEquals(List.of("nack 3 multiple requeue"), broker.settlements());
+        }
+    }
+
+    @Test
+    void eachChannelKeepsItsDeliveryOrder() throws Exception {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        try (FakeBroker broker = new FakeBroker();
+             PizzaConsumerPool pool = new PizzaConsumerPool(broker.factory(), QUEUE, 2, 10, 1, true,
+                     (PizzaConsumerPool.DeliveryHandler) delivery -> seen.add(body(delivery)))) {
+            pool.start();
+            deliver(broker, 20);
+
+            await(() -> seen.size() == 20);
+            // Deliveries alternate between the two channels, so the even and the odd ones each arrive in order
+            List<Integer> even = new ArrayList<>();
+            List<Integer> odd = new ArrayList<>();
+            for (String body : seen) {
+                int n = Integer.parseInt(body);
+                (n % 2 == 0 ? even : odd).add(n);
+            }
+            assertEquals(List.of(0, 2, 4, 6, 8, 10, 12, 14, 16, 18), even);
+            assertEquals(List.of(1, 3, 5, 7, 9, 11, 13, 15, 17, 19), odd);
+        }
+    }
+
+    private static void deliver(FakeBroker broker, int count) {
+        for (int i = 0; i < count; i++) {
+            broker.deliver(QUEUE, Integer.toString(i));
+        }
+    }
+
+    private static String body(Delivery delivery) {
+        return new String(delivery.getBody(), StandardCharsets.UTF_8);
+    }
+
+    private static void awaitSettlements(FakeBroker broker, int count) throws InterruptedException {
+        await(() -> broker.settlements().size() >= count);
+        // Nothing further is sent once the expected settlements are in
+        Thread.sleep(150);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
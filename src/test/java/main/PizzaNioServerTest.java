@@ -0,0 +1,175 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: PizzaNioServer Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Talks HTTP/1.1 to a PizzaNioServer over plain sockets: orders in both formats, pipelined requests answered
+ * in order, requests split into single bytes, and the requests the engine refuses, each with its status.
+ */
+class PizzaNioServerTest {
+
+    private static final HmacSigner SIGNER = new HmacSigner("shared_secret_key");
+    private static final String ORDER = "{\"name\":\"Pepperoni\",\"size\":\"Medium\",\"price\":14.99,\"toppings\":[\"Pepperoni\"]}";
+    private static final String OFF_MENU = "{\"name\":\"Unicorn\",\"size\":\"Medium\",\"price\":1.00,\"toppings\":[\"Unicorn\"]}";
+
+    /** The pooled buffer size, and so the largest request */
+    private static final int BUFFER_BYTES = 4096;
+
+    private static PizzaNioServer server;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        WebServiceRecv.openBackends();
+        server = new PizzaNioServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, BUFFER_BYTES, 4);
+    }
+
+    @AfterAll
+    static void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void signedOrdersAreAcceptedInBothFormats() throws Exception {
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/pizza");
+        Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, new String[]{"Pepperoni"});
+
+        assertEquals(200, new PizzaHttpClient(uri, SIGNER, PizzaFormat.JSON, 1).send(pizza).statusCode());
+        assertEquals(200, new PizzaHttpClient(uri, SIGNER, PizzaFormat.BINARY, 1).send(pizza).statusCode());
+        assertEquals(403, new PizzaHttpClient(uri, new HmacSigner("not_the_key"), PizzaFormat.JSON, 1).send(pizza)
+                .statusCode());
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrder() throws Exception {
+        String unsigned = "POST /pizza HTTP/1.1\r\nContent-Length: 2\r\n\r\n{}";
+
+        assertEquals(List.of(200, 422, 401, 200), exchange(signed(ORDER), signed(OFF_MENU), unsigned, signed(ORDER)));
+    }
+
+    @Test
+    void replayedOrderIsRejected() throws Exception {
+        String request = signed(ORDER);
+
+        assertEquals(List.of(200, 409), exchange(request, request));
+    }
+
+    @Test
+    void requestSplitIntoSingleBytesIsParsed() throws Exception {
+        byte[] request = signed(ORDER).getBytes(StandardCharsets.ISO_8859_1);
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            for (byte b : request) {
+                out.write(b);
+                out.flush();
+            }
+            assertEquals(200, readResponse(socket.getInputStream()));
+        }
+    }
+
+    @Test
+    void requestsThatAreNotOrdersAreRefused() throws Exception {
+        assertEquals(List.of(404), exchange("GET /menu HTTP/1.1\r\n\r\n"));
+        assertEquals(List.of(405), exchange("GET /pizza HTTP/1.1\r\n\r\n"));
+        assertEquals(List.of(411), exchange("POST /pizza HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"));
+        assertEquals(List.of(413), exchange("POST /pizza HTTP/1.1\r\nContent-Length: " + 2 * BUFFER_BYTES + "\r\n\r\n"));
+        assertEquals(List.of(400), exchange("garbage\r\n\r\n"));
+    }
+
+    @Test
+    void http10ConnectionIsClosedAfterTheResponse() throws Exception {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("GET /pizza HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            InputStream in = socket.getInputStream();
+            assertEquals(405, readResponse(in));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * Writes every request in one go on one connection and reads one response per request.
+     */
+    private static List<Integer> exchange(String... requests) throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(String.join("", requests).getBytes(StandardCharsets.ISO_8859_1));
+            List<Integer> statuses = new ArrayList<>();
+            for (int i = 0; i < requests.length; i++) {
+                statuses.add(readResponse(socket.getInputStream()));
+            }
+            return statuses;
+        }
+    }
+
+    private static Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getAddress().getPort());
+        socket.setSoTimeout(5_000);
+        return socket;
+    }
+
+    /**
+     * Reads one response, its head and its Content-Length body, and returns its status.
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        int contentLength = 0;
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        in.readNBytes(contentLength);
+        return Integer.parseInt(statusLine.split(" ")[1]);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new IOException("Connection closed mid-response");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Builds an order request with a fresh timestamp and nonce, signed the way PizzaHttpClient signs it.
+     */
+    private static String signed(String body) {
+        String timestamp = Long.toString(System.currentTimeMillis());
+        String nonce = ReplayGuard.newNonce();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return "POST /pizza HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                + ReplayGuard.TIMESTAMP_HEADER + ": " + timestamp + "\r\n"
+                + ReplayGuard.NONCE_HEADER + ": " + nonce + "\r\n"
+                + "HMAC: " + SIGNER.signBase64(HmacSigner.preamble(timestamp, nonce), bytes) + "\r\n"
+                + "Content-Length: " + bytes.length + "\r\n\r\n" + body;
+    }
+}
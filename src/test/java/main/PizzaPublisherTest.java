@@ -0,0 +1,144 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: PizzaPublisher Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks batching, the confirm window and the confirm futures of PizzaPublisher against a FakeBroker:
+ * acks complete the futures, nacks and closed channels fail them and give their window slots back.
+ */
+class PizzaPublisherTest {
+
+    @Test
+    void batchGoesOutOnlyWhenFullOrFlushed() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 2, 3, 100)) {
+            publisher.publish(null, body("a"));
+            publisher.publish(null, body("b"));
+            assertEquals(0, publisher.getPublished());
+
+            publisher.publish(null, body("c"));
+            assertEquals(3, publisher.getPublished());
+
+            publisher.publish(null, body("d"));
+            assertEquals(3, publisher.getPublished());
+            publisher.flush();
+
+            assertTrue(publisher.awaitConfirms(5, TimeUnit.SECONDS));
+            assertEquals(List.of("a", "b", "c", "d"), broker.publishedBodies());
+            assertEquals(4, publisher.getConfirmed());
+        }
+    }
+
+    @Test
+    void lingerPublishesAPartialBatch() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 100, 100, 1_000)) {
+            CompletableFuture<Void> confirm = publisher.publishConfirmed(null, body("a"));
+
+            confirm.get(5, TimeUnit.SECONDS);
+            assertEquals(1, publisher.getConfirmed());
+        }
+    }
+
+    @Test
+    void fullConfirmWindowBlocksThePublisher() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 2)) {
+            broker.holdConfirms();
+            publisher.publish(null, body("a"));
+            publisher.publish(null, body("b"));
+            assertEquals(2, publisher.getOutstanding());
+
+            CompletableFuture<Void> third = CompletableFuture.runAsync(() -> {
+                try {
+                    publisher.publish(null, body("c"));
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(third.isDone(), "the third publish must wait for a confirm");
+
+            broker.releaseConfirms();
+
+            third.get(5, TimeUnit.SECONDS);
+            assertTrue(publisher.awaitConfirms(5, TimeUnit.SECONDS));
+            assertEquals(3, publisher.getConfirmed());
+        }
+    }
+
+    @Test
+    void nackFailsTheFutureOfThatMessageOnly() throws Exception {
+        try (FakeBroker broker = new FakeBroker(1);
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100)) {
+            CompletableFuture<Void> acked = publisher.publishConfirmed(null, body("a"));
+            CompletableFuture<Void> nacked = publisher.publishConfirmed(null, body("b"));
+
+            acked.get(5, TimeUnit.SECONDS);
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> nacked.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, failure.getCause());
+            assertEquals(1, publisher.getNacked());
+            assertEquals(0, publisher.getOutstanding());
+        }
+    }
+
+    @Test
+    void closedChannelFailsItsUnconfirmedMessagesAndIsReplaced() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), "pizzaQueue", 1, 1, 100)) {
+            broker.holdConfirms();
+            CompletableFuture<Void> lost = publisher.publishConfirmed(null, body("a"));
+
+            broker.closeChannels();
+
+            assertThrows(ExecutionException.class, () -> lost.get(5, TimeUnit.SECONDS));
+            assertEquals(0, publisher.getOutstanding(), "the window slot comes back");
+
+            // The next publish opens a new channel on the same connection
+            broker.releaseConfirms();
+            publisher.publishConfirmed(null, body("b")).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("a", "b"), broker.publishedBodies());
+        }
+    }
+
+    @Test
+    void routedMessagesOfOneKeyKeepTheirOrder() throws Exception {
+        try (FakeBroker broker = new FakeBroker();
+             PizzaPublisher publisher = new PizzaPublisher(broker.factory(), null, 4, 2, 100)) {
+            CompletableFuture<Void> last = null;
+            for (int i = 0; i < 5; i++) {
+                last = publisher.publishRoutedConfirmed(PizzaShards.EXCHANGE, "3", null, body(Integer.toString(i)));
+            }
+            publisher.flush();
+
+            last.get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("0", "1", "2", "3", "4"), broker.publishedBodies());
+        }
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
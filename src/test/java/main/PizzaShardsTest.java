@@ -0,0 +1,127 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: PizzaShards Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that jump consistent hashing spreads keys evenly over the shards, only moves the keys of the new shard
+ * when a shard is added, and that the claim properties pick the right queues.
+ */
+class PizzaShardsTest {
+
+    private static final int KEYS = 100_000;
+
+    @AfterEach
+    void clearClaimProperties() {
+        System.clearProperty("pizza.shards.claim");
+        System.clearProperty("pizza.shards.instance");
+        System.clearProperty("pizza.shards.instances");
+    }
+
+    @Test
+    void keysSpreadEvenlyOverTheShards() {
+        PizzaShards shards = new PizzaShards("pizzaQueue", 8);
+        int[] counts = new int[shards.getCount()];
+        for (int i = 0; i < KEYS; i++) {
+            counts[shards.shardOf("order-" + i)]++;
+        }
+
+        double mean = (double) KEYS / counts.length;
+        for (int shard = 0; shard < counts.length; shard++) {
+            assertTrue(Math.abs(counts[shard] - mean) < mean * 0.05,
+                    "shard " + shard + " got " + counts[shard] + " keys, expected about " + mean);
+        }
+    }
+
+    @Test
+    void sameKeyAlwaysPicksTheSameShard() {
+        PizzaShards shards = new PizzaShards("pizzaQueue", 5);
+        Pizza pizza = new Pizza("Pepperoni", "Medium", 14.99, null);
+
+        int shard = shards.shardOf("Pepperoni");
+
+        assertEquals(shard, new PizzaShards("pizzaQueue", 5).shardOf("Pepperoni"));
+        assertEquals(Integer.toString(shard), shards.routingKey(pizza));
+        assertEquals(0, shards.shardOf(null));
+    }
+
+    @Test
+    void addingAShardOnlyMovesKeysToTheNewShard() {
+        PizzaShards before = new PizzaShards("pizzaQueue", 8);
+        PizzaShards after = new PizzaShards("pizzaQueue", 9);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "order-" + i;
+            int from = before.shardOf(key);
+            int to = after.shardOf(key);
+            if (from != to) {
+                assertEquals(8, to, key + " moved between old shards");
+                moved++;
+            }
+        }
+
+        // About 1/9 of the keys move
+        double fraction = (double) moved / KEYS;
+        assertTrue(fraction > 0.10 && fraction < 0.125, "moved " + fraction);
+    }
+
+    @Test
+    void jumpHashStaysInRange() {
+        for (long key = -1_000; key < 1_000; key++) {
+            int bucket = PizzaShards.jumpHash(key * 0x9E3779B97F4A7C15L, 7);
+            assertTrue(bucket >= 0 && bucket < 7);
+        }
+        assertEquals(0, PizzaShards.jumpHash(42, 1));
+    }
+
+    @Test
+    void claimListsShardsAndRanges() {
+        PizzaShards shards = new PizzaShards("pizzaQueue", 8);
+        System.setProperty("pizza.shards.claim", "0, 2-4,7");
+
+        assertEquals(List.of("pizzaQueue.0", "pizzaQueue.2", "pizzaQueue.3", "pizzaQueue.4", "pizzaQueue.7"),
+                shards.claimedQueues());
+    }
+
+    @Test
+    void instanceClaimsEveryInstancesShard() {
+        PizzaShards shards = new PizzaShards("pizzaQueue", 8);
+        System.setProperty("pizza.shards.instances", "3");
+        System.setProperty("pizza.shards.instance", "1");
+
+        assertEquals(List.of("pizzaQueue.1", "pizzaQueue.4", "pizzaQueue.7"), shards.claimedQueues());
+    }
+
+    @Test
+    void claimsOutsideTheTopologyAreRefused() {
+        PizzaShards shards = new PizzaShards("pizzaQueue", 4);
+
+        System.setProperty("pizza.shards.claim", "3-4");
+        assertThrows(IllegalArgumentException.class, shards::claimedQueues);
+
+        System.clearProperty("pizza.shards.claim");
+        System.setProperty("pizza.shards.instances", "2");
+        System.setProperty("pizza.shards.instance", "2");
+        assertThrows(IllegalArgumentException.class, shards::claimedQueues);
+
+        System.setProperty("pizza.shards.instance", "-1");
+        assertThrows(IllegalArgumentException.class, shards::claimedQueues);
+
+        assertThrows(IllegalArgumentException.class, () -> new PizzaShards("pizzaQueue", 0));
+    }
+}
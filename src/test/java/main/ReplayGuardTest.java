@@ -0,0 +1,117 @@
+/**
+ * Project: Pizza Integration Lab
+ * Purpose Details: ReplayGuard Tests
+ * Course: IST 242
+ * Author: Xue Thao
+ * Date Developed: October 17, 2026,
+ * Last Date Changed: October 17, 2026,
+ * Rev: 1
+ */
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the freshness window, single use of nonces and the bounded nonce memory of ReplayGuard on a clock
+ * the test moves by hand.
+ */
+class ReplayGuardTest {
+
+    private static final long WINDOW = 1_000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    void nonceIsAcceptedOnceThenReplayed() {
+        ReplayGuard guard = new ReplayGuard(WINDOW, 3_000, 4, clock::get);
+        String now = Long.toString(clock.get());
+        String nonce = ReplayGuard.newNonce();
+
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(now, nonce));
+        assertEquals(ReplayGuard.Result.REPLAYED, guard.accept(now, nonce));
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(now, ReplayGuard.newNonce()));
+    }
+
+    @Test
+    void timestampsOutsideTheWindowAreStale() {
+        ReplayGuard guard = new ReplayGuard(WINDOW, 3_000, 4, clock::get);
+        String nonce = ReplayGuard.newNonce();
+
+        assertTrue(guard.isFresh(Long.toString(clock.get() - WINDOW), nonce));
+        assertTrue(guard.isFresh(Long.toString(clock.get() + WINDOW), nonce));
+        assertFalse(guard.isFresh(Long.toString(clock.get() - WINDOW - 1), nonce));
+        assertFalse(guard.isFresh(Long.toString(clock.get() + WINDOW + 1), nonce));
+        assertEquals(ReplayGuard.Result.STALE, guard.accept(Long.toString(clock.get() - WINDOW - 1), nonce));
+    }
+
+    @Test
+    void missingOrMalformedHeadersAreStale() {
+        ReplayGuard guard = new ReplayGuard(WINDOW, 3_000, 4, clock::get);
+        String now = Long.toString(clock.get());
+
+        assertEquals(ReplayGuard.Result.STALE, guard.accept(null, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.STALE, guard.accept("yesterday", ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.STALE, guard.accept("-5", ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.STALE, guard.accept(now, null));
+        assertEquals(ReplayGuard.Result.STALE, guard.accept(now, "short"));
+        assertEquals(ReplayGuard.Result.STALE, guard.accept(now, "not a valid nonce!!"));
+    }
+
+    @Test
+    void replayedRequestIsStaleOnceItsWindowHasPassed() {
+        ReplayGuard guard = new ReplayGuard(WINDOW, 3_000, 4, clock::get);
+        String sent = Long.toString(clock.get());
+        String nonce = ReplayGuard.newNonce();
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(sent, nonce));
+
+        clock.addAndGet(WINDOW + 1);
+
+        assertEquals(ReplayGuard.Result.STALE, guard.accept(sent, nonce));
+    }
+
+    @Test
+    void fullShardRefusesNewNoncesUntilItsGenerationExpires() {
+        // One shard, two nonces per generation
+        ReplayGuard guard = new ReplayGuard(WINDOW, 6, 1, clock::get);
+        String now = Long.toString(clock.get());
+
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(now, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(now, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.FULL, guard.accept(now, ReplayGuard.newNonce()));
+
+        // Four windows later the ring slot of the old generation comes round again and is replaced
+        clock.addAndGet(4 * WINDOW);
+        String later = Long.toString(clock.get());
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(later, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(later, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.FULL, guard.accept(later, ReplayGuard.newNonce()));
+    }
+
+    @Test
+    void timestampsInNeighbouringWindowsHaveTheirOwnCapacity() {
+        ReplayGuard guard = new ReplayGuard(WINDOW, 6, 1, clock::get);
+        String previous = Long.toString(clock.get() - WINDOW);
+        String next = Long.toString(clock.get() + WINDOW);
+
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(previous, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(previous, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.FULL, guard.accept(previous, ReplayGuard.newNonce()));
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.accept(next, ReplayGuard.newNonce()));
+    }
+
+    @Test
+    void newNoncesAreWellFormedAndDistinct() {
+        String first = ReplayGuard.newNonce();
+        String second = ReplayGuard.newNonce();
+
+        assertTrue(ReplayGuard.isValidNonce(first));
+        assertEquals(32, first.length());
+        assertFalse(first.equals(second));
+    }
+}